@@ -0,0 +1,206 @@
+package gmail.vladimir.JLSP.Compiler;
+
+import gmail.vladimir.JLSP.Interfaces.OperatorCompute;
+import gmail.vladimir.JLSP.Variables.Formula;
+
+import java.util.Arrays;
+
+import static gmail.vladimir.JLSP.Compiler.CompiledFormula.*;
+
+/**
+ * Runs a {@link CompiledFormula} over blocks of rows instead of a single row.<br/>
+ * Every stack slot holds a whole block of values, so each instruction is a tight loop over plain arrays that the JIT can unroll and vectorize.<br/><br/>
+ *
+ * Moving values between slots swaps the block references instead of copying them when possible, only loading a variable copies its column.
+ * An instance owns its scratch blocks, so a single instance must not be used by multiple threads at once.
+ */
+final class BatchExecutor {
+
+    /**
+     * Rows evaluated per block, small enough that the blocks of a typical formula stay in the L1/L2 cache
+     */
+    static final int BLOCK = 256;
+
+    private final CompiledFormula program;
+    private final double[][] stack;
+    private final double[] args;
+
+    BatchExecutor(CompiledFormula program) {
+        this.program = program;
+        this.stack = new double[program.maxStack][BLOCK];
+        this.args = new double[maxArity(program)];
+    }
+
+    private static int maxArity(CompiledFormula program) {
+        int max = 0;
+        for (Object ref : program.refs)
+            if (ref instanceof FunctionCall)
+                max = Math.max(max, ((FunctionCall) ref).arity);
+        return max;
+    }
+
+    /**
+     * Evaluates the rows from (inclusive) to (exclusive), row i reads columns[v][i] and writes out[i]
+     */
+    void execute(double[][] columns, double[] out, int from, int to) {
+        for (int start = from; start < to; start += BLOCK) {
+            int len = Math.min(BLOCK, to - start);
+            executeBlock(columns, start, len);
+            System.arraycopy(stack[0], 0, out, start, len);
+        }
+    }
+
+    /**
+     * Evaluates the first len rows of columns, which hold at most one block, and returns the block holding the results. It's overwritten by the next call
+     */
+    double[] evaluateBlock(double[][] columns, int len) {
+        executeBlock(columns, 0, len);
+        return stack[0];
+    }
+
+    private void executeBlock(double[][] columns, int start, int len) {
+        final byte[] code = program.code;
+        final int[] operands = program.operands;
+        final double[][] stack = this.stack;
+        int sp = 0;
+
+        for (int pc = 0; pc < code.length; pc++) {
+            int operand = operands[pc];
+            switch (code[pc]) {
+                case CONST:
+                    Arrays.fill(stack[sp++], 0, len, program.constants[operand]);
+                    break;
+                case VAR:
+                    System.arraycopy(columns[operand], start, stack[sp++], 0, len);
+                    break;
+                case NEG_VAR: {
+                    double[] column = columns[operand], dst = stack[sp++];
+                    for (int i = 0; i < len; i++)
+                        dst[i] = -column[start + i];
+                    break;
+                }
+                case START:
+                    Arrays.fill(stack[sp++], 0, len, 0D);
+                    Arrays.fill(stack[sp++], 0, len, 0D);
+                    break;
+                case DUP:
+                    System.arraycopy(stack[sp - 1], 0, stack[sp++], 0, len);
+                    break;
+                case PICK:
+                    System.arraycopy(stack[sp - 1 - operand], 0, stack[sp], 0, len);
+                    sp++;
+                    break;
+                case SPILL:
+                    swap(sp - 1, sp);
+                    Arrays.fill(stack[sp - 1], 0, len, 0D);
+                    sp++;
+                    break;
+                case POP:
+                    sp--;
+                    break;
+                case SLIDE:
+                    swap(sp - 1 - operand, sp - 1);
+                    sp -= operand;
+                    break;
+                case ADD: {
+                    sp--;
+                    double[] acc = stack[sp - 2], value = stack[sp];
+                    for (int i = 0; i < len; i++)
+                        acc[i] += value[i];
+                    swap(sp - 1, sp);
+                    break;
+                }
+                case SUB: {
+                    sp--;
+                    double[] acc = stack[sp - 2], value = stack[sp];
+                    for (int i = 0; i < len; i++)
+                        acc[i] -= value[i];
+                    swap(sp - 1, sp);
+                    break;
+                }
+                case MUL: {
+                    sp--;
+                    double[] acc = stack[sp - 2], value = stack[sp];
+                    for (int i = 0; i < len; i++)
+                        acc[i] *= value[i];
+                    swap(sp - 1, sp);
+                    break;
+                }
+                case DIV: {
+                    sp--;
+                    double[] acc = stack[sp - 2], value = stack[sp];
+                    for (int i = 0; i < len; i++)
+                        acc[i] /= value[i];
+                    swap(sp - 1, sp);
+                    break;
+                }
+                case REM: {
+                    sp--;
+                    double[] acc = stack[sp - 2], value = stack[sp];
+                    for (int i = 0; i < len; i++)
+                        acc[i] %= value[i];
+                    swap(sp - 1, sp);
+                    break;
+                }
+                case POW: {
+                    sp--;
+                    double[] acc = stack[sp - 2], last = stack[sp - 1], value = stack[sp];
+                    for (int i = 0; i < len; i++)
+                        acc[i] = pow(acc[i], value[i], last[i], operand);
+                    swap(sp - 1, sp);
+                    break;
+                }
+                case OPERATOR: {
+                    sp--;
+                    OperatorCompute op = (OperatorCompute) program.refs[operand >>> FLAG_BITS];
+                    double[] acc = stack[sp - 2], last = stack[sp - 1], value = stack[sp];
+                    for (int i = 0; i < len; i++)
+                        acc[i] = applyOperator(op, acc[i], value[i], last[i], operand);
+                    swap(sp - 1, sp);
+                    break;
+                }
+                case CALL: {
+                    FunctionCall call = (FunctionCall) program.refs[operand];
+                    sp -= call.arity;
+                    call(call, sp, len);
+                    sp++;
+                    break;
+                }
+                default: throw new IllegalStateException("Unknown instruction " + code[pc]);
+            }
+        }
+    }
+
+    //The arguments are at sp..sp+arity-1, the result goes to sp
+    private void call(FunctionCall call, int sp, int len) {
+        double[] dst = stack[sp];
+
+        if (call.unary != null) {
+            for (int i = 0; i < len; i++)
+                dst[i] = call.unary.apply(dst[i]);
+            return;
+        }
+
+        if (call.binary != null) {
+            double[] second = stack[sp + 1];
+            for (int i = 0; i < len; i++)
+                dst[i] = call.binary.apply(dst[i], second[i]);
+            return;
+        }
+
+        int arity = call.arity;
+        Formula caller = program.getOwner();
+        for (int i = 0; i < len; i++) {
+            for (int a = 0; a < arity; a++)
+                args[a] = stack[sp + a][i];
+            dst[i] = callFunction(call.compute, caller, args, 0, arity);
+        }
+    }
+
+    private void swap(int a, int b) {
+        double[] temp = stack[a];
+        stack[a] = stack[b];
+        stack[b] = temp;
+    }
+
+}
@@ -0,0 +1,533 @@
+package gmail.vladimir.JLSP.Compiler;
+
+import gmail.vladimir.JLSP.Interfaces.DoubleFormula;
+import gmail.vladimir.JLSP.Interfaces.Function1;
+import gmail.vladimir.JLSP.Interfaces.Function2;
+import gmail.vladimir.JLSP.Interfaces.FunctionCompute;
+import gmail.vladimir.JLSP.Interfaces.OperatorCompute;
+import gmail.vladimir.JLSP.Parser.DefaultFunctions;
+import gmail.vladimir.JLSP.Variables.Formula;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static gmail.vladimir.JLSP.Compiler.CompiledFormula.*;
+
+/**
+ * Optional engine that turns a {@link CompiledFormula} into a JVM class implementing {@link DoubleFormula}, so HotSpot can inline the whole expression.<br/><br/>
+ *
+ * Every stack slot of the program becomes a local variable, so the generated eval method is straight-line code without branches.
+ * The default operators become plain arithmetic, and the default functions that are a single {@link Math} call call it directly, see {@link DefaultFunctions}.
+ * Other operators and functions are called through fields set when the object is created,
+ * functions of one or two arguments through the {@link Function1} or {@link Function2} they were added with, so no argument array is needed.<br/><br/>
+ *
+ * On Java 15+ the class is defined as a hidden class, on older versions each class gets its own class loader. Either way it can be unloaded once the returned object is no longer used.
+ */
+public final class BytecodeCompiler {
+
+    private static final String PACKAGE = BytecodeCompiler.class.getPackage().getName().replace('.', '/');
+    private static final String COMPILED = CompiledFormula.class.getName().replace('.', '/');
+    private static final String OPERATOR_DESC = "L" + OperatorCompute.class.getName().replace('.', '/') + ";";
+    private static final String FUNCTION_DESC = "L" + FunctionCompute.class.getName().replace('.', '/') + ";";
+    private static final String FUNCTION1 = Function1.class.getName().replace('.', '/');
+    private static final String FUNCTION2 = Function2.class.getName().replace('.', '/');
+    private static final String FORMULA_DESC = "L" + Formula.class.getName().replace('.', '/') + ";";
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    private BytecodeCompiler(){}
+
+    /**
+     * Compiles the formula and turns it into a class, see {@link Formula#compile()}
+     */
+    public static DoubleFormula compile(Formula formula) {
+        return compile(formula.compile());
+    }
+
+    /**
+     * Turns the program into a class. The returned object is stateless and can be used by multiple threads at once,
+     * as long as the custom operators and functions the formula uses can.<br/>
+     * Keep in mind that HotSpot does not JIT compile methods larger than 8000 bytes by default, which is roughly a formula with 800 terms.
+     * @throws UnsupportedOperationException If the formula is too large to fit in a single method
+     */
+    public static DoubleFormula compile(CompiledFormula program) {
+        String name = PACKAGE + "/GeneratedFormula$" + COUNTER.incrementAndGet();
+        Object[] fields = new Object[program.refs.length + 1];
+        byte[] bytes = new ClassWriter(name, program, fields).write();
+
+        try {
+            Class<?> type = define(name, bytes);
+            return (DoubleFormula) type.getConstructor(Object[].class).newInstance((Object) fields);
+        }
+        catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Could not define the generated formula class", ex);
+        }
+    }
+
+    private static Method defineHiddenClass;
+    private static Object noOptions;
+
+    static {
+        try {
+            Class<?> option = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            noOptions = Array.newInstance(option, 0);
+            defineHiddenClass = MethodHandles.Lookup.class.getMethod("defineHiddenClass", byte[].class, boolean.class, noOptions.getClass());
+        }
+        catch (ReflectiveOperationException ex) {
+            defineHiddenClass = null;
+        }
+    }
+
+    private static Class<?> define(String name, byte[] bytes) throws ReflectiveOperationException {
+        if (defineHiddenClass != null) {
+            MethodHandles.Lookup lookup = (MethodHandles.Lookup) defineHiddenClass.invoke(MethodHandles.lookup(), bytes, true, noOptions);
+            return lookup.lookupClass();
+        }
+        return new GeneratedLoader(BytecodeCompiler.class.getClassLoader()).define(name.replace('/', '.'), bytes);
+    }
+
+    //One loader per class, so the class can be unloaded on its own
+    private static final class GeneratedLoader extends ClassLoader {
+        GeneratedLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Minimal class file writer, only supports what the generated formulas need
+     */
+    private static final class ClassWriter {
+        private static final int ACC_PUBLIC = 0x0001, ACC_PRIVATE = 0x0002, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+        private static final int ICONST_0 = 0x03, DCONST_0 = 0x0e, DCONST_1 = 0x0f, BIPUSH = 0x10, SIPUSH = 0x11, LDC_W = 0x13, LDC2_W = 0x14,
+                ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, DALOAD = 0x31, AALOAD = 0x32, DLOAD = 0x18, DSTORE = 0x39, DASTORE = 0x52,
+                DUP = 0x59, DADD = 0x63, DSUB = 0x67, DMUL = 0x6b, DDIV = 0x6f, DREM = 0x73, DNEG = 0x77,
+                DRETURN = 0xaf, RETURN = 0xb1, GETFIELD = 0xb4, PUTFIELD = 0xb5, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8,
+                INVOKEINTERFACE = 0xb9, L2D = 0x8a, CHECKCAST = 0xc0, WIDE = 0xc4;
+
+        private final String name;
+        private final CompiledFormula program;
+        private final Object[] fieldValues;
+        private final String[] fieldDescs;
+
+        private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+        private final DataOutputStream pool = new DataOutputStream(poolBytes);
+        private final Map<String, Integer> poolIndex = new HashMap<>();
+        private int poolSize = 1;
+
+        private ByteArrayOutputStream code;
+
+        ClassWriter(String name, CompiledFormula program, Object[] fieldValues) {
+            this.name = name;
+            this.program = program;
+            this.fieldValues = fieldValues;
+            this.fieldDescs = new String[fieldValues.length];
+
+            fieldValues[0] = program.getOwner();
+            fieldDescs[0] = FORMULA_DESC;
+            for (int i = 0; i < program.refs.length; i++) {
+                Object ref = program.refs[i];
+                if (ref instanceof OperatorCompute) {
+                    fieldValues[i + 1] = ref;
+                    fieldDescs[i + 1] = OPERATOR_DESC;
+                }
+                else {
+                    FunctionCall call = (FunctionCall) ref;
+                    if (call.unary != null) {
+                        fieldValues[i + 1] = call.unary;
+                        fieldDescs[i + 1] = "L" + FUNCTION1 + ";";
+                    }
+                    else if (call.binary != null) {
+                        fieldValues[i + 1] = call.binary;
+                        fieldDescs[i + 1] = "L" + FUNCTION2 + ";";
+                    }
+                    else {
+                        fieldValues[i + 1] = call.compute;
+                        fieldDescs[i + 1] = FUNCTION_DESC;
+                    }
+                }
+            }
+        }
+
+        byte[] write() {
+            try {
+                int thisClass = classRef(name);
+                int superClass = classRef("java/lang/Object");
+                int doubleFormula = classRef(DoubleFormula.class.getName().replace('.', '/'));
+
+                byte[] init = constructor();
+                byte[] eval = eval();
+                int codeName = utf8("Code");
+                int initName = utf8("<init>"), initDesc = utf8("([Ljava/lang/Object;)V");
+                int evalName = utf8("eval"), evalDesc = utf8("([D)D");
+                int[] fieldNames = new int[fieldDescs.length], fieldTypes = new int[fieldDescs.length];
+                for (int i = 0; i < fieldDescs.length; i++) {
+                    fieldNames[i] = utf8(fieldName(i));
+                    fieldTypes[i] = utf8(fieldDescs[i]);
+                }
+
+                if (poolSize > 0xFFFF)
+                    throw new UnsupportedOperationException("The formula is too large to be compiled into a class");
+
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeInt(0xCAFEBABE);
+                out.writeShort(0);
+                out.writeShort(52);
+                out.writeShort(poolSize);
+                poolBytes.writeTo(out);
+                out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                out.writeShort(1);
+                out.writeShort(doubleFormula);
+
+                out.writeShort(fieldDescs.length);
+                for (int i = 0; i < fieldDescs.length; i++) {
+                    out.writeShort(ACC_PRIVATE | ACC_FINAL);
+                    out.writeShort(fieldNames[i]);
+                    out.writeShort(fieldTypes[i]);
+                    out.writeShort(0);
+                }
+
+                out.writeShort(2);
+                method(out, initName, initDesc, codeName, init, 4, 2);
+                method(out, evalName, evalDesc, codeName, eval, 16, 2 + 2 * program.maxStack);
+                out.writeShort(0);
+                return bytes.toByteArray();
+            }
+            catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        private void method(DataOutputStream out, int name, int desc, int codeName, byte[] body, int maxStack, int maxLocals) throws IOException {
+            if (body.length > 0xFFFF || maxLocals > 0xFFFF)
+                throw new UnsupportedOperationException("The formula is too large to be compiled into a class");
+
+            out.writeShort(ACC_PUBLIC);
+            out.writeShort(name);
+            out.writeShort(desc);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + body.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+
+        private static String fieldName(int i) {
+            return i == 0 ? "owner" : "ref" + (i - 1);
+        }
+
+        private byte[] constructor() throws IOException {
+            code = new ByteArrayOutputStream();
+            op(ALOAD_0);
+            op(INVOKESPECIAL);
+            u2(methodRef("java/lang/Object", "<init>", "()V"));
+
+            for (int i = 0; i < fieldDescs.length; i++) {
+                op(ALOAD_0);
+                op(ALOAD_1);
+                pushInt(i);
+                op(AALOAD);
+                String desc = fieldDescs[i];
+                op(CHECKCAST);
+                u2(classRef(desc.substring(1, desc.length() - 1)));
+                op(PUTFIELD);
+                u2(fieldRef(name, fieldName(i), desc));
+            }
+            op(RETURN);
+            return code.toByteArray();
+        }
+
+        //Mirrors CompiledFormula#execute, stack slot i lives in local 2 + 2i
+        private byte[] eval() throws IOException {
+            code = new ByteArrayOutputStream();
+            byte[] ops = program.code;
+            int[] operands = program.operands;
+            int sp = 0;
+
+            for (int pc = 0; pc < ops.length; pc++) {
+                int operand = operands[pc];
+                switch (ops[pc]) {
+                    case CONST:
+                        pushDouble(program.constants[operand]);
+                        store(sp++);
+                        break;
+                    case VAR:
+                    case NEG_VAR:
+                        op(ALOAD_1);
+                        pushInt(operand);
+                        op(DALOAD);
+                        if (ops[pc] == NEG_VAR)
+                            op(DNEG);
+                        store(sp++);
+                        break;
+                    case START:
+                        op(DCONST_0);
+                        store(sp++);
+                        op(DCONST_0);
+                        store(sp++);
+                        break;
+                    case CompiledFormula.DUP:
+                        load(sp - 1);
+                        store(sp++);
+                        break;
+                    case PICK:
+                        load(sp - 1 - operand);
+                        store(sp++);
+                        break;
+                    case SPILL:
+                        load(sp - 1);
+                        store(sp);
+                        op(DCONST_0);
+                        store(sp - 1);
+                        sp++;
+                        break;
+                    case POP:
+                        sp--;
+                        break;
+                    case SLIDE:
+                        load(sp - 1);
+                        store(sp - 1 - operand);
+                        sp -= operand;
+                        break;
+                    case ADD: case SUB: case MUL: case DIV: case REM:
+                        sp--;
+                        load(sp - 2);
+                        load(sp);
+                        op(arithmetic(ops[pc]));
+                        store(sp - 2);
+                        load(sp);
+                        store(sp - 1);
+                        break;
+                    case POW:
+                        sp--;
+                        load(sp - 2);
+                        load(sp);
+                        load(sp - 1);
+                        pushInt(operand);
+                        op(INVOKESTATIC);
+                        u2(methodRef(COMPILED, "pow", "(DDDI)D"));
+                        store(sp - 2);
+                        load(sp);
+                        store(sp - 1);
+                        break;
+                    case OPERATOR:
+                        sp--;
+                        getField((operand >>> FLAG_BITS) + 1);
+                        load(sp - 2);
+                        load(sp);
+                        load(sp - 1);
+                        pushInt(operand);
+                        op(INVOKESTATIC);
+                        u2(methodRef(COMPILED, "applyOperator", "(" + OPERATOR_DESC + "DDDI)D"));
+                        store(sp - 2);
+                        load(sp);
+                        store(sp - 1);
+                        break;
+                    case CALL: {
+                        FunctionCall call = (FunctionCall) program.refs[operand];
+                        sp -= call.arity;
+                        String math = call.unary != null || call.binary != null ? DefaultFunctions.mathMethod(call.compute) : null;
+                        if (math != null) {
+                            for (int i = 0; i < (call.unary != null ? 1 : 2); i++)
+                                load(sp + i);
+                            op(INVOKESTATIC);
+                            if (math.equals("round")) {
+                                u2(methodRef("java/lang/Math", "round", "(D)J"));
+                                op(L2D);
+                            }
+                            else
+                                u2(methodRef("java/lang/Math", math, call.unary != null ? "(D)D" : "(DD)D"));
+                        }
+                        //The field holds the function itself, so it's called without an argument array
+                        else if (call.unary != null || call.binary != null) {
+                            int args = call.unary != null ? 1 : 2;
+                            getField(operand + 1);
+                            for (int i = 0; i < args; i++)
+                                load(sp + i);
+                            op(INVOKEINTERFACE);
+                            u2(interfaceMethodRef(args == 1 ? FUNCTION1 : FUNCTION2, "apply", args == 1 ? "(D)D" : "(DD)D"));
+                            code.write(1 + 2 * args);
+                            code.write(0);
+                        }
+                        else {
+                            getField(operand + 1);
+                            getField(0);
+                            pushInt(call.arity);
+                            op(INVOKESTATIC);
+                            u2(methodRef(COMPILED, "borrowArguments", "(I)[D"));
+                            for (int i = 0; i < call.arity; i++) {
+                                op(DUP);
+                                pushInt(i);
+                                load(sp + i);
+                                op(DASTORE);
+                            }
+                            pushInt(call.arity);
+                            op(INVOKESTATIC);
+                            u2(methodRef(COMPILED, "callBorrowed", "(" + FUNCTION_DESC + FORMULA_DESC + "[DI)D"));
+                        }
+                        store(sp++);
+                        break;
+                    }
+                    default:
+                        throw new IllegalStateException("Unknown instruction " + ops[pc]);
+                }
+            }
+
+            load(0);
+            op(DRETURN);
+            return code.toByteArray();
+        }
+
+        private static int arithmetic(byte op) {
+            switch (op) {
+                case ADD: return DADD;
+                case SUB: return DSUB;
+                case MUL: return DMUL;
+                case DIV: return DDIV;
+                default: return DREM;
+            }
+        }
+
+        private void getField(int field) throws IOException {
+            op(ALOAD_0);
+            op(GETFIELD);
+            u2(fieldRef(name, fieldName(field), fieldDescs[field]));
+        }
+
+        private void load(int slot) {
+            local(DLOAD, 2 + 2 * slot);
+        }
+
+        private void store(int slot) {
+            local(DSTORE, 2 + 2 * slot);
+        }
+
+        private void local(int opcode, int index) {
+            if (index > 0xFF) {
+                op(WIDE);
+                op(opcode);
+                u2(index);
+            }
+            else {
+                op(opcode);
+                code.write(index);
+            }
+        }
+
+        private void pushInt(int value) throws IOException {
+            if (value >= -1 && value <= 5)
+                op(ICONST_0 + value);
+            else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(BIPUSH);
+                code.write(value);
+            }
+            else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(SIPUSH);
+                u2(value);
+            }
+            else {
+                op(LDC_W);
+                u2(constant("I" + value, 3, out -> out.writeInt(value)));
+            }
+        }
+
+        private void pushDouble(double value) throws IOException {
+            long bits = Double.doubleToRawLongBits(value);
+            if (bits == 0L)
+                op(DCONST_0);
+            else if (value == 1D)
+                op(DCONST_1);
+            else {
+                op(LDC2_W);
+                u2(constant("D" + bits, 6, out -> out.writeLong(bits)));
+            }
+        }
+
+        private void op(int opcode) {
+            code.write(opcode);
+        }
+
+        private void u2(int value) {
+            code.write(value >>> 8);
+            code.write(value);
+        }
+
+        private interface EntryWriter {
+            void write(DataOutputStream out) throws IOException;
+        }
+
+        //Returns the existing index when the same entry was already written
+        private int constant(String key, int tag, EntryWriter writer) throws IOException {
+            Integer existing = poolIndex.get(key);
+            if (existing != null)
+                return existing;
+
+            pool.writeByte(tag);
+            writer.write(pool);
+            int index = poolSize;
+            //Double entries take two slots
+            poolSize += tag == 6 ? 2 : 1;
+            poolIndex.put(key, index);
+            return index;
+        }
+
+        private int utf8(String value) throws IOException {
+            return constant("U" + value, 1, out -> out.writeUTF(value));
+        }
+
+        private int classRef(String internalName) throws IOException {
+            int nameIndex = utf8(internalName);
+            return constant("C" + internalName, 7, out -> out.writeShort(nameIndex));
+        }
+
+        private int nameAndType(String name, String desc) throws IOException {
+            int nameIndex = utf8(name), descIndex = utf8(desc);
+            return constant("N" + name + ":" + desc, 12, out -> {
+                out.writeShort(nameIndex);
+                out.writeShort(descIndex);
+            });
+        }
+
+        private int fieldRef(String owner, String name, String desc) throws IOException {
+            int ownerIndex = classRef(owner), nat = nameAndType(name, desc);
+            return constant("F" + owner + "." + name + ":" + desc, 9, out -> {
+                out.writeShort(ownerIndex);
+                out.writeShort(nat);
+            });
+        }
+
+        private int methodRef(String owner, String name, String desc) throws IOException {
+            int ownerIndex = classRef(owner), nat = nameAndType(name, desc);
+            return constant("M" + owner + "." + name + ":" + desc, 10, out -> {
+                out.writeShort(ownerIndex);
+                out.writeShort(nat);
+            });
+        }
+
+        private int interfaceMethodRef(String owner, String name, String desc) throws IOException {
+            int ownerIndex = classRef(owner), nat = nameAndType(name, desc);
+            return constant("I" + owner + "." + name + ":" + desc, 11, out -> {
+                out.writeShort(ownerIndex);
+                out.writeShort(nat);
+            });
+        }
+    }
+
+}
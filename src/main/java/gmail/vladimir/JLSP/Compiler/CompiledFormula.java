@@ -0,0 +1,516 @@
+package gmail.vladimir.JLSP.Compiler;
+
+import gmail.vladimir.JLSP.Interfaces.DoubleFormula;
+import gmail.vladimir.JLSP.Interfaces.FlaggedOperatorCompute;
+import gmail.vladimir.JLSP.Interfaces.Function1;
+import gmail.vladimir.JLSP.Interfaces.Function2;
+import gmail.vladimir.JLSP.Interfaces.FunctionCompute;
+import gmail.vladimir.JLSP.Interfaces.OperatorCompute;
+import gmail.vladimir.JLSP.Parser.DefaultOperators;
+import gmail.vladimir.JLSP.Parser.EvaluatedFunction;
+import gmail.vladimir.JLSP.Parser.Parser;
+import gmail.vladimir.JLSP.Parser.ParserConfig;
+import gmail.vladimir.JLSP.Variables.*;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A {@link Formula} lowered into a flat postfix program that is evaluated on a primitive double stack.<br/>
+ * The program follows the exact same steps as {@link Formula#inOperationOrderResult(double...)}, but without walking the entity graph, so both always return the same value.<br/><br/>
+ *
+ * Every operator chain keeps two values on the stack, the accumulated result and the last value that was applied to it.
+ * The last value is what the '^' sign handling needs to know whether the left side was negative, the rest of its flags are known when compiling.<br/><br/>
+ *
+ * Functions receive their arguments already evaluated, each argument is evaluated exactly once, from left to right.
+ * Params past the arity of an {@link EvaluatedFunction} are skipped like the formula skips them, any other function gets every param evaluated even if it never reads them.
+ */
+public class CompiledFormula implements DoubleFormula {
+
+    static final byte CONST = 0;
+    static final byte VAR = 1;
+    static final byte NEG_VAR = 2;
+    //Pushes a new chain, result 0 and no last value
+    static final byte START = 3;
+    //Turns a value into a new chain, result and last value
+    static final byte DUP = 4;
+    //Pushes a copy of the value that is operand slots below the top
+    static final byte PICK = 5;
+    //[result, last] -> [result, 0, last], saves the result of a finished operation order segment
+    static final byte SPILL = 6;
+    static final byte POP = 7;
+    //Moves the top value operand slots down and drops everything above it
+    static final byte SLIDE = 8;
+    //[result, last, value] -> [result op value, value]
+    static final byte ADD = 9;
+    static final byte SUB = 10;
+    static final byte MUL = 11;
+    static final byte DIV = 12;
+    static final byte REM = 13;
+    static final byte POW = 14;
+    static final byte OPERATOR = 15;
+    static final byte CALL = 16;
+
+    /**
+     * The left side of the operation ended with a nested formula
+     */
+    public static final int WAS_FORMULA = FlaggedOperatorCompute.WAS_FORMULA;
+    /**
+     * The last value of the left side was negative
+     */
+    public static final int INNER_NEGATIVE = FlaggedOperatorCompute.INNER_NEGATIVE;
+    /**
+     * The nested formula on the left side was preceded by a '-'
+     */
+    public static final int OUTER_MINUS = FlaggedOperatorCompute.OUTER_MINUS;
+    static final int FLAG_BITS = 3;
+
+    private final Formula owner;
+    final byte[] code;
+    final int[] operands;
+    final double[] constants;
+    final Object[] refs;
+    final int maxStack;
+    private final int configVersion;
+    private final double[] stack;
+
+    private CompiledFormula(Formula owner, byte[] code, int[] operands, double[] constants, Object[] refs, int maxStack, int configVersion) {
+        this.owner = owner;
+        this.code = code;
+        this.operands = operands;
+        this.constants = constants;
+        this.refs = refs;
+        this.maxStack = maxStack;
+        this.configVersion = configVersion;
+        this.stack = new double[maxStack];
+    }
+
+    /**
+     * See {@link Formula#compile()}
+     */
+    public static CompiledFormula compile(Formula formula) {
+        Emitter emitter = new Emitter(formula.getParser().getConfig());
+        emitter.formula(formula);
+        return emitter.finish(formula);
+    }
+
+    /**
+     * Returns the formula this program was compiled from
+     */
+    public Formula getOwner() {
+        return owner;
+    }
+
+    /**
+     * Returns the number of variables the program reads, in the same order as {@link Formula#getVariables()}
+     */
+    public int getRequiredVariables() {
+        return owner.getRequiredVariables();
+    }
+
+    /**
+     * Returns the number of stack slots needed to evaluate the program
+     */
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    /**
+     * Returns the number of instructions in the program
+     */
+    public int size() {
+        return code.length;
+    }
+
+    /**
+     * Returns true if operators or functions changed on the parser after this program was compiled, see {@link Parser#getConfigVersion()}
+     */
+    public boolean isOutdated() {
+        return owner.getParser().getConfigVersion() != configVersion;
+    }
+
+    /**
+     * Evaluates the program using the current variable values of the formula it was compiled from
+     * @throws IllegalArgumentException If the formula is still missing variables
+     */
+    public double result() {
+        if(!owner.hasAllVariables())
+            throw new IllegalArgumentException("The replacement values cannot be empty");
+        return execute(owner.getVariableValues(), stack);
+    }
+
+    /**
+     * Evaluates the program using the provided values, in the same order as {@link Formula#getVariables()}. The formula's own values are not touched.<br/>
+     * Uses a stack that belongs to this object, so a single instance must not be evaluated by multiple threads at once.
+     */
+    public double result(double... variables) {
+        if(variables.length < getRequiredVariables())
+            throw new IllegalArgumentException("The number of variables must be the same as the number of variables in the formula");
+        return execute(variables, stack);
+    }
+
+    /**
+     * Evaluates the program using the values and the stack of the provided context.<br/>
+     * Nothing that belongs to this object or the formula is written to, so multiple threads can call this at once as long as each uses its own context.
+     * @throws IllegalArgumentException If the context holds fewer variables than the formula needs
+     */
+    public double result(EvalContext context) {
+        double[] variables = context.getVariables();
+        if(variables.length < getRequiredVariables())
+            throw new IllegalArgumentException("The number of variables must be the same as the number of variables in the formula");
+        return execute(variables, context.stack(maxStack));
+    }
+
+    /**
+     * See {@link CompiledFormula#result(double...)}
+     */
+    @Override
+    public double eval(double[] vars) {
+        return result(vars);
+    }
+
+    final double execute(double[] vars, double[] stack) {
+        final byte[] code = this.code;
+        final int[] operands = this.operands;
+        int sp = 0;
+
+        for (int pc = 0; pc < code.length; pc++) {
+            int operand = operands[pc];
+            switch (code[pc]) {
+                case CONST: stack[sp++] = constants[operand]; break;
+                case VAR: stack[sp++] = vars[operand]; break;
+                case NEG_VAR: stack[sp++] = -vars[operand]; break;
+                case START: stack[sp++] = 0D; stack[sp++] = 0D; break;
+                case DUP: stack[sp] = stack[sp - 1]; sp++; break;
+                case PICK: stack[sp] = stack[sp - 1 - operand]; sp++; break;
+                case SPILL: stack[sp] = stack[sp - 1]; stack[sp - 1] = 0D; sp++; break;
+                case POP: sp--; break;
+                case SLIDE: stack[sp - 1 - operand] = stack[sp - 1]; sp -= operand; break;
+                case ADD: sp--; stack[sp - 2] = stack[sp - 2] + stack[sp]; stack[sp - 1] = stack[sp]; break;
+                case SUB: sp--; stack[sp - 2] = stack[sp - 2] - stack[sp]; stack[sp - 1] = stack[sp]; break;
+                case MUL: sp--; stack[sp - 2] = stack[sp - 2] * stack[sp]; stack[sp - 1] = stack[sp]; break;
+                case DIV: sp--; stack[sp - 2] = stack[sp - 2] / stack[sp]; stack[sp - 1] = stack[sp]; break;
+                case REM: sp--; stack[sp - 2] = stack[sp - 2] % stack[sp]; stack[sp - 1] = stack[sp]; break;
+                case POW:
+                    sp--;
+                    stack[sp - 2] = pow(stack[sp - 2], stack[sp], stack[sp - 1], operand);
+                    stack[sp - 1] = stack[sp];
+                    break;
+                case OPERATOR:
+                    sp--;
+                    stack[sp - 2] = applyOperator((OperatorCompute) refs[operand >>> FLAG_BITS], stack[sp - 2], stack[sp], stack[sp - 1], operand);
+                    stack[sp - 1] = stack[sp];
+                    break;
+                case CALL: {
+                    FunctionCall call = (FunctionCall) refs[operand];
+                    int arity = call.arity;
+                    sp -= arity;
+                    if (call.unary != null)
+                        stack[sp] = call.unary.apply(stack[sp]);
+                    else if (call.binary != null)
+                        stack[sp] = call.binary.apply(stack[sp], stack[sp + 1]);
+                    else
+                        stack[sp] = callFunction(call.compute, owner, stack, sp, arity);
+                    sp++;
+                    break;
+                }
+                default: throw new IllegalStateException("Unknown instruction " + code[pc]);
+            }
+        }
+
+        return stack[0];
+    }
+
+    /**
+     * The default '^' operator
+     * @param last The last value that was applied to the left side
+     * @param flags The compile time flags of the left side
+     */
+    public static double pow(double left, double right, double last, int flags) {
+        return DefaultOperators.pow(left, right, (flags & WAS_FORMULA) != 0, last < 0.0D, (flags & OUTER_MINUS) != 0);
+    }
+
+    /**
+     * Calls a custom operator the same way {@link Parser#compute(char, double, double, int)} does
+     * @param last The last value that was applied to the left side
+     * @param flags The compile time flags of the left side
+     */
+    public static double applyOperator(OperatorCompute op, double left, double right, double last, int flags) {
+        return op.apply(left, right, (flags & (WAS_FORMULA | OUTER_MINUS)) | (last < 0.0D ? INNER_NEGATIVE : 0));
+    }
+
+    /**
+     * Calls a function with arguments that were already evaluated
+     * @param args Holds the arguments, starting at from
+     */
+    public static double callFunction(FunctionCompute compute, Formula caller, double[] args, int from, int count) {
+        if (compute instanceof EvaluatedFunction)
+            return ((EvaluatedFunction) compute).apply(args, from, count);
+
+        FormulaEntity<?>[] entities = new FormulaEntity<?>[count];
+        for (int i = 0; i < count; i++)
+            entities[i] = new StaticVariable(args[from + i], caller.getParser().getDefaultOperator());
+        return compute.compute(caller, true, entities);
+    }
+
+    /**
+     * Takes the argument buffer of the current thread, the classes made by {@link BytecodeCompiler} have no scratch space of their own.
+     * It goes back with {@link CompiledFormula#callBorrowed(FunctionCompute, Formula, double[], int)}, a function that evaluates another generated formula in the meantime gets a new one
+     * @return An array with room for at least count arguments, starting at 0
+     */
+    public static double[] borrowArguments(int count) {
+        double[][] slot = ARGUMENTS.get();
+        double[] args = slot[0];
+        if (args == null || args.length < count)
+            return new double[count];
+
+        slot[0] = null;
+        return args;
+    }
+
+    /**
+     * Same as {@link CompiledFormula#callFunction(FunctionCompute, Formula, double[], int, int)} with the arguments from 0, and gives the buffer back to the current thread afterwards
+     */
+    public static double callBorrowed(FunctionCompute compute, Formula caller, double[] args, int count) {
+        try {
+            return callFunction(compute, caller, args, 0, count);
+        }
+        finally {
+            ARGUMENTS.get()[0] = args;
+        }
+    }
+
+    /**
+     * Evaluates the program once per row, see {@link Formula#evaluateBatch(double[][], double[])}
+     */
+    public void evaluateBatch(double[][] columns, double[] out) {
+        evaluateBatch(columns, out, 0, out.length);
+    }
+
+    /**
+     * Evaluates the program for the rows from (inclusive) to (exclusive), row i reads columns[v][i] and writes the result to out[i].<br/>
+     * The columns are in the same order as {@link Formula#getVariables()}. Neither the formula's values nor its cache are touched, and the results match {@link CompiledFormula#result(double...)}.<br/><br/>
+     *
+     * The scratch space is allocated per call, so unlike {@link CompiledFormula#result(double...)} this method can be called by multiple threads at once.
+     * Functions without a plain math implementation still receive their arguments as entities, which allocates for every row.
+     * @throws IllegalArgumentException If there are not enough columns, or a column is shorter than to
+     */
+    public void evaluateBatch(double[][] columns, double[] out, int from, int to) {
+        checkBatch(columns, out, from, to);
+        new BatchExecutor(this).execute(columns, out, from, to);
+    }
+
+    /**
+     * Same as {@link CompiledFormula#evaluateBatch(double[][], double[])}, but splits the rows into chunks that are evaluated by the pool's workers.<br/>
+     * Each worker has its own scratch space, reused for every chunk it evaluates, and each chunk writes to its own range of out. Custom operators and functions the formula uses must be safe to call from multiple threads.<br/>
+     * Blocks until every row has been evaluated, small batches are evaluated on the calling thread.
+     */
+    public void evaluateBatchParallel(double[][] columns, double[] out, ForkJoinPool pool) {
+        checkBatch(columns, out, 0, out.length);
+
+        if (out.length <= ParallelBatch.THRESHOLD) {
+            new BatchExecutor(this).execute(columns, out, 0, out.length);
+            return;
+        }
+        pool.invoke(new ParallelBatch(new PerWorker<>(() -> new BatchExecutor(this)), columns, out, 0, out.length));
+    }
+
+    final void checkBatch(double[][] columns, double[] out, int from, int to) {
+        if (from < 0 || to > out.length || from > to)
+            throw new IllegalArgumentException("Invalid row range " + from + " to " + to + " for " + out.length + " rows");
+        if (columns.length < getRequiredVariables())
+            throw new IllegalArgumentException("The number of columns must be the same as the number of variables in the formula");
+        for (int i = 0; i < getRequiredVariables(); i++)
+            if (columns[i].length < to)
+                throw new IllegalArgumentException("Column " + i + " has " + columns[i].length + " rows, expected at least " + to);
+    }
+
+    //The buffer of each thread, null while a generated formula is using it
+    private static final ThreadLocal<double[][]> ARGUMENTS = ThreadLocal.withInitial(() -> new double[1][]);
+
+    /**
+     * A function call with the implementation resolved at compile time
+     */
+    static final class FunctionCall {
+        final String id;
+        final FunctionCompute compute;
+        final int arity;
+        //Set for evaluated functions of one or two arguments, the same implementation called without an argument array
+        final Function1 unary;
+        final Function2 binary;
+
+        FunctionCall(String id, FunctionCompute compute, int arity) {
+            this.id = id;
+            this.compute = compute;
+            this.arity = arity;
+
+            //The arity is already cut to the one of an evaluated function, so it's only lower when params are missing and the call has to throw
+            EvaluatedFunction evaluated = compute instanceof EvaluatedFunction ? (EvaluatedFunction) compute : null;
+            this.unary = evaluated != null && arity >= 1 ? evaluated.getFunction1() : null;
+            this.binary = evaluated != null && arity >= 2 ? evaluated.getFunction2() : null;
+        }
+    }
+
+    /**
+     * Walks the entity graph once and writes the program, tracking the stack depth as it goes
+     */
+    private static final class Emitter {
+        //Read once, so the whole program comes from one configuration even if the parser changes while compiling
+        private final ParserConfig config;
+        private byte[] code = new byte[32];
+        private int[] operands = new int[32];
+        private int size = 0;
+        private double[] constants = new double[8];
+        private int constantCount = 0;
+        private Object[] refs = new Object[4];
+        private int refCount = 0;
+        private int depth = 0, maxDepth = 0;
+
+        Emitter(ParserConfig config) {
+            this.config = config;
+        }
+
+        private void emit(byte op, int operand, int stackChange) {
+            if (size == code.length) {
+                code = Arrays.copyOf(code, size * 2);
+                operands = Arrays.copyOf(operands, size * 2);
+            }
+            code[size] = op;
+            operands[size++] = operand;
+            depth += stackChange;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        private int constant(double value) {
+            if (constantCount == constants.length)
+                constants = Arrays.copyOf(constants, constantCount * 2);
+            constants[constantCount] = value;
+            return constantCount++;
+        }
+
+        private int ref(Object ref) {
+            if (refCount == refs.length)
+                refs = Arrays.copyOf(refs, refCount * 2);
+            refs[refCount] = ref;
+            return refCount++;
+        }
+
+        //Leaves exactly one value on the stack, the in operation order result of the formula
+        void formula(Formula formula) {
+            FormulaEntity<?>[] ioo = formula.getInOperationOrder();
+            FormulaEntity<?>[] lowest = formula.getLowestPriority();
+            int segments = 0;
+
+            if (ioo.length > 0) {
+                FormulaEntity<?> entity = ioo[0];
+                entity(entity);
+                emit(DUP, 0, 1);
+                int flags = flagsOf(entity);
+
+                for (int i = 1; i < ioo.length; i++) {
+                    entity = ioo[i];
+                    if (config.getOperatorPriority(entity.getPrecedentSymbol()) == 0) {
+                        emit(SPILL, 0, 1);
+                        segments++;
+                    }
+                    entity(entity);
+                    apply(entity.getPrecedentSymbol(), flags);
+                    flags = flagsOf(entity);
+                }
+                emit(POP, 0, -1);
+                segments++;
+            }
+
+            emit(START, 0, 2);
+            int flags = 0;
+            for (FormulaEntity<?> entity : lowest) {
+                entity(entity);
+                apply(entity.getPrecedentSymbol(), flags);
+                flags = flagsOf(entity);
+            }
+            emit(POP, 0, -1);
+
+            if (segments == 0)
+                return;
+
+            //The segment results are applied after the lowest priority ones, the same as the extra list in Formula#result
+            emit(CONST, constant(0D), 1);
+            char defaultOperator = config.getDefaultOperator();
+            for (int i = 1; i <= segments; i++) {
+                emit(PICK, 2 + segments - i, 1);
+                apply(defaultOperator, 0);
+            }
+            emit(POP, 0, -1);
+            emit(SLIDE, segments, -segments);
+        }
+
+        private void entity(FormulaEntity<?> entity) {
+            if (entity instanceof StaticVariable)
+                emit(CONST, constant(((StaticVariable) entity).doubleValue()), 1);
+
+            else if (entity instanceof Formula)
+                formula((Formula) entity);
+
+            else if (entity instanceof Function)
+                function((Function) entity);
+
+            else {
+                ReplaceableVariable variable = (ReplaceableVariable) entity;
+                emit(variable.isNegative() ? NEG_VAR : VAR, variable.getIndex(), 1);
+            }
+        }
+
+        private void function(Function function) {
+            FunctionCompute compute = config.getFunction(function.getId());
+
+            //Unknown functions return 0 without looking at their params
+            if (compute == null) {
+                emit(CONST, constant(0D), 1);
+                return;
+            }
+
+            FormulaEntity<?>[] params = function.getParams();
+            int count = params.length;
+            if (compute instanceof EvaluatedFunction && ((EvaluatedFunction) compute).getArity() >= 0) {
+                EvaluatedFunction evaluated = (EvaluatedFunction) compute;
+                //A constant like pi, its params are never evaluated either
+                if (evaluated.getArity() == 0) {
+                    emit(CONST, constant(evaluated.apply(new double[0], 0, 0)), 1);
+                    return;
+                }
+                count = Math.min(count, evaluated.getArity());
+            }
+
+            for (int i = 0; i < count; i++)
+                entity(params[i]);
+
+            emit(CALL, ref(new FunctionCall(function.getId(), compute, count)), 1 - count);
+        }
+
+        private void apply(char c, int flags) {
+            OperatorCompute op = config.getOperator(c);
+
+            if (op == null)
+                throw new NullPointerException("Character " + c + " is not a valid operator but the formula uses it. Please update your settings accordingly.");
+
+            if (op == DefaultOperators.ADD) emit(ADD, 0, -1);
+            else if (op == DefaultOperators.SUBTRACT) emit(SUB, 0, -1);
+            else if (op == DefaultOperators.MULTIPLY) emit(MUL, 0, -1);
+            else if (op == DefaultOperators.DIVIDE) emit(DIV, 0, -1);
+            else if (op == DefaultOperators.MODULO) emit(REM, 0, -1);
+            else if (op == DefaultOperators.POW) emit(POW, flags, -1);
+            else emit(OPERATOR, ref(op) << FLAG_BITS | flags, -1);
+        }
+
+        private static int flagsOf(FormulaEntity<?> entity) {
+            if (!(entity instanceof Formula))
+                return 0;
+            return entity.getPrecedentSymbol() == '-' ? WAS_FORMULA | OUTER_MINUS : WAS_FORMULA;
+        }
+
+        CompiledFormula finish(Formula owner) {
+            return new CompiledFormula(owner, Arrays.copyOf(code, size), Arrays.copyOf(operands, size), Arrays.copyOf(constants, constantCount), Arrays.copyOf(refs, refCount), Math.max(maxDepth, 1), config.getVersion());
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+package gmail.vladimir.JLSP.Compiler;
+
+import gmail.vladimir.JLSP.Variables.Formula;
+
+/**
+ * Holds everything that changes between two evaluations of the same formula, the variable values and the scratch stack.<br/>
+ * The formula and its compiled program are never written to while evaluating, so any number of threads can evaluate a single formula at once, each with its own context.<br/><br/>
+ *
+ * A context is not thread safe itself, keep one per thread (or per request) and reuse it to avoid allocating.
+ * <pre> {@code
+ * EvalContext ctx = new EvalContext(formula);
+ * ctx.setVariables(2, 3);
+ * formula.result(ctx);
+ * }</pre>
+ */
+public final class EvalContext {
+
+    private final double[] variables;
+    private double[] stack;
+
+    /**
+     * Creates a context that can hold the given amount of variables
+     */
+    public EvalContext(int variables) {
+        this.variables = new double[variables];
+        this.stack = new double[16];
+    }
+
+    /**
+     * Creates a context that can hold the variables of the given formula, see {@link Formula#getRequiredVariables()}
+     */
+    public EvalContext(Formula formula) {
+        this(formula.getRequiredVariables());
+    }
+
+    /**
+     * Sets the variable values, in the same order as {@link Formula#getVariables()}.<br/>
+     * If more values are provided than the context can hold, they'll just be ignored.
+     * @return The same object for easy access to chain other similar methods
+     */
+    public EvalContext setVariables(double... values) {
+        System.arraycopy(values, 0, variables, 0, Math.min(values.length, variables.length));
+        return this;
+    }
+
+    /**
+     * Sets the value of the variable at the given index, in the same order as {@link Formula#getVariables()}, see {@link Formula#slotOf(char)}
+     * @return The same object for easy access to chain other similar methods
+     */
+    public EvalContext setVariable(int index, double value) {
+        variables[index] = value;
+        return this;
+    }
+
+    /**
+     * Returns the variable values. This is the array the context evaluates with, so changes made to it are used by the next evaluation
+     */
+    public double[] getVariables() {
+        return variables;
+    }
+
+    //Grows the stack if a program needs more slots than the previous ones did
+    double[] stack(int size) {
+        if (stack.length < size)
+            stack = new double[Math.max(size, stack.length * 2)];
+        return stack;
+    }
+
+}
@@ -0,0 +1,199 @@
+package gmail.vladimir.JLSP.Compiler;
+
+import gmail.vladimir.JLSP.Variables.Formula;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates a compiled formula for every row of a binary file and writes the results to another file, both files are memory mapped.<br/>
+ * A row of the input is a little endian double for each variable, in the same order as {@link Formula#getVariables()}, with nothing between the rows. The output gets one little endian double per row.<br/><br/>
+ *
+ * The files are mapped one chunk of rows at a time, and each chunk is evaluated in blocks by a {@link BatchExecutor}, the block is the only part of the input that's copied to the heap.
+ * The heap used only depends on the number of variables and workers, never on the size of the files.<br/>
+ * Every chunk maps its own part of both files, so chunks can be evaluated by different workers without sharing anything but the read only program.
+ * The results are written through the mapping, they reach the disk whenever the system flushes them.
+ * <pre> {@code
+ * new FormulaFileEvaluator(formula.getCompiled()).evaluateParallel(input, output, ForkJoinPool.commonPool());
+ * }</pre>
+ */
+public final class FormulaFileEvaluator {
+
+    /**
+     * Rows mapped at once by default
+     */
+    public static final int DEFAULT_CHUNK_ROWS = 1 << 16;
+
+    private final CompiledFormula program;
+    private final int variables;
+    private final int chunkRows;
+
+    /**
+     * @param program The program evaluated for every row
+     * @throws IllegalArgumentException If the formula has no variables, since the rows would be empty
+     */
+    public FormulaFileEvaluator(CompiledFormula program) {
+        this(program, DEFAULT_CHUNK_ROWS);
+    }
+
+    /**
+     * @param program The program evaluated for every row
+     * @param chunkRows The rows mapped at once, rounded up to a whole number of blocks. Lowered if a chunk of the input would be larger than 2GB
+     * @throws IllegalArgumentException If the formula has no variables, since the rows would be empty, or if chunkRows isn't positive
+     */
+    public FormulaFileEvaluator(CompiledFormula program, int chunkRows) {
+        if (program.getRequiredVariables() == 0)
+            throw new IllegalArgumentException("The formula has no variables, its rows would be empty");
+        if (chunkRows <= 0)
+            throw new IllegalArgumentException("The rows per chunk must be positive, got " + chunkRows);
+
+        this.program = program;
+        this.variables = program.getRequiredVariables();
+
+        long rows = (chunkRows + BatchExecutor.BLOCK - 1L) / BatchExecutor.BLOCK * BatchExecutor.BLOCK;
+        long maxRows = Integer.MAX_VALUE / (Double.BYTES * variables) / BatchExecutor.BLOCK * BatchExecutor.BLOCK;
+        this.chunkRows = (int) Math.max(BatchExecutor.BLOCK, Math.min(rows, maxRows));
+    }
+
+    /**
+     * Returns the bytes of one row of the input
+     */
+    public int getRowBytes() {
+        return variables * Double.BYTES;
+    }
+
+    public int getChunkRows() {
+        return chunkRows;
+    }
+
+    /**
+     * Evaluates every row of the input on the calling thread, see {@link FormulaFileEvaluator#evaluateParallel(Path, Path, ForkJoinPool)}
+     */
+    public long evaluate(Path input, Path output) throws IOException {
+        return evaluate(input, output, null);
+    }
+
+    /**
+     * Evaluates every row of the input and writes the results to the output, which is created or replaced and ends up with 8 bytes per row.<br/>
+     * The chunks are evaluated by the pool's workers, each with its own scratch space. Custom operators and functions the formula uses must be safe to call from multiple threads.
+     *
+     * @return The number of rows
+     * @throws IllegalArgumentException If the size of the input isn't a whole number of rows
+     */
+    public long evaluateParallel(Path input, Path output, ForkJoinPool pool) throws IOException {
+        return evaluate(input, output, pool);
+    }
+
+    private long evaluate(Path input, Path output, ForkJoinPool pool) throws IOException {
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            long size = in.size();
+            int rowBytes = getRowBytes();
+            if (size % rowBytes != 0)
+                throw new IllegalArgumentException("The input has " + size + " bytes, which isn't a whole number of " + rowBytes + " byte rows");
+
+            long rows = size / rowBytes;
+            if (rows == 0)
+                return 0;
+
+            //Sized up front, so the chunks never have to grow the file while mapping it
+            out.write(ByteBuffer.allocate(1), rows * Double.BYTES - 1);
+
+            long chunks = (rows + chunkRows - 1) / chunkRows;
+            if (pool == null || chunks == 1) {
+                Worker worker = new Worker();
+                for (long chunk = 0; chunk < chunks; chunk++)
+                    worker.evaluateChunk(in, out, chunk, rows);
+                return rows;
+            }
+
+            try {
+                pool.invoke(new Chunks(new PerWorker<>(Worker::new), in, out, rows, 0, chunks));
+            }
+            catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * The scratch space of one worker, a block of rows as they're stored in the file and the same block split into columns. It's reused for every chunk the worker evaluates
+     */
+    private final class Worker {
+
+        private final BatchExecutor executor = new BatchExecutor(program);
+        private final double[] rows = new double[BatchExecutor.BLOCK * variables];
+        private final double[][] columns = new double[variables][BatchExecutor.BLOCK];
+
+        void evaluateChunk(FileChannel in, FileChannel out, long chunk, long totalRows) throws IOException {
+            long firstRow = chunk * chunkRows;
+            int count = (int) Math.min(chunkRows, totalRows - firstRow);
+            DoubleBuffer values = in.map(FileChannel.MapMode.READ_ONLY, firstRow * getRowBytes(), (long) count * getRowBytes())
+                    .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            DoubleBuffer results = out.map(FileChannel.MapMode.READ_WRITE, firstRow * Double.BYTES, (long) count * Double.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+
+            final int variables = FormulaFileEvaluator.this.variables;
+            for (int start = 0; start < count; start += BatchExecutor.BLOCK) {
+                int len = Math.min(BatchExecutor.BLOCK, count - start);
+                values.get(rows, 0, len * variables);
+                for (int v = 0; v < variables; v++) {
+                    double[] column = columns[v];
+                    for (int r = 0, i = v; r < len; r++, i += variables)
+                        column[r] = rows[i];
+                }
+                results.put(executor.evaluateBlock(columns, len), 0, len);
+            }
+        }
+
+    }
+
+    /**
+     * Splits the chunks in halves until a single one is left, like {@link ParallelBatch} does with rows
+     */
+    private final class Chunks extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final PerWorker<Worker> workers;
+        private final FileChannel in, out;
+        private final long rows, from, to;
+
+        Chunks(PerWorker<Worker> workers, FileChannel in, FileChannel out, long rows, long from, long to) {
+            this.workers = workers;
+            this.in = in;
+            this.out = out;
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                long mid = (from + to) >>> 1;
+                invokeAll(new Chunks(workers, in, out, rows, from, mid), new Chunks(workers, in, out, rows, mid, to));
+                return;
+            }
+
+            try {
+                workers.get().evaluateChunk(in, out, from, rows);
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+    }
+
+}
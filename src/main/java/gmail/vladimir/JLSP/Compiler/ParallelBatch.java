@@ -0,0 +1,43 @@
+package gmail.vladimir.JLSP.Compiler;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits a batch into row ranges until they are small enough, then evaluates each range with the {@link BatchExecutor} of the worker running it.<br/>
+ * Every task writes to a disjoint range of the output, and a worker only runs one range at a time, so its executor's scratch blocks are never shared.
+ */
+final class ParallelBatch extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Rows below which a range is no longer split, a multiple of {@link BatchExecutor#BLOCK} so only the last range has a partial block
+     */
+    static final int THRESHOLD = BatchExecutor.BLOCK * 16;
+
+    private final PerWorker<BatchExecutor> executors;
+    private final double[][] columns;
+    private final double[] out;
+    private final int from, to;
+
+    ParallelBatch(PerWorker<BatchExecutor> executors, double[][] columns, double[] out, int from, int to) {
+        this.executors = executors;
+        this.columns = columns;
+        this.out = out;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= THRESHOLD) {
+            executors.get().execute(columns, out, from, to);
+            return;
+        }
+
+        int blocks = (to - from + BatchExecutor.BLOCK - 1) / BatchExecutor.BLOCK;
+        int mid = from + (blocks / 2) * BatchExecutor.BLOCK;
+        invokeAll(new ParallelBatch(executors, columns, out, from, mid), new ParallelBatch(executors, columns, out, mid, to));
+    }
+
+}
@@ -0,0 +1,39 @@
+package gmail.vladimir.JLSP.Compiler;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * The scratch state of every thread taking part in one parallel evaluation, created the first time a thread asks for it and reused by every task it runs after that.<br/>
+ * It's dropped together with the evaluation, so the pool's threads never keep a formula or its buffers alive once it's done.
+ */
+final class PerWorker<T> {
+
+    private final ConcurrentHashMap<Thread, T> values = new ConcurrentHashMap<>();
+    private final Supplier<T> factory;
+
+    PerWorker(Supplier<T> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Returns the state of the calling thread. Only the calling thread ever adds its own entry, so there's no race between the lookup and the put
+     */
+    T get() {
+        Thread thread = Thread.currentThread();
+        T value = values.get(thread);
+        if (value == null) {
+            value = factory.get();
+            values.put(thread, value);
+        }
+        return value;
+    }
+
+    /**
+     * Returns how many threads created their state
+     */
+    int size() {
+        return values.size();
+    }
+
+}
@@ -1,36 +1,78 @@
 package gmail.vladimir.JLSP.Helpers;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
- * Class used to add names and prefixes for function support
+ * Class used to add names and prefixes for function support.<br/>
+ * The names are stored as a trie, every prefix is a state and {@link NameSearcher#next(int, char)} moves from a prefix to the one with an extra character,
+ * so the parser can follow a name one character at a time without building any string.<br/><br/>
+ *
+ * All the edges are kept in a single open addressing table keyed by (state, character), so each step is a single probe most of the time.
+ * Removed names only lower the counts of their states, the states themselves stay in the table and get reused if the name is added again.
  */
 public class NameSearcher {
 
-    private Map<String, Integer> prefixCounts = new HashMap<>();
+    /**
+     * The state of the empty prefix
+     */
+    public static final int ROOT = 0;
+    /**
+     * Returned by {@link NameSearcher#next(int, char)} when the prefix plus the character isn't the prefix of any name
+     */
+    public static final int NONE = -1;
+
+    private static final long EMPTY = -1L;
+
+    private long[] edgeKeys;
+    private int[] edgeTargets;
+    private int edgeCount;
+
+    //Per state, how many names start with the prefix and how many names are equal to it
+    private int[] prefixCounts;
+    private int[] nameCounts;
+    private int stateCount;
+
+    public NameSearcher() {
+        clear();
+    }
+
+    /**
+     * Creates a copy with the same names, changes to either one don't affect the other
+     */
+    public NameSearcher(NameSearcher other) {
+        this.edgeKeys = other.edgeKeys.clone();
+        this.edgeTargets = other.edgeTargets.clone();
+        this.edgeCount = other.edgeCount;
+        this.prefixCounts = other.prefixCounts.clone();
+        this.nameCounts = other.nameCounts.clone();
+        this.stateCount = other.stateCount;
+    }
 
     /**
      * Method that breaks a string into multiple prefixes for searching purposes
      */
     public void addName(String name) {
-        StringBuilder sb = new StringBuilder();
-        for (char c : name.toCharArray()) {
-            sb.append(c);
-            String prefix = sb.toString();
-            prefixCounts.merge(prefix, 1, Integer::sum);
+        int state = ROOT;
+        for (int i = 0; i < name.length(); i++) {
+            state = child(state, name.charAt(i), true);
+            prefixCounts[state]++;
         }
+        nameCounts[state]++;
     }
 
     /**
      * Removes the name and prefixes for the selected function. Should certain prefixes also be shared by other functions, they will not be deleted.
      */
     public void removeName(String name) {
-        StringBuilder sb = new StringBuilder();
-        for (char c : name.toCharArray()) {
-            sb.append(c);
-            String prefix = sb.toString();
-            prefixCounts.computeIfPresent(prefix, (k, v) -> v == 1 ? null : v - 1);
+        int state = find(name);
+        if (state == NONE || nameCounts[state] == 0)
+            return;
+
+        nameCounts[state]--;
+        state = ROOT;
+        for (int i = 0; i < name.length(); i++) {
+            state = child(state, name.charAt(i), false);
+            prefixCounts[state]--;
         }
     }
 
@@ -38,14 +80,105 @@ public class NameSearcher {
      * Check if the current string is a valid function prefix
      */
     public boolean exists(String prefix) {
-        return prefixCounts.containsKey(prefix);
+        return !prefix.isEmpty() && find(prefix) != NONE;
+    }
+
+    /**
+     * Moves from the state of a prefix to the state of that prefix followed by c
+     * @return The new state, or {@link NameSearcher#NONE} if no name starts with it
+     */
+    public int next(int state, char c) {
+        long key = key(state, c);
+        int mask = edgeKeys.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            long k = edgeKeys[i];
+            if (k == key) {
+                int target = edgeTargets[i];
+                return prefixCounts[target] == 0 ? NONE : target;
+            }
+            if (k == EMPTY)
+                return NONE;
+        }
+    }
+
+    /**
+     * Whether the prefix of the given state is a full name
+     */
+    public boolean isName(int state) {
+        return nameCounts[state] != 0;
     }
 
     /**
      * Clears every function name
      */
     public void clear(){
-        prefixCounts.clear();
+        edgeKeys = new long[64];
+        Arrays.fill(edgeKeys, EMPTY);
+        edgeTargets = new int[64];
+        edgeCount = 0;
+        prefixCounts = new int[16];
+        nameCounts = new int[16];
+        stateCount = 1;
+    }
+
+    private int find(String prefix) {
+        int state = ROOT;
+        for (int i = 0; i < prefix.length() && state != NONE; i++)
+            state = next(state, prefix.charAt(i));
+        return state;
+    }
+
+    //Returns the child state, creating it if it's missing and create is true
+    private int child(int state, char c, boolean create) {
+        long key = key(state, c);
+        int mask = edgeKeys.length - 1;
+        int i = hash(key) & mask;
+        for (; edgeKeys[i] != EMPTY; i = (i + 1) & mask)
+            if (edgeKeys[i] == key)
+                return edgeTargets[i];
+
+        if (!create)
+            return NONE;
+
+        if (stateCount == prefixCounts.length) {
+            prefixCounts = Arrays.copyOf(prefixCounts, stateCount * 2);
+            nameCounts = Arrays.copyOf(nameCounts, stateCount * 2);
+        }
+
+        int target = stateCount++;
+        edgeKeys[i] = key;
+        edgeTargets[i] = target;
+        if (++edgeCount * 2 > edgeKeys.length)
+            grow();
+        return target;
+    }
+
+    private void grow() {
+        long[] oldKeys = edgeKeys;
+        int[] oldTargets = edgeTargets;
+        edgeKeys = new long[oldKeys.length * 2];
+        Arrays.fill(edgeKeys, EMPTY);
+        edgeTargets = new int[oldTargets.length * 2];
+
+        int mask = edgeKeys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == EMPTY)
+                continue;
+            int i = hash(oldKeys[j]) & mask;
+            while (edgeKeys[i] != EMPTY)
+                i = (i + 1) & mask;
+            edgeKeys[i] = oldKeys[j];
+            edgeTargets[i] = oldTargets[j];
+        }
+    }
+
+    private static long key(int state, char c) {
+        return ((long) state << 16) | c;
+    }
+
+    private static int hash(long key) {
+        int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+        return h ^ (h >>> 16);
     }
 
 }
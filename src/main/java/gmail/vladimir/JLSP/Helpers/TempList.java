@@ -2,6 +2,8 @@ package gmail.vladimir.JLSP.Helpers;
 
 import gmail.vladimir.JLSP.Variables.FormulaEntity;
 
+import java.util.Arrays;
+
 /**
  * Specialized list. Supports basic operations only
  */
@@ -25,7 +27,9 @@ public class TempList{
         return size == 0;
     }
 
+    //The removed slots are nulled so a list kept for reuse doesn't hold on to the entities of its last use
     public void clear(){
+        Arrays.fill(array, 0, size, null);
         this.size = 0;
         this.tempSize = 0;
     }
@@ -39,7 +43,7 @@ public class TempList{
             tempSize--;
 
         if(size > 0)
-            size--;
+            array[--size] = null;
     }
 
     public FormulaEntity<?> getAndRemoveLast(){
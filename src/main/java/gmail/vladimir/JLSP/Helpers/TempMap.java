@@ -20,6 +20,10 @@ public class TempMap {
         this.size = 0;
     }
 
+    public int capacity() {
+        return data.length;
+    }
+
     public boolean isEmpty() {
         return size == 0;
     }
@@ -0,0 +1,15 @@
+package gmail.vladimir.JLSP.Interfaces;
+
+/**
+ * A formula reduced to a plain function of its variables
+ */
+@FunctionalInterface
+public interface DoubleFormula {
+
+    /**
+     * @param vars The variable values, in the same order as {@link gmail.vladimir.JLSP.Variables.Formula#getVariables()}
+     * @return The in operation order result
+     */
+    double eval(double[] vars);
+
+}
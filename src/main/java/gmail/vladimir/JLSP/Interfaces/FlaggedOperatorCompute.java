@@ -0,0 +1,49 @@
+package gmail.vladimir.JLSP.Interfaces;
+
+/**
+ * Interface used to store operator logic that needs to know what the left side looked like, like the default '^' does.<br/>
+ * The flags are packed in a single int, so calling it never allocates. Operators that don't need them can use {@link java.util.function.DoubleBinaryOperator} instead,
+ * see {@link gmail.vladimir.JLSP.Parser.Parser#addBinaryOperator(char, java.util.function.DoubleBinaryOperator, int)}.
+ */
+@FunctionalInterface
+public interface FlaggedOperatorCompute {
+
+    /**
+     * The left side of the operation ended with a nested formula
+     */
+    int WAS_FORMULA = 1;
+    /**
+     * The last value of the left side was negative
+     */
+    int INNER_NEGATIVE = 2;
+    /**
+     * The nested formula on the left side was preceded by a '-'
+     */
+    int OUTER_MINUS = 4;
+
+    /**
+     * Holds the left and right variables, and the flags
+     * @param flags Any combination of {@link #WAS_FORMULA}, {@link #INNER_NEGATIVE} and {@link #OUTER_MINUS}
+     * @return The result
+     */
+    double apply(double left, double right, int flags);
+
+    /**
+     * Unpacks the flags into a new array in the order {@link OperatorCompute#compute(double, double, boolean...)} takes them
+     */
+    static boolean[] unpack(int flags) {
+        return new boolean[]{ (flags & WAS_FORMULA) != 0, (flags & INNER_NEGATIVE) != 0, (flags & OUTER_MINUS) != 0 };
+    }
+
+    /**
+     * Packs the flags of {@link OperatorCompute#compute(double, double, boolean...)} into an int, missing flags count as false
+     */
+    static int pack(boolean... extra) {
+        int flags = 0;
+        if (extra.length > 0 && extra[0]) flags |= WAS_FORMULA;
+        if (extra.length > 1 && extra[1]) flags |= INNER_NEGATIVE;
+        if (extra.length > 2 && extra[2]) flags |= OUTER_MINUS;
+        return flags;
+    }
+
+}
@@ -0,0 +1,11 @@
+package gmail.vladimir.JLSP.Interfaces;
+
+/**
+ * Interface used to store the logic of a function that takes one argument, which are evaluated before it's called, see {@link gmail.vladimir.JLSP.Parser.Parser#addFunction1(String, Function1)}
+ */
+@FunctionalInterface
+public interface Function1 {
+
+    double apply(double a);
+
+}
@@ -0,0 +1,11 @@
+package gmail.vladimir.JLSP.Interfaces;
+
+/**
+ * Interface used to store the logic of a function that takes two arguments, which are evaluated before it's called, see {@link gmail.vladimir.JLSP.Parser.Parser#addFunction2(String, Function2)}
+ */
+@FunctionalInterface
+public interface Function2 {
+
+    double apply(double a, double b);
+
+}
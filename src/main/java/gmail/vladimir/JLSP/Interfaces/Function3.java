@@ -0,0 +1,11 @@
+package gmail.vladimir.JLSP.Interfaces;
+
+/**
+ * Interface used to store the logic of a function that takes three arguments, which are evaluated before it's called, see {@link gmail.vladimir.JLSP.Parser.Parser#addFunction3(String, Function3)}
+ */
+@FunctionalInterface
+public interface Function3 {
+
+    double apply(double a, double b, double c);
+
+}
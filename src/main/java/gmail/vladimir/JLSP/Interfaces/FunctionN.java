@@ -0,0 +1,27 @@
+package gmail.vladimir.JLSP.Interfaces;
+
+import java.util.Arrays;
+
+/**
+ * Interface used to store the logic of a function that takes any amount of arguments, which are evaluated before it's called, see {@link gmail.vladimir.JLSP.Parser.Parser#addFunctionN(String, FunctionN)}
+ */
+@FunctionalInterface
+public interface FunctionN {
+
+    /**
+     * @param args The evaluated arguments, one per param. The array is refilled by the next call, so it can be modified but must not be kept
+     * @return The result
+     */
+    double apply(double[] args);
+
+    /**
+     * Called by the compiled formulas, which keep the arguments on their own stack.<br/>
+     * The default copies the range unless it's the whole array, a function that can read the range in place should override this to avoid the copy.
+     * @param args Holds the arguments from args[from] to args[from + count - 1]. The range can be modified, but the array must not be kept
+     * @return The result
+     */
+    default double apply(double[] args, int from, int count) {
+        return apply(from == 0 && args.length == count ? args : Arrays.copyOfRange(args, from, from + count));
+    }
+
+}
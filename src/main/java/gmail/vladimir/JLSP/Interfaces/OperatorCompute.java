@@ -1,10 +1,14 @@
 package gmail.vladimir.JLSP.Interfaces;
 
+import java.util.function.DoubleBinaryOperator;
+
 /**
- * Interface used to store operator logic
+ * Interface used to store operator logic.<br/>
+ * Computing goes through {@link #apply(double, double, int)}, which only unpacks the flags for {@link #compute(double, double, boolean...)} when the operator was written against it.<br/>
+ * Every such call gets its own flag array, so an operator is free to do anything with it.
  */
 @FunctionalInterface
-public interface OperatorCompute {
+public interface OperatorCompute extends FlaggedOperatorCompute {
 
     /**
      * Holds the left and right variables, and extra flags
@@ -13,4 +17,43 @@ public interface OperatorCompute {
      */
     double compute(double left, double right, boolean... extra);
 
+    @Override
+    default double apply(double left, double right, int flags) {
+        return compute(left, right, FlaggedOperatorCompute.unpack(flags));
+    }
+
+    /**
+     * Wraps an operator that doesn't use any flags
+     */
+    static OperatorCompute of(DoubleBinaryOperator operator) {
+        return new OperatorCompute() {
+            @Override
+            public double compute(double left, double right, boolean... extra) {
+                return operator.applyAsDouble(left, right);
+            }
+
+            @Override
+            public double apply(double left, double right, int flags) {
+                return operator.applyAsDouble(left, right);
+            }
+        };
+    }
+
+    /**
+     * Wraps an operator that reads the flags from a packed int
+     */
+    static OperatorCompute flagged(FlaggedOperatorCompute operator) {
+        return new OperatorCompute() {
+            @Override
+            public double compute(double left, double right, boolean... extra) {
+                return operator.apply(left, right, FlaggedOperatorCompute.pack(extra));
+            }
+
+            @Override
+            public double apply(double left, double right, int flags) {
+                return operator.apply(left, right, flags);
+            }
+        };
+    }
+
 }
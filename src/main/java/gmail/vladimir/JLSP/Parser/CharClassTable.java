@@ -0,0 +1,204 @@
+package gmail.vladimir.JLSP.Parser;
+
+import gmail.vladimir.JLSP.Interfaces.OperatorCompute;
+
+import java.util.Arrays;
+
+/**
+ * What every char below the limit is to the parser: an operator, a comma, a delimiter or nothing (so part of a variable), together with its operator priority.<br/><br/>
+ *
+ * Both are packed in a single int per char, the kind in the low 2 bits and the priority in the rest, so one lookup answers everything the parse loop asks about a char.
+ * The ints and the operator implementations are kept in pages of 256 chars, a page that holds nothing is the shared empty one,
+ * so the memory used grows with the chars that are actually configured and not with the limit. A limit of 0x10000 only costs the 256 entries of the page index.<br/><br/>
+ *
+ * A copy shares every page with the table it was made from and only copies a page the first time it's changed, see {@link CharClassTable#CharClassTable(CharClassTable, int)}.
+ * Once it's part of a {@link ParserConfig} a table is never changed again, so it can be read from any thread.
+ */
+final class CharClassTable {
+
+    static final int NONE = 0, OPERATOR = 1, COMMA = 2, DELIMITER = 3;
+    /**
+     * The highest priority that fits next to the kind
+     */
+    static final int MAX_PRIORITY = Integer.MAX_VALUE >> 2;
+
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    //Never written to, every page that holds nothing points here
+    private static final int[] EMPTY_CLASSES = new int[PAGE_SIZE];
+    private static final OperatorCompute[] EMPTY_OPERATORS = new OperatorCompute[PAGE_SIZE];
+
+    final int limit;
+    private final int[][] classes;
+    private final OperatorCompute[][] operators;
+    //Pages copied by this table, the rest are still shared with the one it was made from
+    private final boolean[] owned;
+
+    CharClassTable(int limit) {
+        this.limit = limit;
+        this.classes = new int[pageCount(limit)][];
+        this.operators = new OperatorCompute[classes.length][];
+        this.owned = new boolean[classes.length];
+        Arrays.fill(classes, EMPTY_CLASSES);
+        Arrays.fill(operators, EMPTY_OPERATORS);
+    }
+
+    /**
+     * Creates a copy with a new limit that shares every page with the other table. Chars from the smaller of the two limits up are left out
+     */
+    CharClassTable(CharClassTable other, int limit) {
+        this(limit);
+        int shared = Math.min(classes.length, other.classes.length);
+        System.arraycopy(other.classes, 0, classes, 0, shared);
+        System.arraycopy(other.operators, 0, operators, 0, shared);
+
+        //The last page may hold chars above the new limit
+        if (limit < other.limit && (limit & PAGE_MASK) != 0) {
+            int page = classes.length - 1;
+            own(page);
+            Arrays.fill(classes[page], limit & PAGE_MASK, PAGE_SIZE, 0);
+            Arrays.fill(operators[page], limit & PAGE_MASK, PAGE_SIZE, null);
+        }
+    }
+
+    /**
+     * Returns the packed kind and priority of the char, see {@link CharClassTable#kind(int)} and {@link CharClassTable#priority(int)}
+     * @throws ArrayIndexOutOfBoundsException If the char isn't below the limit
+     */
+    int classOf(char c) {
+        if (c >= limit)
+            throw outOfBounds(c);
+        return classes[c >>> PAGE_BITS][c & PAGE_MASK];
+    }
+
+    static int kind(int cls) {
+        return cls & 3;
+    }
+
+    static int priority(int cls) {
+        return cls >> 2;
+    }
+
+    boolean is(char c, int kind) {
+        return (classOf(c) & 3) == kind;
+    }
+
+    /**
+     * @throws ArrayIndexOutOfBoundsException If the char isn't below the limit
+     */
+    OperatorCompute operator(char c) {
+        if (c >= limit)
+            throw outOfBounds(c);
+        return operators[c >>> PAGE_BITS][c & PAGE_MASK];
+    }
+
+    /**
+     * Returns the first operator from the given char up, or -1 if there's none. Pages without anything are skipped whole
+     */
+    int nextOperator(int from) {
+        for (int c = from; c < limit; c++) {
+            int[] page = classes[c >>> PAGE_BITS];
+            if (page == EMPTY_CLASSES) {
+                c |= PAGE_MASK;
+                continue;
+            }
+            if ((page[c & PAGE_MASK] & 3) == OPERATOR)
+                return c;
+        }
+        return -1;
+    }
+
+    void setOperator(char c, OperatorCompute compute, int priority) {
+        set(c, pack(OPERATOR, priority), compute);
+    }
+
+    //The priority of a removed operator is -1, a comma or delimiter stays one
+    void removeOperator(char c) {
+        int kind = kind(classOf(c));
+        set(c, pack(kind == OPERATOR ? NONE : kind, -1), null);
+    }
+
+    void setPriority(char c, int priority) {
+        int cls = classOf(c);
+        set(c, pack(kind(cls), priority), operator(c));
+    }
+
+    /**
+     * Makes the char a comma or delimiter, or clears it if it was one and on is false. The priority is left as it is
+     */
+    void setKind(char c, int kind, boolean on) {
+        int cls = classOf(c);
+        if (on)
+            set(c, (cls & ~3) | kind, operator(c));
+        else if (kind(cls) == kind)
+            set(c, cls & ~3, operator(c));
+    }
+
+    /**
+     * For every priority, its rank among the distinct priorities of the present operators, highest first. -1 for the unused ones
+     */
+    int[] priorityIndex() {
+        int maxPrio = -1;
+        int distinct = 0;
+        for (int c = nextOperator(0); c != -1; c = nextOperator(c + 1)) {
+            int p = priority(classOf((char) c));
+            if (p > maxPrio) maxPrio = p;
+            distinct++;
+        }
+        if (maxPrio < 0)
+            return new int[0];
+
+        int[] idx = new int[maxPrio + 1];
+        Arrays.fill(idx, -1);
+
+        int[] tmp = new int[distinct];
+        int t = 0;
+        for (int c = nextOperator(0); c != -1; c = nextOperator(c + 1))
+            tmp[t++] = priority(classOf((char) c));
+
+        Arrays.sort(tmp);
+        int rank = 0;
+        for (int k = tmp.length - 1; k >= 0; k--) {
+            int p = tmp[k];
+            if (idx[p] == -1) idx[p] = rank++;
+        }
+        return idx;
+    }
+
+    private void set(char c, int cls, OperatorCompute compute) {
+        if (c >= limit)
+            throw outOfBounds(c);
+
+        int page = c >>> PAGE_BITS;
+        own(page);
+        classes[page][c & PAGE_MASK] = cls;
+        operators[page][c & PAGE_MASK] = compute;
+    }
+
+    private void own(int page) {
+        if (owned[page])
+            return;
+
+        classes[page] = classes[page].clone();
+        operators[page] = operators[page].clone();
+        owned[page] = true;
+    }
+
+    private static int pack(int kind, int priority) {
+        if (priority > MAX_PRIORITY)
+            throw new IllegalArgumentException("The priority can't be higher than " + MAX_PRIORITY + ", got " + priority);
+        return (priority << 2) | kind;
+    }
+
+    private static int pageCount(int limit) {
+        return (limit + PAGE_MASK) >>> PAGE_BITS;
+    }
+
+    //Same message as the arrays used to throw
+    private ArrayIndexOutOfBoundsException outOfBounds(char c) {
+        return new ArrayIndexOutOfBoundsException("Index " + (int) c + " out of bounds for length " + limit);
+    }
+
+}
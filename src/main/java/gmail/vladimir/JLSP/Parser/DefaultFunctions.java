@@ -0,0 +1,22 @@
+package gmail.vladimir.JLSP.Parser;
+
+import gmail.vladimir.JLSP.Interfaces.FunctionCompute;
+
+/**
+ * The default functions installed by {@link Parser#reset()} that are a single {@link Math} call.<br/>
+ * Every parser shares the same instances, so compiled formulas can recognize them and call the {@link Math} method directly.
+ * A function added under the same name is a different instance, so it's never mistaken for the default one.
+ */
+public final class DefaultFunctions {
+
+    private DefaultFunctions(){}
+
+    /**
+     * Returns the name of the {@link Math} method the function is, or null if it isn't one of the shared default instances.<br/>
+     * The method takes as many doubles as {@link EvaluatedFunction#getArity()} and returns a double, except for round which returns a long.
+     */
+    public static String mathMethod(FunctionCompute compute) {
+        return DefaultRegistry.INSTANCE.mathMethods.get(compute);
+    }
+
+}
@@ -0,0 +1,100 @@
+package gmail.vladimir.JLSP.Parser;
+
+import gmail.vladimir.JLSP.Interfaces.FlaggedOperatorCompute;
+import gmail.vladimir.JLSP.Interfaces.OperatorCompute;
+
+import static gmail.vladimir.JLSP.Interfaces.FlaggedOperatorCompute.*;
+
+/**
+ * The default operator implementations installed by {@link Parser#reset()}.<br/>
+ * They are shared instances so compiled formulas can recognize them and replace the call with plain arithmetic.
+ */
+public final class DefaultOperators {
+
+    public static final OperatorCompute POW = new Flagged() {
+        @Override
+        public double apply(double a, double b, int flags) {
+            return pow(a, b, flags);
+        }
+    };
+    public static final OperatorCompute MULTIPLY = new Flagged() {
+        @Override
+        public double apply(double a, double b, int flags) {
+            return a * b;
+        }
+    };
+    public static final OperatorCompute DIVIDE = new Flagged() {
+        @Override
+        public double apply(double a, double b, int flags) {
+            return a / b;
+        }
+    };
+    public static final OperatorCompute MODULO = new Flagged() {
+        @Override
+        public double apply(double a, double b, int flags) {
+            return a % b;
+        }
+    };
+    public static final OperatorCompute ADD = new Flagged() {
+        @Override
+        public double apply(double a, double b, int flags) {
+            return a + b;
+        }
+    };
+    public static final OperatorCompute SUBTRACT = new Flagged() {
+        @Override
+        public double apply(double a, double b, int flags) {
+            return a - b;
+        }
+    };
+
+    //The defaults are written against the packed flags, the boolean form is only kept for callers of OperatorCompute#compute
+    private abstract static class Flagged implements OperatorCompute {
+        @Override
+        public final double compute(double left, double right, boolean... extra) {
+            return apply(left, right, pack(extra));
+        }
+    }
+
+    private DefaultOperators(){}
+
+    /**
+     * See {@link FlaggedOperatorCompute#pack(boolean...)}
+     */
+    public static int pack(boolean... extra){
+        return FlaggedOperatorCompute.pack(extra);
+    }
+
+    /**
+     * The default '^' logic with packed flags, see {@link FlaggedOperatorCompute}
+     */
+    public static double pow(double a, double b, int flags){
+        return pow(a, b, (flags & WAS_FORMULA) != 0, (flags & INNER_NEGATIVE) != 0, (flags & OUTER_MINUS) != 0);
+    }
+
+    /**
+     * The default '^' logic
+     * @param wasFormula Whether the left side ended with a nested formula
+     * @param innerNegative Whether the last value on the left side was negative
+     * @param outerMinus Whether the nested formula on the left side was preceded by a '-'
+     */
+    public static double pow(double a, double b, boolean wasFormula, boolean innerNegative, boolean outerMinus){
+        double base = Math.abs(a);
+        int sign = 1;
+
+        if (wasFormula && innerNegative) {
+            if (b != Math.floor(b))
+                throw new ArithmeticException("cannot raise negative number to fractional power");
+            if ((long) b % 2 != 0)
+                sign = -sign;
+        }
+        else if (!wasFormula && a < 0)
+            sign = -sign;
+
+        if (wasFormula && outerMinus)
+            sign = -sign;
+
+        return sign * Math.pow(base, b);
+    }
+
+}
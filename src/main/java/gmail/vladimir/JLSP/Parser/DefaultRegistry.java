@@ -0,0 +1,273 @@
+package gmail.vladimir.JLSP.Parser;
+
+import gmail.vladimir.JLSP.Helpers.NameSearcher;
+import gmail.vladimir.JLSP.Interfaces.Function1;
+import gmail.vladimir.JLSP.Interfaces.Function2;
+import gmail.vladimir.JLSP.Interfaces.Function3;
+import gmail.vladimir.JLSP.Interfaces.FunctionCompute;
+import gmail.vladimir.JLSP.Interfaces.FunctionN;
+import gmail.vladimir.JLSP.Variables.Formula;
+import gmail.vladimir.JLSP.Variables.FormulaEntity;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Random;
+
+/**
+ * The operators, commas, delimiters and functions installed by {@link Parser#reset()}, built once and shared by every parser.<br/><br/>
+ *
+ * The default {@link ParserConfig} of a parser points at these tables, a new configuration only copies them once it changes them, the operator tables and the functions separately.
+ * Nothing here is ever written to after it's built, so any amount of parsers can read them from any thread.<br/>
+ * The random functions are the only ones with state, they use the Random of the parser that parsed the calling formula, so seeding one parser never affects the others.
+ */
+final class DefaultRegistry {
+
+    /**
+     * The size of the shared tables, the default limit of a parser
+     */
+    static final int LIMIT = 127;
+
+    static final DefaultRegistry INSTANCE = new DefaultRegistry();
+
+    //Used when a random function is called without a formula
+    private static final Random FALLBACK_RANDOM = new Random();
+
+    final CharClassTable table = new CharClassTable(LIMIT);
+    final int[] opIndexByPrio;
+    final int opIndexMapSize;
+    /**
+     * The highest char used by any of the tables, a parser with a lower limit can't hold them
+     */
+    final int highestChar;
+
+    final HashMap<String, FunctionCompute> functions = new HashMap<>();
+    final HashSet<String> pureFunctions = new HashSet<>();
+    final NameSearcher names = new NameSearcher();
+    /**
+     * The java.lang.Math method behind each default function that is nothing more than one, keyed by the shared instance, see {@link DefaultFunctions#mathMethod(FunctionCompute)}
+     */
+    final IdentityHashMap<FunctionCompute, String> mathMethods = new IdentityHashMap<>();
+
+    private DefaultRegistry() {
+        table.setOperator('^', DefaultOperators.POW, 10);
+
+        table.setOperator('*', DefaultOperators.MULTIPLY, 5);
+        table.setOperator('/', DefaultOperators.DIVIDE, 5);
+        table.setOperator('%', DefaultOperators.MODULO, 5);
+
+        table.setOperator('+', DefaultOperators.ADD, 0);
+        table.setOperator('-', DefaultOperators.SUBTRACT, 0);
+
+        table.setKind('.', CharClassTable.COMMA, true);
+        table.setKind(',', CharClassTable.DELIMITER, true);
+
+        opIndexByPrio = table.priorityIndex();
+        opIndexMapSize = opIndexByPrio.length > 0 ? opIndexByPrio[0] + 1 : 1;
+
+        int highest = 0;
+        for (char c = 0; c < LIMIT; c++)
+            if (CharClassTable.kind(table.classOf(c)) != CharClassTable.NONE)
+                highest = c;
+        highestChar = highest;
+
+        addFunctions();
+    }
+
+    private void addFunctions() {
+        addConstant("pi", Math.PI);
+        addConstant("e", Math.E);
+        addConstant("phi", (1 + Math.sqrt(5)) / 2);
+        addConstant("tau", 2 * Math.PI);
+        addConstant("sqrt2", Math.sqrt(2));
+        addConstant("sqrt3", Math.sqrt(3));
+        addConstant("ln2", Math.log(2));
+        addConstant("ln10", Math.log(10));
+        addConstant("log2e", 1 / Math.log(2));
+        addConstant("log10e", 1 / Math.log(10));
+        addConstant("inf", Double.POSITIVE_INFINITY);
+        addConstant("nan", Double.NaN);
+
+        addMath1("abs", Math::abs, "abs");
+        addMath1("round", a -> (double) Math.round(a), "round");
+        addMath1("floor", Math::floor, "floor");
+        addMath1("ceil", Math::ceil, "ceil");
+        addFunction2("mod", (a, b) -> a % b);
+        addMath1("sqrt", Math::sqrt, "sqrt");
+        addMath2("pow", Math::pow, "pow");
+        addMath1("exp", Math::exp, "exp");
+        addMath1("log", Math::log, "log");
+        addMath1("log10", Math::log10, "log10");
+        addFunction1("log2", a -> Math.log(a) / Math.log(2));
+        addMath1("sin", Math::sin, "sin");
+        addMath1("cos", Math::cos, "cos");
+        addMath1("tan", Math::tan, "tan");
+        addMath1("asin", Math::asin, "asin");
+        addMath1("acos", Math::acos, "acos");
+        addMath1("atan", Math::atan, "atan");
+        addMath2("atan2", Math::atan2, "atan2");
+        addMath1("sinh", Math::sinh, "sinh");
+        addMath1("cosh", Math::cosh, "cosh");
+        addMath1("tanh", Math::tanh, "tanh");
+        addFunction1("asinh", a -> Math.log(a + Math.sqrt(Math.pow(a, 2) + 1)));
+        addFunction1("acosh", a -> Math.log(a + Math.sqrt(Math.pow(a, 2) - 1)));
+        addFunction1("atanh", a -> 0.5 * Math.log((1 + a) / (1 - a)));
+
+        addFunction1("fact", a -> {
+            int val = (int) a;
+
+            if (val < 0)
+                throw new IllegalArgumentException("factorial undefined for negative");
+
+            long result = 1L;
+            for (int i = 1; i <= val; i++)
+                result *= i;
+
+            return (double) result;
+        });
+        addRangeFunction("min", (a, from, count) -> {
+            double result = Double.POSITIVE_INFINITY;
+            for (int i = from; i < from + count; i++)
+                if (a[i] < result) result = a[i];
+            return result;
+        });
+        addRangeFunction("max", (a, from, count) -> {
+            double result = Double.NEGATIVE_INFINITY;
+            for (int i = from; i < from + count; i++)
+                if (a[i] > result) result = a[i];
+            return result;
+        });
+        addRangeFunction("avg", (a, from, count) -> sum(a, from, count) / count);
+        addRangeFunction("sum", DefaultRegistry::sum);
+        addRangeFunction("median", (a, from, count) -> {
+            //Reading below from would read the caller's stack instead of failing like the empty array did
+            if (count == 0)
+                throw new ArrayIndexOutOfBoundsException("Index -1 out of bounds for length 0");
+            Arrays.sort(a, from, from + count);
+            int mid = from + count / 2;
+            return count % 2 == 1 ? a[mid] : (a[mid - 1] + a[mid]) / 2.0;
+        });
+        addMath1("sign", Math::signum, "signum");
+        addMath1("deg", Math::toDegrees, "toDegrees");
+        addMath1("rad", Math::toRadians, "toRadians");
+        addFunction3("clamp", (val, min, max) -> Math.max(min, Math.min(max, val)));
+        addMath1("brt", Math::cbrt, "cbrt");
+        addFunction2("nthroot", (a, b) -> Math.pow(a, 1.0 / b));
+        addMath2("hypot", Math::hypot, "hypot");
+        addFunction2("root", (a, b) -> Math.pow(a, 1.0 / b));
+        addFunction2("bitand", (a, b) -> (double)((long) a & (long) b));
+        addFunction2("bitor", (a, b) -> (double)((long) a | (long) b));
+        addFunction2("bitxor", (a, b) -> (double)((long) a ^ (long) b));
+        addFunction1("bitnot", a -> (double)(~(long) a));
+        addFunction2("shl", (a, b) -> (double) ((long) a << (int) (long) b));
+        addFunction2("shr", (a, b) -> (double) ((long) a >> (int) (long) b));
+        addFunction1("sec", a -> 1.0 / Math.cos(a));
+        addFunction1("csc", a -> 1.0 / Math.sin(a));
+        addFunction1("cot", a -> 1.0 / Math.tan(a));
+        addFunction1("normalize_angle", angle -> {
+            double twoPi = 2 * Math.PI;
+            return ((angle % twoPi) + twoPi) % twoPi;
+        });
+        addFunction3("wrap", (val, min, max) -> {
+            double range = max - min;
+            return ((val - min) % range + range) % range + min;
+        });
+
+        //Not pure, and the params are read here since the random instance comes from the calling formula
+        functions.put("rand", (caller, inOperationOrder, a) -> random(caller).nextDouble());
+        functions.put("randint", (caller, inOperationOrder, a) -> {
+            int min = (int) FormulaEntity.evaluate(a[0], caller, inOperationOrder);
+            int max = (int) FormulaEntity.evaluate(a[1], caller, inOperationOrder);
+            return min + random(caller).nextInt(max - min + 1);
+        });
+        functions.put("randrange", (caller, inOperationOrder, a) -> {
+            double min = FormulaEntity.evaluate(a[0], caller, inOperationOrder);
+            double max = FormulaEntity.evaluate(a[1], caller, inOperationOrder);
+            return min + (max - min) * random(caller).nextDouble();
+        });
+        functions.put("seed", (caller, inOperationOrder, a) -> {
+            random(caller).setSeed((long) FormulaEntity.evaluate(a[0], caller, inOperationOrder));
+            return 0.0;
+        });
+        names.addName("rand");
+        names.addName("randint");
+        names.addName("randrange");
+        names.addName("seed");
+
+        addFunction1("noise", x -> (Math.sin(x * 12.9898 + 78.233) + 1.0) * 0.5);
+        addFunction2("dot", (a, b) -> a * b);
+        addFunction2("cross", (a, b) -> a * b);
+        addFunction1("length", Math::abs);
+        addFunction1("normalize", val -> val == 0 ? 0 : val / Math.abs(val));
+        addFunction2("distance", (a, b) -> Math.abs(a - b));
+        addFunction2("angle", (x, y) -> Math.atan2(y, x));
+        addFunction3("lerp", (a0, a1, t) -> a0 + (a1 - a0) * t);
+        addFunction3("mix", (a0, a1, t) -> a0 + (a1 - a0) * t);
+    }
+
+    private static double sum(double[] a, int from, int count) {
+        double total = 0;
+        for (int i = from; i < from + count; i++)
+            total += a[i];
+        return total;
+    }
+
+    private static Random random(Formula caller) {
+        return caller != null ? caller.getParser().getRandom() : FALLBACK_RANDOM;
+    }
+
+    //Every function added through these is pure
+    private void addFunction(String id, FunctionCompute compute) {
+        functions.put(id, compute);
+        pureFunctions.add(id);
+        names.addName(id);
+    }
+
+    private void addConstant(String id, double value) {
+        addFunction(id, EvaluatedFunction.constant(value));
+    }
+
+    private void addFunction1(String id, Function1 compute) {
+        addFunction(id, EvaluatedFunction.of1(compute));
+    }
+
+    private void addMath1(String id, Function1 compute, String method) {
+        addFunction1(id, compute);
+        mathMethods.put(functions.get(id), method);
+    }
+
+    private void addMath2(String id, Function2 compute, String method) {
+        addFunction2(id, compute);
+        mathMethods.put(functions.get(id), method);
+    }
+
+    private void addFunction2(String id, Function2 compute) {
+        addFunction(id, EvaluatedFunction.of2(compute));
+    }
+
+    private void addFunction3(String id, Function3 compute) {
+        addFunction(id, EvaluatedFunction.of3(compute));
+    }
+
+    private void addRangeFunction(String id, RangeFunction compute) {
+        addFunction(id, EvaluatedFunction.ofN(compute));
+    }
+
+    /**
+     * The built in functions with any amount of arguments read them in place, so the compiled formulas never copy their stack to call them
+     */
+    @FunctionalInterface
+    private interface RangeFunction extends FunctionN {
+
+        @Override
+        double apply(double[] args, int from, int count);
+
+        @Override
+        default double apply(double[] args) {
+            return apply(args, 0, args.length);
+        }
+
+    }
+
+}
@@ -0,0 +1,138 @@
+package gmail.vladimir.JLSP.Parser;
+
+import gmail.vladimir.JLSP.Interfaces.Function1;
+import gmail.vladimir.JLSP.Interfaces.Function2;
+import gmail.vladimir.JLSP.Interfaces.Function3;
+import gmail.vladimir.JLSP.Interfaces.FunctionCompute;
+import gmail.vladimir.JLSP.Interfaces.FunctionN;
+import gmail.vladimir.JLSP.Variables.Formula;
+import gmail.vladimir.JLSP.Variables.FormulaEntity;
+import gmail.vladimir.JLSP.Variables.Function;
+
+/**
+ * A function whose arguments are evaluated before it's called, each of them exactly once, see {@link Parser#addFunction1(String, Function1)} and the others.<br/>
+ * The formulas evaluate the params themselves and call the wrapped function directly, {@link EvaluatedFunction#compute(Formula, boolean, FormulaEntity[])} is only there for code that calls the function through {@link FunctionCompute}.<br/><br/>
+ *
+ * Params past the arity are never evaluated, and a call with fewer params than the arity throws an {@link ArrayIndexOutOfBoundsException}, the same as a function reading a missing param.
+ */
+public final class EvaluatedFunction implements FunctionCompute {
+
+    //Only the one matching the arity is set
+    private final Function1 function1;
+    private final Function2 function2;
+    private final Function3 function3;
+    private final FunctionN functionN;
+    //The result of a function without arguments
+    private final double constant;
+    private final int arity;
+
+    private EvaluatedFunction(Function1 function1, Function2 function2, Function3 function3, FunctionN functionN, double constant, int arity) {
+        this.function1 = function1;
+        this.function2 = function2;
+        this.function3 = function3;
+        this.functionN = functionN;
+        this.constant = constant;
+        this.arity = arity;
+    }
+
+    //The default constants like pi, any params they're given are ignored without being evaluated
+    static EvaluatedFunction constant(double value) {
+        return new EvaluatedFunction(null, null, null, null, value, 0);
+    }
+
+    static EvaluatedFunction of1(Function1 function) {
+        return new EvaluatedFunction(function, null, null, null, 0D, 1);
+    }
+
+    static EvaluatedFunction of2(Function2 function) {
+        return new EvaluatedFunction(null, function, null, null, 0D, 2);
+    }
+
+    static EvaluatedFunction of3(Function3 function) {
+        return new EvaluatedFunction(null, null, function, null, 0D, 3);
+    }
+
+    static EvaluatedFunction ofN(FunctionN function) {
+        return new EvaluatedFunction(null, null, null, function, 0D, -1);
+    }
+
+    /**
+     * Returns the amount of arguments the function uses, or -1 if it uses all of them
+     */
+    public int getArity() {
+        return arity;
+    }
+
+    /**
+     * Returns the wrapped function if it takes one argument, otherwise null. The compiled formulas call it without an argument array
+     */
+    public Function1 getFunction1() {
+        return function1;
+    }
+
+    /**
+     * Returns the wrapped function if it takes two arguments, otherwise null. The compiled formulas call it without an argument array
+     */
+    public Function2 getFunction2() {
+        return function2;
+    }
+
+    /**
+     * Calls the function with the arguments args[from] to args[from + count - 1]
+     * @throws ArrayIndexOutOfBoundsException If count is less than the arity
+     */
+    public double apply(double[] args, int from, int count) {
+        checkCount(count);
+        switch (arity) {
+            case 0: return constant;
+            case 1: return function1.apply(args[from]);
+            case 2: return function2.apply(args[from], args[from + 1]);
+            case 3: return function3.apply(args[from], args[from + 1], args[from + 2]);
+            default: return functionN.apply(args, from, count);
+        }
+    }
+
+    /**
+     * Evaluates the params of the function entity and calls the function, the variable amount of params go through {@link Function#getArgumentBuffer()}
+     */
+    double evaluate(Formula caller, boolean inOperationOrder, Function function) {
+        FormulaEntity<?>[] params = function.getParams();
+        checkCount(params.length);
+        switch (arity) {
+            case 0:
+                return constant;
+            case 1:
+                return function1.apply(FormulaEntity.evaluate(params[0], caller, inOperationOrder));
+            case 2: {
+                double a = FormulaEntity.evaluate(params[0], caller, inOperationOrder);
+                return function2.apply(a, FormulaEntity.evaluate(params[1], caller, inOperationOrder));
+            }
+            case 3: {
+                double a = FormulaEntity.evaluate(params[0], caller, inOperationOrder);
+                double b = FormulaEntity.evaluate(params[1], caller, inOperationOrder);
+                return function3.apply(a, b, FormulaEntity.evaluate(params[2], caller, inOperationOrder));
+            }
+            default: {
+                double[] args = function.getArgumentBuffer();
+                for (int i = 0; i < params.length; i++)
+                    args[i] = FormulaEntity.evaluate(params[i], caller, inOperationOrder);
+                return functionN.apply(args);
+            }
+        }
+    }
+
+    @Override
+    public double compute(Formula caller, boolean inOperationOrder, FormulaEntity<?>... entities) {
+        int count = arity < 0 ? entities.length : Math.min(arity, entities.length);
+        double[] args = new double[count];
+        for (int i = 0; i < count; i++)
+            args[i] = FormulaEntity.evaluate(entities[i], caller, inOperationOrder);
+        return apply(args, 0, count);
+    }
+
+    private void checkCount(int count) {
+        if (count < arity)
+            throw new ArrayIndexOutOfBoundsException("Index " + count + " out of bounds for length " + arity);
+    }
+
+}
@@ -0,0 +1,163 @@
+package gmail.vladimir.JLSP.Parser;
+
+import gmail.vladimir.JLSP.Variables.Formula;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Parses a list of formulas with the workers of an executor, see {@link Parser#parseAll(List, Executor)}.<br/><br/>
+ *
+ * Inputs with the same text are found first, only the first of them is parsed and the others get copies of its formula.
+ * The inputs are then split into chunks that the workers and the calling thread take one at a time, so a slow chunk doesn't hold the others back.
+ * Every worker parses with the parsing states of its own thread and writes to its own slots of the results, nothing else is shared while parsing.<br/>
+ * The calling thread only returns once every chunk is done, it takes chunks as well, so the results are complete even if the executor never runs the tasks.
+ */
+final class ParallelParse {
+
+    /**
+     * Formulas parsed by a worker before it takes the next chunk
+     */
+    static final int CHUNK = 256;
+
+    private interface RangeTask {
+        void run(int from, int to);
+    }
+
+    private ParallelParse() {}
+
+    static ParseResults parseAll(Parser parser, List<? extends CharSequence> formulas, Executor executor) {
+        CharSequence[] texts = formulas.toArray(new CharSequence[0]);
+        int size = texts.length;
+        ParseInput[] inputs = new ParseInput[size];
+        Formula[] results = new Formula[size];
+        RuntimeException[] errors = new RuntimeException[size];
+
+        //The first input with a given text gets parsed, the others point to it
+        int[] firstOf = new int[size];
+        int[] unique = new int[size];
+        int[] duplicates = new int[size];
+        int uniqueCount = 0, duplicateCount = 0;
+        Map<String, Integer> seen = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            if (texts[i] == null) {
+                errors[i] = new NullPointerException("Formula " + i + " is null");
+                continue;
+            }
+
+            inputs[i] = ParseInput.of(texts[i]);
+            Integer first = seen.putIfAbsent(inputs[i].toString(), i);
+            if (first == null)
+                unique[uniqueCount++] = firstOf[i] = i;
+            else {
+                firstOf[i] = first;
+                duplicates[duplicateCount++] = i;
+            }
+        }
+
+        runChunks(uniqueCount, executor, (from, to) -> {
+            for (int k = from; k < to; k++) {
+                int i = unique[k];
+                try {
+                    results[i] = parser.parseFormula(inputs[i], false, true);
+                }
+                catch (RuntimeException ex) {
+                    errors[i] = ex;
+                }
+            }
+        });
+
+        runChunks(duplicateCount, executor, (from, to) -> {
+            for (int k = from; k < to; k++) {
+                int i = duplicates[k];
+                Formula template = results[firstOf[i]];
+                if (template != null)
+                    results[i] = template.copy();
+                else
+                    errors[i] = errors[firstOf[i]];
+            }
+        });
+
+        int errorCount = 0;
+        for (RuntimeException error : errors)
+            if (error != null)
+                errorCount++;
+
+        return new ParseResults(results, errors, errorCount, uniqueCount);
+    }
+
+    private static void runChunks(int count, Executor executor, RangeTask task) {
+        int chunks = (count + CHUNK - 1) / CHUNK;
+        if (chunks <= 1) {
+            task.run(0, count);
+            return;
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(chunks);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Runnable worker = () -> {
+            int chunk;
+            while ((chunk = next.getAndIncrement()) < chunks) {
+                try {
+                    task.run(chunk * CHUNK, Math.min(count, (chunk + 1) * CHUNK));
+                }
+                catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+                finally {
+                    done.countDown();
+                }
+            }
+        };
+
+        //The calling thread is a worker too
+        int helpers = Math.min(chunks - 1, helpers(executor));
+        try {
+            for (int i = 0; i < helpers; i++)
+                executor.execute(worker);
+        }
+        catch (RejectedExecutionException ignored) {
+            //Whatever wasn't submitted is parsed by the workers already running
+        }
+        worker.run();
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            }
+            catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        Throwable t = failure.get();
+        if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        if (t instanceof Error)
+            throw (Error) t;
+    }
+
+    //Workers submitted besides the calling thread, never more than the pool has threads or the machine has other cores
+    private static int helpers(Executor executor) {
+        int cores = Runtime.getRuntime().availableProcessors() - 1;
+        if (executor instanceof ForkJoinPool)
+            return Math.min(cores, ((ForkJoinPool) executor).getParallelism());
+        if (executor instanceof ThreadPoolExecutor)
+            return Math.min(cores, ((ThreadPoolExecutor) executor).getMaximumPoolSize());
+        return cores;
+    }
+
+}
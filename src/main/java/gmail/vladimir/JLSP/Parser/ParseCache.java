@@ -0,0 +1,97 @@
+package gmail.vladimir.JLSP.Parser;
+
+import gmail.vladimir.JLSP.Variables.Formula;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded least recently used map from formula text to a parsed template, see {@link Parser#setParseCacheSize(int)}.<br/>
+ * The templates are never handed out, only copies of them, so they stay untouched no matter what happens to the returned formulas.<br/><br/>
+ *
+ * Every entry belongs to the configuration version it was parsed with, the whole cache is dropped the first time a newer version is seen.
+ * A parse that started on an older snapshot can still finish after that, its lookup is a miss and its template is dropped, so it never brings the old version back.
+ */
+final class ParseCache {
+
+    private final int maxSize;
+    private final LinkedHashMap<String, Formula> templates;
+    private int configVersion;
+    private long hits, misses, evictions;
+
+    ParseCache(int maxSize, int configVersion) {
+        this.maxSize = maxSize;
+        this.configVersion = configVersion;
+        this.templates = new LinkedHashMap<String, Formula>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Formula> eldest) {
+                if (size() <= ParseCache.this.maxSize)
+                    return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Spaces are kept even when the parser skips them, they still change how some formulas are read, "x+ sin(y)" doesn't use the '+' for the function while "x+sin(y)" does
+     */
+    static String key(ParseInput formula, boolean hasFunctions) {
+        return (hasFunctions ? 'f' : 'n') + formula.toString();
+    }
+
+    /**
+     * Returns the template for the key, or null on a miss
+     */
+    synchronized Formula get(String key, int configVersion) {
+        Formula template = isCurrent(configVersion) ? templates.get(key) : null;
+        if (template == null)
+            misses++;
+        else
+            hits++;
+        return template;
+    }
+
+    /**
+     * Adds the template unless it was parsed with an older configuration than the cache already holds
+     */
+    synchronized void put(String key, Formula template, int configVersion) {
+        if (isCurrent(configVersion))
+            templates.put(key, template);
+    }
+
+    //Moves to a newer version by dropping every entry, older versions are only ever refused. The versions only grow, the difference also holds once they overflow
+    private boolean isCurrent(int configVersion) {
+        int newer = configVersion - this.configVersion;
+        if (newer > 0) {
+            this.configVersion = configVersion;
+            templates.clear();
+        }
+        return newer >= 0;
+    }
+
+    synchronized void clear() {
+        templates.clear();
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    synchronized int size() {
+        return templates.size();
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized long getEvictions() {
+        return evictions;
+    }
+
+}
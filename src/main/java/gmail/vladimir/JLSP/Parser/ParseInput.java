@@ -0,0 +1,93 @@
+package gmail.vladimir.JLSP.Parser;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The chars the parser reads, taken straight from a string, a slice of a char array, the ASCII bytes of a buffer or any other char sequence, without copying them.<br/>
+ * The source is picked with a few null checks instead of going through {@link CharSequence#charAt(int)}, so the parsing loop stays fast even when different kinds of inputs are parsed in the same program.<br/><br/>
+ *
+ * Only {@link ParseInput#toString()} copies the chars, it's used by the parse cache and by custom parse logic.
+ */
+final class ParseInput {
+
+    private final String string;
+    private final char[] chars;
+    private final ByteBuffer bytes;
+    private final CharSequence sequence;
+    private final int offset;
+    private final int length;
+
+    private ParseInput(String string, char[] chars, ByteBuffer bytes, CharSequence sequence, int offset, int length) {
+        this.string = string;
+        this.chars = chars;
+        this.bytes = bytes;
+        this.sequence = sequence;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * A null sequence stays null, so custom parse logic still receives it
+     */
+    static ParseInput of(CharSequence sequence) {
+        if (sequence == null)
+            return null;
+        if (sequence instanceof String)
+            return new ParseInput((String) sequence, null, null, null, 0, sequence.length());
+        return new ParseInput(null, null, null, sequence, 0, sequence.length());
+    }
+
+    /**
+     * @throws IndexOutOfBoundsException If the slice doesn't fit inside the array
+     */
+    static ParseInput of(char[] chars, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > chars.length - length)
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + offset + " + " + length + ") out of bounds for length " + chars.length);
+        return new ParseInput(null, chars, null, null, offset, length);
+    }
+
+    /**
+     * Every byte between the position and the limit is one char, the position of the buffer is never moved. A byte above 0x7F is refused once it's read, see {@link ParseInput#charAt(int)}
+     */
+    static ParseInput ofAscii(ByteBuffer bytes) {
+        return new ParseInput(null, null, bytes, null, bytes.position(), bytes.remaining());
+    }
+
+    int length() {
+        return length;
+    }
+
+    /**
+     * The index isn't checked against the length, the parser never reads outside of it
+     * @throws IllegalArgumentException If the char comes from a buffer and isn't ASCII, it would otherwise be read as whatever char has the same value as the byte
+     */
+    char charAt(int index) {
+        if (string != null)
+            return string.charAt(index);
+        if (chars != null)
+            return chars[offset + index];
+        if (bytes != null) {
+            byte b = bytes.get(offset + index);
+            if (b < 0)
+                throw new IllegalArgumentException("The byte 0x" + Integer.toHexString(b & 0xFF) + " at index " + index + " isn't ASCII");
+            return (char) b;
+        }
+        return sequence.charAt(index);
+    }
+
+    @Override
+    public String toString() {
+        if (string != null)
+            return string;
+        if (chars != null)
+            return new String(chars, offset, length);
+        if (bytes == null)
+            return sequence.toString();
+
+        char[] copy = new char[length];
+        for (int i = 0; i < length; i++)
+            copy[i] = charAt(i);
+        return new String(copy);
+    }
+
+}
@@ -0,0 +1,65 @@
+package gmail.vladimir.JLSP.Parser;
+
+import gmail.vladimir.JLSP.Variables.Formula;
+
+/**
+ * The outcome of {@link Parser#parseAll(java.util.List, java.util.concurrent.Executor)}, one formula or one error for every input, in the same order as the inputs.
+ */
+public final class ParseResults {
+
+    private final Formula[] formulas;
+    private final RuntimeException[] errors;
+    private final int errorCount;
+    private final int parsedCount;
+
+    ParseResults(Formula[] formulas, RuntimeException[] errors, int errorCount, int parsedCount) {
+        this.formulas = formulas;
+        this.errors = errors;
+        this.errorCount = errorCount;
+        this.parsedCount = parsedCount;
+    }
+
+    /**
+     * Returns the amount of inputs
+     */
+    public int size() {
+        return formulas.length;
+    }
+
+    /**
+     * Returns the formula parsed from the input at the given index, or null if parsing it failed
+     */
+    public Formula getFormula(int index) {
+        return formulas[index];
+    }
+
+    /**
+     * Returns the exception thrown while parsing the input at the given index, or null if it was parsed
+     */
+    public RuntimeException getError(int index) {
+        return errors[index];
+    }
+
+    /**
+     * Returns the formulas in the same order as the inputs, with null for the inputs that failed. The array isn't copied
+     */
+    public Formula[] getFormulas() {
+        return formulas;
+    }
+
+    public boolean hasErrors() {
+        return errorCount > 0;
+    }
+
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * Returns how many inputs were actually parsed, the duplicates of an input are copies of its formula instead
+     */
+    public int getParsedCount() {
+        return parsedCount;
+    }
+
+}
@@ -3,50 +3,44 @@ package gmail.vladimir.JLSP.Parser;
 import gmail.vladimir.JLSP.Helpers.NameSearcher;
 import gmail.vladimir.JLSP.Helpers.TempList;
 import gmail.vladimir.JLSP.Helpers.TempMap;
+import gmail.vladimir.JLSP.Interfaces.FlaggedOperatorCompute;
+import gmail.vladimir.JLSP.Interfaces.Function1;
+import gmail.vladimir.JLSP.Interfaces.Function2;
+import gmail.vladimir.JLSP.Interfaces.Function3;
 import gmail.vladimir.JLSP.Interfaces.FunctionCompute;
+import gmail.vladimir.JLSP.Interfaces.FunctionN;
 import gmail.vladimir.JLSP.Interfaces.OperatorCompute;
 import gmail.vladimir.JLSP.Interfaces.ParseCompute;
 import gmail.vladimir.JLSP.Pairs.OldOperatorPair;
 import gmail.vladimir.JLSP.Variables.*;
 
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleBinaryOperator;
 
 /**
- * Individual parser instance that can hold individual configuration
+ * Individual parser instance that can hold individual configuration<br/><br/>
+ *
+ * Multiple threads can parse with the same instance at once, and the configuration (operators, functions, etc.) can be changed while they do.<br/>
+ * Every change publishes a new {@link ParserConfig} as a whole, a parse reads it once when it starts and uses it until the end, and so does every evaluation of a formula,
+ * so none of them ever see half of a change. Changes are serialized between themselves, so two threads changing the same parser never lose each other's changes.
  */
 public class Parser implements ParseCompute{
 
     /**
-     * 127 all ASCII chars, uses like 1-2kb ram<br/>
-     * If you want to support all character, then modify this to 0x10000 which is about 65k+ which is going to use like 1mb of ram.
+     * Everything that can be configured, replaced as a whole on every change, see {@link ParserConfig}.<br/>
+     * The operators, commas and delimiters are kept in pages of 256 chars up to the limit, only the pages that hold something take memory, see {@link CharClassTable}.
+     * 127 covers all ASCII chars, 0x10000 covers every char and only adds a 256 entry page index on top.
      */
-    private int limit;
-
-    private OperatorCompute[] opImpl;
-    private int[] opPrio;
-    private boolean[] opPresent;
-    private int[] opIndexByPrio = new int[0];
-    int opIndexMapSize = 1;
-
-    private boolean[] commas;
-    private boolean[] delims;
+    private volatile ParserConfig config;
+    private volatile Random random;
+    private volatile ParseCache parseCache;
+    private volatile Executor asyncExecutor;
 
     /**
-     * I've tried implementing a char[] and use a map/trie for prefix/fullName detection but every implementation turned out to be noticeably slower.<br/>
-     * So, I'm either too incompetent to implement that correctly, or this impl (maps + string builder) is the best solution. In my opinion, it's probably the former, not the latter.
-     */
-    private HashMap<String, FunctionCompute> functions;
-    private NameSearcher funcNameSearcher;
-    private Deque<ParsingState> statePool;
-
-    private ParseCompute parseLogic;
-    private boolean skipEmptySpace = true;
-    private char defaultOperator = '+';
-    private char betweenVariables = '*';
-    private double defaultValueBetweenEmptyOperators = 0D;
-
-    /**
-     * Sets the initial array sizes for the character limit on OPERATORS, commas, Delimiters<br/>
+     * Sets the character limit on OPERATORS, commas, Delimiters<br/>
      * Default = 127 = All ASCHII chars<br/><br/>
      * Using characters that are above this limit will result in exceptions. If you except to use characters higher than 127, use the {@link Parser#Parser(int)} constructor, or the {@link Parser#changeLimit(int)} method
      */
@@ -55,60 +49,42 @@ public class Parser implements ParseCompute{
     }
 
     /**
-     * Sets the initial array sizes for the character limit on OPERATORS, commas, DElimitERS<br/>
-     * Default = 127 = All ASCHII chars (Occupies less space ~ 1-2kb total)<br/>
-     * Max = 0x10000 = All chars, ever (Occupies more space ~ 1mb total)<br/>
-     * Search for the unicode of the characters you're expecting to use and use the highest value here
+     * Sets the character limit on OPERATORS, commas, DElimitERS<br/>
+     * Default = 127 = All ASCHII chars<br/>
+     * Max = 0x10000 = All chars, ever<br/>
+     * Memory grows with the chars actually used as operators, commas and delimiters, not with the limit, so 0x10000 costs about 2kb more than 127 up front
      *
      * @param size The amount
      */
     public Parser(int size){
-        this.limit = size;
-        reset();
+        initDefaults(size);
     }
 
     /**
-     * Changes array sizes for the character limit on OPERATORS, commas, DElimitERS</br>
-     * Default = 127 = All ASCHII chars (Occupies less space ~ 1-2kb total)<br/>
-     * Max = 0x10000 = All chars, ever (Occupies more space ~ 1mb total)<br/>
-     * Search for the unicode of the characters you're expecting to use and use the highest value here<br/><br/>
-     * This method will create new arrays and move the old ones over
+     * Changes the character limit on OPERATORS, commas, DElimitERS</br>
+     * Default = 127 = All ASCHII chars<br/>
+     * Max = 0x10000 = All chars, ever<br/>
+     * Memory grows with the chars actually used, not with the limit, see {@link Parser#Parser(int)}<br/><br/>
+     * Only the page index is copied, the pages themselves are shared with the previous configuration
      *
      * @param size The new size
      */
-    public void changeLimit(int size){
-        int oldlimit = this.limit;
-        this.limit = size;
-
-        if(opImpl == null){
-            initDefaults();
-            return;
-        }
-
-        OperatorCompute[] newOpImpl = new OperatorCompute[size];
-        int[] newOpPrio = new int[size];
-        boolean[] newOpPresent = new boolean[size];
-        boolean[] newCommas = new boolean[size];
-        boolean[] newDelims = new boolean[size];
-        System.arraycopy(opImpl, 0, newOpImpl, 0, oldlimit);
-        System.arraycopy(opPrio, 0, newOpPrio, 0, oldlimit);
-        System.arraycopy(opPresent, 0, newOpPresent, 0, oldlimit);
-        System.arraycopy(commas, 0, newCommas, 0, oldlimit);
-        System.arraycopy(delims, 0, newDelims, 0, oldlimit);
-
-        this.opImpl = newOpImpl;
-        this.opPrio = newOpPrio;
-        this.opPresent = newOpPresent;
-        this.commas = newCommas;
-        this.delims = newDelims;
-        rebuildPriorityIndex();
+    public synchronized void changeLimit(int size){
+        ParserConfig current = config;
+        if(size < current.limit)
+            throw new ArrayIndexOutOfBoundsException("The limit can't be lowered from " + current.limit + " to " + size);
+
+        ParserConfig.Editor edit = current.edit();
+        edit.resize(size);
+        publish(edit);
     }
 
     /**
-     * Resets this object to its default state.
+     * Resets this object to its default state.<br/>
+     * The default operators and functions are shared by every parser and only copied once this parser changes them, so resetting allocates next to nothing.
      */
-    public void reset(){
-        initDefaults();
+    public synchronized void reset(){
+        initDefaults(config.limit);
     }
 
     /**
@@ -143,15 +119,33 @@ public class Parser implements ParseCompute{
      * @throws UnsupportedOperationException if c is already present as a delimiter/comma
      *
      */
-    public OldOperatorPair addOperator(char c, OperatorCompute compute, int priority) {
-        checkFree(c);
-        OperatorCompute oldImpl = opImpl[c];
-        int oldPrio = opPrio[c];
-        opImpl[c] = compute;
-        opPrio[c] = Math.max(priority, 0);
-        opPresent[c] = true;
-        rebuildPriorityIndex();
-        return new OldOperatorPair(oldImpl, oldPrio);
+    public synchronized OldOperatorPair addOperator(char c, OperatorCompute compute, int priority) {
+        ParserConfig current = config;
+        checkFree(current, c);
+        ParserConfig.Editor edit = current.edit();
+        edit.setOperator(c, compute, Math.max(priority, 0));
+        publish(edit);
+        return new OldOperatorPair(current.getOperator(c), current.getOperatorPriority(c));
+    }
+
+    /**
+     * Same as {@link Parser#addOperator(char, OperatorCompute, int)} for operators that only need the left and right values, which is the cheapest form to compute.
+     * <pre> {@code
+     * addBinaryOperator('+', (left, right) -> left + right, 0);
+     * }</pre>
+     */
+    public OldOperatorPair addBinaryOperator(char c, DoubleBinaryOperator compute, int priority) {
+        return addOperator(c, OperatorCompute.of(compute), priority);
+    }
+
+    /**
+     * Same as {@link Parser#addOperator(char, OperatorCompute, int)} for operators that read the flags packed in an int, see {@link FlaggedOperatorCompute}
+     * <pre> {@code
+     * addFlaggedOperator('^', (left, right, flags) -> DefaultOperators.pow(left, right, flags), 10);
+     * }</pre>
+     */
+    public OldOperatorPair addFlaggedOperator(char c, FlaggedOperatorCompute compute, int priority) {
+        return addOperator(c, OperatorCompute.flagged(compute), priority);
     }
 
     /**
@@ -169,9 +163,10 @@ public class Parser implements ParseCompute{
      * @param c Operator
      * @param priority New priority
      */
-    public void changeOperatorPriority(char c, int priority) {
-        opPrio[c] = Math.max(priority, 0);
-        rebuildPriorityIndex();
+    public synchronized void changeOperatorPriority(char c, int priority) {
+        ParserConfig.Editor edit = config.edit();
+        edit.setOperatorPriority(c, Math.max(priority, 0));
+        publish(edit);
     }
 
     /**
@@ -179,11 +174,19 @@ public class Parser implements ParseCompute{
      * <br/>
      * You may remove any operator, even the default one (e.g '+').
      */
-    public void removeOperator(char c) {
-        opImpl[c] = null;
-        opPrio[c] = -1;
-        opPresent[c] = false;
-        rebuildPriorityIndex();
+    public synchronized void removeOperator(char c) {
+        ParserConfig.Editor edit = config.edit();
+        edit.removeOperator(c);
+        publish(edit);
+    }
+
+    /**
+     * Returns the compute logic of an operator.
+     * @param c The operator you are searching for
+     * @return The compute logic if the operator exists, or null otherwise
+     */
+    public OperatorCompute getOperator(char c) {
+        return config.getOperator(c);
     }
 
     /**
@@ -197,7 +200,7 @@ public class Parser implements ParseCompute{
      * @return The priority of the operator if it exists, or -1 otherwise
      */
     public int getOperatorPriority(char c) {
-        return opPrio[c];
+        return config.getOperatorPriority(c);
     }
 
     /**
@@ -208,7 +211,7 @@ public class Parser implements ParseCompute{
      * @return Whether the provided character is a recognized operator
      */
     public boolean isOperator(char c) {
-        return opPresent[c];
+        return config.isOperator(c);
     }
 
     /**
@@ -216,29 +219,33 @@ public class Parser implements ParseCompute{
      * This is useful if you decide to add empty space as a possible operator/comma/func-delimiter
      */
     public boolean shouldSkipEmptySpace(){
-        return skipEmptySpace;
+        return config.skipEmptySpace;
     }
 
     /**
      * Sets whether empty space will be checked or skipped entirely. True by default. <br/>
      * This is useful if you decide to add empty space as a possible operator/comma/func-delimiter
      */
-    public void setSkipEmptySpace(boolean skipEmptySpace){
-        this.skipEmptySpace = skipEmptySpace;
+    public synchronized void setSkipEmptySpace(boolean skipEmptySpace){
+        ParserConfig.Editor edit = config.edit();
+        edit.skipEmptySpace = skipEmptySpace;
+        publish(edit);
     }
 
     /**
      * Returns a default neutral operator that will be used for operations to fill in case an operator is missing. Default value '+'
      */
     public char getDefaultOperator(){
-        return defaultOperator;
+        return config.defaultOperator;
     }
 
     /**
      * Sets the default neutral operator that will be used for operations to fill in case an operator is missing. Default value '+'
      */
-    public void setDefaultOperator(char defaultOperator){
-        this.defaultOperator = defaultOperator;
+    public synchronized void setDefaultOperator(char defaultOperator){
+        ParserConfig.Editor edit = config.edit();
+        edit.defaultOperator = defaultOperator;
+        publish(edit);
     }
 
     /**
@@ -246,29 +253,49 @@ public class Parser implements ParseCompute{
      * For example, having the alphabet 'a' and 'b', betweenVariables '*' and the following evaluation: 2+ab. The example will be interpreted as 2+a*b.
      */
     public char getBetweenVariables(){
-        return betweenVariables;
+        return config.betweenVariables;
     }
 
     /**
      * Sets the default neutral operator that will be used for operations to fill in case an operator is missing for specific cases. Default value '*' <br/>
      * For example, having the alphabet 'a' and 'b', betweenVariables '*' and the following evaluation: 2+ab. The example will be interpreted as 2+a*b.
      */
-    public void setBetweenVariables(char betweenVariables){
-        this.betweenVariables = betweenVariables;
+    public synchronized void setBetweenVariables(char betweenVariables){
+        ParserConfig.Editor edit = config.edit();
+        edit.betweenVariables = betweenVariables;
+        publish(edit);
+    }
+
+    /**
+     * Returns whether parsed formulas get their constants folded right away. False by default
+     */
+    public boolean shouldFoldConstants(){
+        return config.foldConstants;
+    }
+
+    /**
+     * Sets whether every parsed formula gets its constants folded right away, see {@link Formula#foldConstants()}. False by default
+     */
+    public synchronized void setFoldConstants(boolean foldConstants){
+        ParserConfig.Editor edit = config.edit();
+        edit.foldConstants = foldConstants;
+        publish(edit);
     }
 
     /**
      * Returns the current parse class logic if the default one was overridden. Or null if the default logic is used
      */
     public ParseCompute getParseLogic(){
-        return parseLogic;
+        return config.parseLogic;
     }
 
     /**
      * Changes the current logic used for parsing formulas. If a null value is provided, then the default parse logic will be used.
      */
-    public void setParseLogic(ParseCompute parseLogic){
-        this.parseLogic = parseLogic;
+    public synchronized void setParseLogic(ParseCompute parseLogic){
+        ParserConfig.Editor edit = config.edit();
+        edit.parseLogic = parseLogic;
+        publish(edit);
     }
 
     /**
@@ -288,7 +315,7 @@ public class Parser implements ParseCompute{
      * }</pre>
      */
     public double getDefaultValueBetweenEmptyOperators(){
-        return defaultValueBetweenEmptyOperators;
+        return config.defaultValueBetweenEmptyOperators;
     }
 
     /**
@@ -307,8 +334,10 @@ public class Parser implements ParseCompute{
      * -0*0+0-(-4)
      * }</pre>
      */
-    public void setDefaultValueBetweenEmptyOperators(double d){
-        this.defaultValueBetweenEmptyOperators = d;
+    public synchronized void setDefaultValueBetweenEmptyOperators(double d){
+        ParserConfig.Editor edit = config.edit();
+        edit.defaultValueBetweenEmptyOperators = d;
+        publish(edit);
     }
 
     /**
@@ -327,11 +356,13 @@ public class Parser implements ParseCompute{
      * @return True if the comma was added, or False if the character was already a valid comma
      * @throws UnsupportedOperationException if c is already present as a delimiter/operator
      */
-    public boolean addComma(char c) {
-        checkFreeComma(c);
-        boolean was = commas[c];
-        commas[c] = true;
-        return !was;
+    public synchronized boolean addComma(char c) {
+        ParserConfig current = config;
+        checkFreeComma(current, c);
+        ParserConfig.Editor edit = current.edit();
+        edit.setComma(c, true);
+        publish(edit);
+        return !current.isComma(c);
     }
 
     /**
@@ -349,7 +380,7 @@ public class Parser implements ParseCompute{
      * @return True if the char is a valid comma, or False otherwise
      */
     public boolean isComma(char c) {
-        return commas[c];
+        return config.isComma(c);
     }
 
     /**
@@ -367,10 +398,12 @@ public class Parser implements ParseCompute{
      * @param c The character that'll be removed as a comma
      * @return True if the comma was removed, or False if the character wasn't already a valid comma
      */
-    public boolean removeComma(char c) {
-        boolean was = commas[c];
-        commas[c] = false;
-        return was;
+    public synchronized boolean removeComma(char c) {
+        ParserConfig current = config;
+        ParserConfig.Editor edit = current.edit();
+        edit.setComma(c, false);
+        publish(edit);
+        return current.isComma(c);
     }
 
     /**
@@ -390,11 +423,13 @@ public class Parser implements ParseCompute{
      * @return True if the delimiter was added, or False if the character was already a valid delimiter
      * @throws UnsupportedOperationException if c is already present as a comma/operator
      */
-    public boolean addDelimiter(char c) {
-        checkFreeDelim(c);
-        boolean was = delims[c];
-        delims[c] = true;
-        return !was;
+    public synchronized boolean addDelimiter(char c) {
+        ParserConfig current = config;
+        checkFreeDelim(current, c);
+        ParserConfig.Editor edit = current.edit();
+        edit.setDelimiter(c, true);
+        publish(edit);
+        return !current.isDelimiter(c);
     }
 
     /**
@@ -414,7 +449,7 @@ public class Parser implements ParseCompute{
      * @throws UnsupportedOperationException if c is already present as a comma/alphabet/operator
      */
     public boolean isDelimiter(char c) {
-        return delims[c];
+        return config.isDelimiter(c);
     }
 
     /**
@@ -433,10 +468,12 @@ public class Parser implements ParseCompute{
      * @return True if the delimiter was removed, or False if the char wasn't a valid delimiter
      * @throws UnsupportedOperationException if c is already present as a comma/alphabet/operator
      */
-    public boolean removeDelimiter(char c) {
-        boolean was = delims[c];
-        delims[c] = false;
-        return was;
+    public synchronized boolean removeDelimiter(char c) {
+        ParserConfig current = config;
+        ParserConfig.Editor edit = current.edit();
+        edit.setDelimiter(c, false);
+        publish(edit);
+        return current.isDelimiter(c);
     }
 
     /**
@@ -491,13 +528,97 @@ public class Parser implements ParseCompute{
      * @return The old function tied to the provided if it exist, otherwise null
      */
     public FunctionCompute addFunction(String id, FunctionCompute compute){
-        FunctionCompute old = functions.put(id, compute);
+        return addFunction(id, compute, false);
+    }
+
+    /**
+     * Same as {@link Parser#addFunction(String, FunctionCompute)}, but also states whether the function is pure.<br/>
+     * A pure function always returns the same value for the same params and has no side effects, so calls that only use constant params can be replaced by their value, see {@link Formula#foldConstants()}.<br/>
+     * Every default function is pure, except for rand, randint, randrange and seed.
+     *
+     * @param id The id tied to that function. Name is case-sensitive
+     * @param compute The compute logic for the function
+     * @param pure Whether the function is pure
+     * @return The old function tied to the provided if it exist, otherwise null
+     */
+    public synchronized FunctionCompute addFunction(String id, FunctionCompute compute, boolean pure){
+        ParserConfig current = config;
+        ParserConfig.Editor edit = current.edit();
+        edit.putFunction(id, compute, pure);
+        publish(edit);
+        return current.functions.get(id);
+    }
 
-        if(old != null)
-            return old;
+    /**
+     * Adds a function that takes one argument, which are evaluated once before it's called. Cheaper than {@link Parser#addFunction(String, FunctionCompute)} since the params never go through {@link Parser#processEntity(Formula, FormulaEntity, boolean)} inside the function.
+     * <pre> {@code
+     *   addFunction1("abs", a -> Math.abs(a));
+     * }</pre>
+     * @return The old function tied to the provided if it exist, otherwise null
+     */
+    public FunctionCompute addFunction1(String id, Function1 compute){
+        return addFunction1(id, compute, false);
+    }
 
-        funcNameSearcher.addName(id);
-        return null;
+    /**
+     * Same as {@link Parser#addFunction1(String, Function1)}, but also states whether the function is pure, see {@link Parser#addFunction(String, FunctionCompute, boolean)}
+     */
+    public FunctionCompute addFunction1(String id, Function1 compute, boolean pure){
+        return addFunction(id, EvaluatedFunction.of1(compute), pure);
+    }
+
+    /**
+     * Adds a function that takes two arguments, which are evaluated once before it's called. Cheaper than {@link Parser#addFunction(String, FunctionCompute)} since the params never go through {@link Parser#processEntity(Formula, FormulaEntity, boolean)} inside the function.
+     * <pre> {@code
+     *   addFunction2("hypot", (a, b) -> Math.hypot(a, b));
+     * }</pre>
+     * @return The old function tied to the provided if it exist, otherwise null
+     */
+    public FunctionCompute addFunction2(String id, Function2 compute){
+        return addFunction2(id, compute, false);
+    }
+
+    /**
+     * Same as {@link Parser#addFunction2(String, Function2)}, but also states whether the function is pure, see {@link Parser#addFunction(String, FunctionCompute, boolean)}
+     */
+    public FunctionCompute addFunction2(String id, Function2 compute, boolean pure){
+        return addFunction(id, EvaluatedFunction.of2(compute), pure);
+    }
+
+    /**
+     * Adds a function that takes three arguments, which are evaluated once before it's called. Cheaper than {@link Parser#addFunction(String, FunctionCompute)} since the params never go through {@link Parser#processEntity(Formula, FormulaEntity, boolean)} inside the function.
+     * <pre> {@code
+     *   addFunction3("clamp", (val, min, max) -> Math.max(min, Math.min(max, val)));
+     * }</pre>
+     * @return The old function tied to the provided if it exist, otherwise null
+     */
+    public FunctionCompute addFunction3(String id, Function3 compute){
+        return addFunction3(id, compute, false);
+    }
+
+    /**
+     * Same as {@link Parser#addFunction3(String, Function3)}, but also states whether the function is pure, see {@link Parser#addFunction(String, FunctionCompute, boolean)}
+     */
+    public FunctionCompute addFunction3(String id, Function3 compute, boolean pure){
+        return addFunction(id, EvaluatedFunction.of3(compute), pure);
+    }
+
+    /**
+     * Adds a function that takes any amount of arguments, which are evaluated once before it's called. Cheaper than {@link Parser#addFunction(String, FunctionCompute)} since the params never go through {@link Parser#processEntity(Formula, FormulaEntity, boolean)} inside the function.
+     * <pre> {@code
+     *   addFunctionN("sum", args -> { double total = 0; for (double a : args) total += a; return total; });
+     * }</pre>
+     * @return The old function tied to the provided if it exist, otherwise null
+     */
+    public FunctionCompute addFunctionN(String id, FunctionN compute){
+        return addFunctionN(id, compute, false);
+    }
+
+    /**
+     * Same as {@link Parser#addFunctionN(String, FunctionN)}, but also states whether the function is pure, see {@link Parser#addFunction(String, FunctionCompute, boolean)}
+     */
+    public FunctionCompute addFunctionN(String id, FunctionN compute, boolean pure){
+        return addFunction(id, EvaluatedFunction.ofN(compute), pure);
     }
 
     /**
@@ -506,7 +627,25 @@ public class Parser implements ParseCompute{
      * @return True if there is a function linked to this id, false otherwise
      */
     public boolean isFunction(String id){
-        return functions.containsKey(id);
+        return config.isFunction(id);
+    }
+
+    /**
+     * Checks if the function tied to the given id is still the one installed by {@link Parser#reset()}
+     * @param id To check for function. Case-sensitive
+     * @return True if the default function is present and was not replaced, false otherwise
+     */
+    public boolean isDefaultFunction(String id){
+        return config.isDefaultFunction(id);
+    }
+
+    /**
+     * Checks if the function tied to the given id was marked as pure, see {@link Parser#addFunction(String, FunctionCompute, boolean)}
+     * @param id To check for function. Case-sensitive
+     * @return True if the function exists and is pure, false otherwise
+     */
+    public boolean isPureFunction(String id){
+        return config.isPureFunction(id);
     }
 
     /**
@@ -515,7 +654,7 @@ public class Parser implements ParseCompute{
      * @return The function logic tied to the given id, null otherwise
      */
     public FunctionCompute getFunction(String id){
-        return functions.get(id);
+        return config.getFunction(id);
     }
 
     /**
@@ -523,21 +662,127 @@ public class Parser implements ParseCompute{
      * @param id To check for function. Case-sensitive
      * @return The function logic that as tied to the given id, null otherwise
      */
-    public FunctionCompute removeFunction(String id){
-        FunctionCompute removed = functions.remove(id);
-
-        if(removed == null)
+    public synchronized FunctionCompute removeFunction(String id){
+        ParserConfig current = config;
+        if(!current.isFunction(id))
             return null;
 
-        funcNameSearcher.removeName(id);
-        return removed;
+        ParserConfig.Editor edit = current.edit();
+        edit.removeFunction(id);
+        publish(edit);
+        return current.functions.get(id);
+    }
+
+    /**
+     * Returns a number that changes every time something in the configuration changes, such as operators, functions, commas or the default operator.<br/>
+     * Compiled formulas use it to know when they have to be compiled again, and the parse cache to know when its entries are outdated
+     */
+    public int getConfigVersion(){
+        return config.version;
+    }
+
+    /**
+     * Returns the current configuration. It never changes, any change to this parser publishes a new one instead, so it can be read from any thread while the parser is being reconfigured
+     */
+    public ParserConfig getConfig(){
+        return config;
+    }
+
+    /**
+     * Returns a hash of the parts of the configuration that decide how a parsed formula is computed: every operator with its priority and, for the default ones, which implementation it uses, the default operator and the operator between variables.<br/>
+     * Unlike {@link Parser#getConfigVersion()} it only depends on the configuration itself, so parsers set up the same way have the same hash, even in different processes.
+     * Used by {@link Formula#readFrom(java.io.DataInput, Parser)} to refuse formulas written with a different set of operators. Functions aren't part of it, a formula only checks the ones it uses
+     */
+    public int getConfigHash(){
+        return config.getHash();
     }
 
     /**
      * Returns a copy of the current map of functions
      */
     public Map<String, FunctionCompute> functionsClone(){
-        return new HashMap<>(functions);
+        return config.functionsClone();
+    }
+
+    /**
+     * Enables a cache that keeps up to maxSize parsed formulas, keyed by their text. The least recently used entry is dropped once the cache is full.<br/>
+     * A formula found in the cache is handed out as a copy (see {@link Formula#copy()}), so it's independent of every other formula returned for the same text.<br/>
+     * Any configuration change drops every entry, see {@link Parser#getConfigVersion()}. The cache is not used while a custom parse logic is set.<br/><br/>
+     *
+     * Setting a new size starts a new, empty cache and resets the counters.
+     * @param maxSize The maximum amount of formulas kept, 0 or less disables the cache
+     */
+    public void setParseCacheSize(int maxSize){
+        parseCache = maxSize > 0 ? new ParseCache(maxSize, config.version) : null;
+    }
+
+    /**
+     * Returns the maximum amount of formulas the parse cache keeps, or 0 if the cache is disabled
+     */
+    public int getParseCacheSize(){
+        ParseCache cache = parseCache;
+        return cache != null ? cache.getMaxSize() : 0;
+    }
+
+    /**
+     * Drops every formula from the parse cache, the counters are kept
+     */
+    public void clearParseCache(){
+        ParseCache cache = parseCache;
+        if(cache != null)
+            cache.clear();
+    }
+
+    /**
+     * Returns how many times a formula was found in the parse cache
+     */
+    public long getParseCacheHits(){
+        ParseCache cache = parseCache;
+        return cache != null ? cache.getHits() : 0;
+    }
+
+    /**
+     * Returns how many times a formula was not found in the parse cache and had to be parsed
+     */
+    public long getParseCacheMisses(){
+        ParseCache cache = parseCache;
+        return cache != null ? cache.getMisses() : 0;
+    }
+
+    /**
+     * Returns how many formulas were dropped from the parse cache because it was full
+     */
+    public long getParseCacheEvictions(){
+        ParseCache cache = parseCache;
+        return cache != null ? cache.getEvictions() : 0;
+    }
+
+    /**
+     * Sets the executor that computes the async results of the formulas parsed by this parser, see {@link Formula#inOperationOrderResultAsync()}.<br/>
+     * Gives the evaluations of this parser their own threads instead of sharing {@link ForkJoinPool#commonPool()} with everything else in the JVM.
+     * Unlike the configuration it doesn't change how formulas are computed, so their caches and compiled programs are kept.
+     * @param executor The executor, null goes back to the common pool. See {@link Parser#virtualThreadExecutor()} for virtual threads
+     */
+    public void setAsyncExecutor(Executor executor){
+        asyncExecutor = executor;
+    }
+
+    /**
+     * Returns the executor that computes the async results of the formulas parsed by this parser, {@link ForkJoinPool#commonPool()} unless another one was set
+     */
+    public Executor getAsyncExecutor(){
+        Executor executor = asyncExecutor;
+        return executor != null ? executor : ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Returns an executor that runs every task on a new virtual thread, or null if the JVM doesn't have virtual threads (before Java 21).<br/>
+     * It's looked up through reflection, so the library still runs on Java 8, and the same instance is returned every time. Since null goes back to the common pool,
+     * <pre>{@code parser.setAsyncExecutor(Parser.virtualThreadExecutor());}</pre>
+     * uses virtual threads where the JVM has them and the common pool everywhere else.
+     */
+    public static Executor virtualThreadExecutor(){
+        return VirtualThreads.EXECUTOR;
     }
 
     /**
@@ -547,6 +792,44 @@ public class Parser implements ParseCompute{
         return parseFormula(formula, false, true);
     }
 
+    /**
+     * see {@link Parser#parseFormula(CharSequence, boolean, boolean)}
+     */
+    public Formula parse(CharSequence formula){
+        return parseFormula(formula, false, true);
+    }
+
+    /**
+     * Parses len chars of buf starting from off. The array is read in place and never copied, see {@link Parser#parseFormula(CharSequence, boolean, boolean)}
+     */
+    public Formula parse(char[] buf, int off, int len){
+        return parseFormula(ParseInput.of(buf, off, len), false, true);
+    }
+
+    /**
+     * Parses the bytes between the position and the limit of the buffer as ASCII, one char per byte.<br/>
+     * The bytes are read in place, without decoding or copying them, and the position of the buffer isn't moved, see {@link Parser#parseFormula(CharSequence, boolean, boolean)}
+     * @throws IllegalArgumentException If one of the bytes isn't ASCII
+     */
+    public Formula parse(ByteBuffer asciiBuf){
+        return parseFormula(ParseInput.ofAscii(asciiBuf), false, true);
+    }
+
+    /**
+     * Parses every formula of the list, with the executor's workers parsing them in parallel, see {@link Parser#parse(CharSequence)}.<br/>
+     * Formulas with the same text are only parsed once, the other ones get copies of the result. The calling thread parses as well and returns once every formula is done.<br/><br/>
+     *
+     * Each worker uses the parsing states of its own thread. Every formula is parsed with the configuration that was current when its parse started, see {@link Parser}.
+     * Custom parse logic has to be safe to call from multiple threads.
+     *
+     * @param formulas The formulas to parse, a null formula is reported as an error
+     * @param executor The executor that runs the workers, for example {@link java.util.concurrent.ForkJoinPool#commonPool()}
+     * @return The formula or the exception thrown while parsing it, for every formula of the list and in the same order
+     */
+    public ParseResults parseAll(List<? extends CharSequence> formulas, Executor executor){
+        return ParallelParse.parseAll(this, formulas, executor);
+    }
+
     /**
      * see {@link Parser#parseFormula(String, boolean, boolean)}
      */
@@ -564,7 +847,9 @@ public class Parser implements ParseCompute{
      * If at the end of the parsing process there are entities unfinished, they will forcefully get finished, like 4+(1/(2*3 will get treated as 4+(1/(2*3))<br/><br/>
      *
      * When parsing for functions, the program will see something like, a, then ab = a*b, which will be stored as {@link ReplaceableVariable} then finally abs. The other two variables a and b will be removed from their variables lists.<br/>
-     * Removing the 'temporary' variables in done in O(1) as the data structures used for these operations ({@link TempList} and {@link TempMap}) are made specifically for this specific use case
+     * Removing the 'temporary' variables in done in O(1) as the data structures used for these operations ({@link TempList} and {@link TempMap}) are made specifically for this specific use case<br/><br/>
+     *
+     * If the parse cache is enabled, formulas that were parsed before are copied instead, see {@link Parser#setParseCacheSize(int)}
      *
      * @param formula The string that's going to be parsed
      * @param acceptNull If the returned value can be null, if false, an empty Formula object will be provided. The default implementation never returns null, only if the parse logic has been replaced using {@link Parser#setParseLogic(ParseCompute)}
@@ -572,27 +857,58 @@ public class Parser implements ParseCompute{
      * @return A Formula entity or null.
      */
     public Formula parseFormula(String formula, boolean acceptNull, boolean hasFunctions) {
-        if(parseLogic != null) {
-            Formula result = parseLogic.parse(formula);
+        return parseFormula((CharSequence) formula, acceptNull, hasFunctions);
+    }
+
+    /**
+     * Same as {@link Parser#parseFormula(String, boolean, boolean)}, but the chars are read straight from the sequence, so char arrays and buffers can be parsed without turning them into a string first.<br/>
+     * The sequence is only copied into a string when the parse logic has been replaced, or when the parse cache is enabled, since both of them need one.
+     */
+    public Formula parseFormula(CharSequence formula, boolean acceptNull, boolean hasFunctions) {
+        return parseFormula(ParseInput.of(formula), acceptNull, hasFunctions);
+    }
+
+    Formula parseFormula(ParseInput formula, boolean acceptNull, boolean hasFunctions) {
+        //Every part of the parse reads this snapshot, even if the configuration changes halfway through
+        ParserConfig cfg = config;
+        if(cfg.parseLogic != null) {
+            Formula result = cfg.parseLogic.parse(formula != null ? formula.toString() : null);
             return acceptNull || result != null ? result : new Formula(new FormulaEntity[0], 0, new FormulaEntity[0], 0, new FormulaEntity[0], 0, new LinkedHashMap<>(), this);
         }
 
-        if(isOperator(formula.charAt(formula.length() - 1)))
-            formula = formula + "0";
+        ParseCache cache = parseCache;
+        if(cache == null)
+            return parseText(cfg, formula, hasFunctions);
+
+        int version = cfg.version;
+        String key = ParseCache.key(formula, hasFunctions);
+        Formula template = cache.get(key, version);
+        if(template != null)
+            return template.copy();
 
-        ParsingState state = getState();
+        Formula result = parseText(cfg, formula, hasFunctions);
+        cache.put(key, result.copy(), version);
+        return result;
+    }
+
+    private Formula parseText(ParserConfig cfg, ParseInput formula, boolean hasFunctions) {
+        int length = formula.length();
+        if(length == 0)
+            throw new StringIndexOutOfBoundsException("Empty formula");
+
+        //A trailing operator gets a 0 after it, it's read as an extra char instead of being appended to the input
+        int end = cfg.isOperator(formula.charAt(length - 1)) ? length + 1 : length;
+
+        ParsingState state = getState(cfg);
         ParsingState currentState = state;
 
         Deque<ParsingState> stateStack = new ArrayDeque<>();
-        String funcString = "";
 
         Character last = null;
 
-        char[] arr = formula.toCharArray();
-        int length = arr.length;
-        for(int i = 0; i < length; i++){
-            char c = arr[i];
-            if(skipEmptySpace && c == ' ')
+        for(int i = 0; i < end; i++){
+            char c = i < length ? formula.charAt(i) : '0';
+            if(cfg.skipEmptySpace && c == ' ')
                 continue;
 
             if(!hasFunctions)
@@ -600,36 +916,43 @@ public class Parser implements ParseCompute{
             else{
                 boolean wasEmpty = currentState.funcString.length() == 0;
 
-                funcString = currentState.funcString.toString();
-                if (!(functions.containsKey(funcString))) {
-                    if (!funcNameSearcher.exists(funcString = currentState.funcString.append(c).toString())) {
+                if (!cfg.names.isName(currentState.funcState)) {
+                    int next = cfg.names.next(currentState.funcState, c);
+                    if (next == NameSearcher.NONE) {
                         currentState.dump();
                         currentState.resetFunc();
 
-                        funcString = currentState.funcString.append(c).toString();
-                        if (!funcNameSearcher.exists(funcString)) {
+                        next = cfg.names.next(NameSearcher.ROOT, c);
+                        if (next == NameSearcher.NONE) {
                             currentState.dump();
                             currentState.resetFunc();
                         }
-                        else
-                            addPreFuncInfo(currentState, i, arr);
+                        else {
+                            currentState.funcString.append(c);
+                            currentState.funcState = next;
+                            addPreFuncInfo(currentState, i, formula);
+                        }
+                    }
+                    else {
+                        currentState.funcString.append(c);
+                        currentState.funcState = next;
+                        if (wasEmpty)
+                            addPreFuncInfo(currentState, i, formula);
                     }
-                    else if (wasEmpty)
-                        addPreFuncInfo(currentState, i, arr);
                 }
                 //Used for functions that are formed of only one character
                 else if(wasEmpty)
-                    addPreFuncInfo(currentState, i, arr);
+                    addPreFuncInfo(currentState, i, formula);
             }
 
             if(c == '('){
-                char operator = last != null && last != '(' ? betweenVariables : defaultOperator;
+                char operator = last != null && last != '(' ? cfg.betweenVariables : cfg.defaultOperator;
 
-                if(!hasFunctions || (currentState.func = functions.get(funcString)) == null){
+                if(!hasFunctions || !cfg.names.isName(currentState.funcState) || (currentState.func = cfg.functions.get(currentState.funcString.toString())) == null){
                     currentState.dump();
                     currentState.resetFunc();
 
-                    if(last != null && isOperator(last))
+                    if(last != null && cfg.isOperator(last))
                         operator = last;
                 }
                 else{
@@ -637,7 +960,7 @@ public class Parser implements ParseCompute{
                     operator = currentState.preFuncOp;
                 }
 
-                if(currentState.currentValue != null)
+                if(currentState.hasValue)
                     addStaticVariable(currentState, currentState.inOrder, currentState.inOperationOrder, true);
 
                 boolean isFunc = currentState.func != null;
@@ -647,7 +970,7 @@ public class Parser implements ParseCompute{
                     currentState.lastAddedEntity = lastValidEntity;
 
                 stateStack.push(currentState);
-                currentState = getState();
+                currentState = getState(cfg);
                 currentState.isFunc = isFunc;
                 currentState.parenthesesOperation = operator;
 
@@ -673,7 +996,10 @@ public class Parser implements ParseCompute{
         while(!stateStack.isEmpty() && state != currentState)
             currentState =  onParenthesisClose(currentState, stateStack);
 
-        return finishFormula(state, null);
+        Formula result = finishFormula(state, null);
+        //The formula copied everything it needs out of the state, so the root goes back to the pool like the nested ones
+        recycleState(state);
+        return cfg.foldConstants ? result.foldConstants() : result;
     }
 
     /**
@@ -688,14 +1014,17 @@ public class Parser implements ParseCompute{
 
         ParsingState st = currentState;
         currentState = stateStack.pop();
-        char op = st.parenthesesOperation == '-' ? currentState.isNegative ? '-' : defaultOperator : st.parenthesesOperation;
+        ParserConfig cfg = currentState.config;
+        char op = st.parenthesesOperation == '-' ? currentState.isNegative ? '-' : cfg.defaultOperator : st.parenthesesOperation;
 
         FormulaEntity<?> toAdd;
 
         if(currentState.func == null)
             toAdd = finishFormula(st, op);
         else{
-            toAdd = new Function(currentState.funcString.toString(), st.funVars.getArray(), st.funVars.size(), op);
+            Function function = new Function(currentState.funcString.toString(), st.funVars.getArray(), st.funVars.size(), op);
+            function.bindCompute(currentState.func, cfg.version);
+            toAdd = function;
             currentState.lastOperationPriority = currentState.lastOperationPriorityBeforeFunc;
             currentState.lastOperation = currentState.lastOperationBeforeFunc;
         }
@@ -704,7 +1033,7 @@ public class Parser implements ParseCompute{
         resolveAddition(currentState, st.parenthesesOperation, toAdd, currentState.inOperationOrder);
         currentState.reset();
         currentState.resetFunc();
-        recycleState(st, this);
+        recycleState(st);
         return currentState;
     }
 
@@ -715,7 +1044,7 @@ public class Parser implements ParseCompute{
      * @return The formula entity object
      */
     protected Formula finishFormula(ParsingState currentState, Character c){
-        if(currentState.currentValue != null)
+        if(currentState.hasValue)
             addStaticVariable(currentState, currentState.inOrder, currentState.inOperationOrder, false);
 
         TempList lowest = !currentState.inOperationOrder.isEmpty() ? currentState.inOperationOrder.getAndRemoveLast() : new TempList();
@@ -739,11 +1068,14 @@ public class Parser implements ParseCompute{
      * Used for StaticVariables and ReplaceableVariables
      */
     private void processChar(char c, ParsingState state,TempList inOrder, TempMap inOperationOrder){
+        ParserConfig cfg = state.config;
+        //One lookup answers whether the char is an operator, comma, delimiter or part of a variable
+        int kind = CharClassTable.kind(cfg.classOf(c));
         if(state.currentOperation == null && !inOrder.isEmpty()){
-            if(isValidVar(c))
-                state.currentOperation = betweenVariables;
+            if(kind == CharClassTable.NONE)
+                state.currentOperation = cfg.betweenVariables;
 
-            else if(isDelimiter(c) && state.isFunc){
+            else if(kind == CharClassTable.DELIMITER && state.isFunc){
                 state.addFuncVariable(this);
                 return;
             }
@@ -751,7 +1083,7 @@ public class Parser implements ParseCompute{
 //            else if(isDelimiter(c))
 //                state.currentOperation = defaultOperator;
 
-            else if(!isOperator(c))
+            else if(kind != CharClassTable.OPERATOR)
                 throw new RuntimeException("Invalid operation symbol: " + c);
 
             else{
@@ -761,20 +1093,17 @@ public class Parser implements ParseCompute{
             }
         }
 
-        if(state.currentValue == null){
-            state.currentValue = 0D;
-
-            if(!state.started && c != '-')
-                state.currentValue = defaultValueBetweenEmptyOperators;
-
+        if(!state.hasValue){
             if(c == '-'){
                 state.isNegative = !state.isNegative;
-                state.currentValue = null;
                 return;
             }
+
+            state.hasValue = true;
+            state.currentValue = !state.started ? cfg.defaultValueBetweenEmptyOperators : 0D;
         }
 
-        if(isComma(c)){
+        if(kind == CharClassTable.COMMA){
             if(state.hasDecimalPoint)
                 throw new RuntimeException("Double comma/decimal point: " + c);
 
@@ -782,7 +1111,7 @@ public class Parser implements ParseCompute{
             return;
         }
 
-        if(isDelimiter(c) && state.isFunc){
+        if(kind == CharClassTable.DELIMITER && state.isFunc){
             state.addFuncVariable(this);
             return;
         }
@@ -790,7 +1119,7 @@ public class Parser implements ParseCompute{
         byte val = fromChar(c);
 
         if(val == -1){
-            if(isOperator(c)){
+            if(kind == CharClassTable.OPERATOR){
                 if(state.func == null)
                     addStaticVariable(state, inOrder, inOperationOrder, true);
 
@@ -822,6 +1151,7 @@ public class Parser implements ParseCompute{
      * Creates a static variable, adds it and resolves its priority in the operation order
      */
     private StaticVariable addStaticVariable(ParsingState state, TempList toAdd, TempMap inOperationOrder, boolean reset){
+        char defaultOperator = state.config.defaultOperator;
         char operation = state.currentOperation != null ? state.currentOperation : defaultOperator;
         StaticVariable staticVariable = new StaticVariable(formatStatic(state.isNegative, state.currentValue), operation == '-' ? defaultOperator : operation);
 
@@ -834,7 +1164,9 @@ public class Parser implements ParseCompute{
      * Creates a replaceable variable, adds it and resolves its priority in the operation order
      */
     private ReplaceableVariable addVariable(char c, ParsingState state, TempList toAdd, TempMap inOperationOrder){
-        char operation = state.currentValue != 0.0 ? betweenVariables : (state.currentOperation != null ? state.currentOperation : defaultOperator);
+        ParserConfig cfg = state.config;
+        char defaultOperator = cfg.defaultOperator;
+        char operation = state.currentValue != 0.0 ? cfg.betweenVariables : (state.currentOperation != null ? state.currentOperation : defaultOperator);
         ReplaceableVariable replaceableVariable = new ReplaceableVariable(c, operation != '-' ? operation : defaultOperator, state.isNegative);
 
         preResolve(state, replaceableVariable, operation, toAdd, inOperationOrder, true);
@@ -852,7 +1184,7 @@ public class Parser implements ParseCompute{
             state.lastAddedEntity = entity;
             state.lastOperationPriority = 0;
             state.lastOperation = c;
-            inOperationOrder.getOrAdd(getIndexByPriority(0)).add(entity);
+            inOperationOrder.getOrAdd(state.config.getIndexByPriority(0)).add(entity);
         }
 
         toAdd.add(entity);
@@ -869,13 +1201,14 @@ public class Parser implements ParseCompute{
      * All operations related to lists and maps are in O(1) as they are special implementation for this use case
      */
     private void resolveAddition(ParsingState state, char operation, FormulaEntity<?> entity, TempMap inOperationOrder){
-        int prio = getOperatorPriority(operation);
+        ParserConfig cfg = state.config;
+        int prio = cfg.getOperatorPriority(operation);
 
         FormulaEntity<?> lastEntity = state.lastAddedEntity;
         char lastOperation = state.lastOperation;
 
         if(prio == state.lastOperationPriority){
-            inOperationOrder.getOrAdd(getIndexByPriority(state.lastOperationPriority)).add(entity);
+            inOperationOrder.getOrAdd(cfg.getIndexByPriority(state.lastOperationPriority)).add(entity);
             state.lastAddedEntity = entity;
             state.lastOperation = operation;
             groupAddition(operation, prio, (byte) 0, entity, lastEntity, lastOperation, inOperationOrder, state);
@@ -886,12 +1219,12 @@ public class Parser implements ParseCompute{
             state.lastOperationPriority = prio;
             state.lastAddedEntity = entity;
             state.lastOperation = operation;
-            inOperationOrder.getOrAdd(getIndexByPriority(state.lastOperationPriority)).add(entity);
+            inOperationOrder.getOrAdd(cfg.getIndexByPriority(state.lastOperationPriority)).add(entity);
             groupAddition(operation, prio, (byte) 1, entity, lastEntity, lastOperation, inOperationOrder, state);
             return;
         }
 
-        TempList list = inOperationOrder.getOrAdd(getIndexByPriority(state.lastOperationPriority));
+        TempList list = inOperationOrder.getOrAdd(cfg.getIndexByPriority(state.lastOperationPriority));
 
         if(!list.isEmpty() && !(entity instanceof Function))
             list.removeLast();
@@ -901,7 +1234,7 @@ public class Parser implements ParseCompute{
 
         state.lastOperationPriority = prio;
         state.lastOperation = operation;
-        list = inOperationOrder.getOrAdd(getIndexByPriority(state.lastOperationPriority));
+        list = inOperationOrder.getOrAdd(cfg.getIndexByPriority(state.lastOperationPriority));
 
         if(state.lastAddedEntity != null)
             list.add(state.lastAddedEntity);
@@ -921,7 +1254,7 @@ public class Parser implements ParseCompute{
         if(op != 0 || operation != '^' || lastOperation != '^')
             return;
 
-        TempList list = inOperationOrder.getOrAdd(getIndexByPriority(prio));
+        TempList list = inOperationOrder.getOrAdd(state.config.getIndexByPriority(prio));
 
         if(list.size() < 3)
             return;
@@ -946,238 +1279,47 @@ public class Parser implements ParseCompute{
         list.add(toAdd);
     }
     private final static FormulaEntity<?>[] EMPTY = new FormulaEntity<?>[0];
+    /**
+     * Parsing only reads the configuration, the states are the only thing it writes to, so each thread gets its own pool.<br/>
+     * The pool is shared by every parser: a state takes the configuration of the parse in {@link ParsingState#begin(ParserConfig)} and drops it,
+     * together with everything it parsed, before going back, so a pooled state never keeps a parser alive
+     */
+    private static final ThreadLocal<Deque<ParsingState>> STATE_POOL = ThreadLocal.withInitial(ArrayDeque::new);
     private final int DEF = 0;
 
     //Creates and initializes the default values for this class. Can also be used to reset this object
-    private void initDefaults(){
-        functions = new HashMap<>();
-        funcNameSearcher = new NameSearcher();
-        statePool = new ArrayDeque<>();
-
-        for(int i = 0; i < 3; i++)
-            statePool.push(new ParsingState(this));
-
-        parseLogic = null;
-        skipEmptySpace = true;
-        defaultOperator = '+';
-        betweenVariables = '*';
-        defaultValueBetweenEmptyOperators = 0D;
-
-        opImpl = new OperatorCompute[limit];
-        opPrio = new int[limit];
-        opPresent = new boolean[limit];
-        commas = new boolean[limit];
-        delims = new boolean[limit];
-
-        addOperator('^', (a, b, extra) -> {
-            double base = Math.abs(a);
-            int sign = 1;
-
-            if (extra[0] && extra[1]) {
-                if (b != Math.floor(b))
-                    throw new ArithmeticException("cannot raise negative number to fractional power");
-                if ((long) b % 2 != 0)
-                    sign = -sign;
-            }
-            else if (!extra[0] && a < 0)
-                sign = -sign;
-
-            if (extra[0] && extra[2])
-                sign = -sign;
-
-            return sign * Math.pow(base, b);
-        }, 10);
-
-        addOperator('*', (a, b, extra) -> a * b, 5);
-        addOperator('/', (a, b, extra) -> a / b, 5);
-        addOperator('%', (a, b, extra) -> a % b, 5);
-
-        addOperator('+', (a, b, extra) -> a + b, 0);
-        addOperator('-', (a, b, extra) -> a - b, 0);
-
-        addComma('.');
-
-        addDelimiter(',');
-
-        functions.clear();
-        funcNameSearcher.clear();
-
-        addFunction("pi", (caller, inOperationOrder, a) -> Math.PI);
-        addFunction("e", (caller, inOperationOrder, a) -> Math.E);
-        addFunction("phi", (caller, inOperationOrder, a) -> (1 + Math.sqrt(5)) / 2);
-        addFunction("tau", (caller, inOperationOrder, a) -> 2 * Math.PI);
-        addFunction("sqrt2", (caller, inOperationOrder, a) -> Math.sqrt(2));
-        addFunction("sqrt3", (caller, inOperationOrder, a) -> Math.sqrt(3));
-        addFunction("ln2", (caller, inOperationOrder, a) -> Math.log(2));
-        addFunction("ln10", (caller, inOperationOrder, a) -> Math.log(10));
-        addFunction("log2e", (caller, inOperationOrder, a) -> 1 / Math.log(2));
-        addFunction("log10e", (caller, inOperationOrder, a) -> 1 / Math.log(10));
-        addFunction("inf", (caller, inOperationOrder, a) -> Double.POSITIVE_INFINITY);
-        addFunction("nan", (caller, inOperationOrder, a) -> Double.NaN);
-
-        addFunction("abs", (caller, inOperationOrder, a) -> Math.abs(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("round", (caller, inOperationOrder, a) -> (double) Math.round(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("floor", (caller, inOperationOrder, a) -> Math.floor(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("ceil", (caller, inOperationOrder, a) -> Math.ceil(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("mod", (caller, inOperationOrder, a) -> processEntity(caller, a[0], inOperationOrder) % processEntity(caller, a[1], inOperationOrder));
-        addFunction("sqrt", (caller, inOperationOrder, a) -> Math.sqrt(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("pow", (caller, inOperationOrder, a) -> Math.pow(processEntity(caller, a[0], inOperationOrder), processEntity(caller, a[1], inOperationOrder)));
-        addFunction("exp", (caller, inOperationOrder, a) -> Math.exp(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("log", (caller, inOperationOrder, a) -> Math.log(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("log10", (caller, inOperationOrder, a) -> Math.log10(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("log2", (caller, inOperationOrder, a) -> Math.log(processEntity(caller, a[0], inOperationOrder)) / Math.log(2));
-        addFunction("sin", (caller, inOperationOrder, a) -> Math.sin(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("cos", (caller, inOperationOrder, a) -> Math.cos(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("tan", (caller, inOperationOrder, a) -> Math.tan(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("asin", (caller, inOperationOrder, a) -> Math.asin(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("acos", (caller, inOperationOrder, a) -> Math.acos(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("atan", (caller, inOperationOrder, a) -> Math.atan(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("atan2", (caller, inOperationOrder, a) -> Math.atan2(processEntity(caller, a[0], inOperationOrder), processEntity(caller, a[1], inOperationOrder)));
-        addFunction("sinh", (caller, inOperationOrder, a) -> Math.sinh(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("cosh", (caller, inOperationOrder, a) -> Math.cosh(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("tanh", (caller, inOperationOrder, a) -> Math.tanh(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("asinh", (caller, inOperationOrder, a) -> Math.log(processEntity(caller, a[0], inOperationOrder) + Math.sqrt(Math.pow(processEntity(caller, a[0], inOperationOrder), 2) + 1)));
-        addFunction("acosh", (caller, inOperationOrder, a) -> Math.log(processEntity(caller, a[0], inOperationOrder) + Math.sqrt(Math.pow(processEntity(caller, a[0], inOperationOrder), 2) - 1)));
-        addFunction("atanh", (caller, inOperationOrder, a) -> 0.5 * Math.log((1 + processEntity(caller, a[0], inOperationOrder)) / (1 - processEntity(caller, a[0], inOperationOrder))));
-
-        addFunction("fact", (caller, inOperationOrder, a) -> {
-            int val = (int) processEntity(caller, a[0], inOperationOrder);
-
-            if (val < 0)
-                throw new IllegalArgumentException("factorial undefined for negative");
-
-            long result = 1L;
-            for (int i = 1; i <= val; i++)
-                result *= i;
-
-            return (double) result;
-        });
-        addFunction("min", (caller, inOperationOrder, a) -> {
-            double result = Double.POSITIVE_INFINITY;
-            for (int i = 0; i < a.length; i++) {
-                double val = processEntity(caller, a[i], inOperationOrder);
-                if (val < result) result = val;
-            }
-            return result;
-        });
-        addFunction("max", (caller, inOperationOrder, a) -> {
-            double result = Double.NEGATIVE_INFINITY;
-            for (int i = 0; i < a.length; i++) {
-                double val = processEntity(caller, a[i], inOperationOrder);
-                if (val > result) result = val;
+    private void initDefaults(int limit){
+        random = null;
+
+        ParserConfig current = config;
+        config = ParserConfig.defaults(limit, current != null ? current.version + 1 : 1);
+    }
+
+    //Only called while holding the lock, so changes from different threads never get lost
+    private void publish(ParserConfig.Editor edit){
+        config = edit.build(config.version + 1);
+    }
+
+    /**
+     * The Random used by the default random functions of the formulas parsed by this parser, created the first time it's needed
+     */
+    Random getRandom(){
+        Random r = random;
+        if(r == null){
+            synchronized(this){
+                r = random;
+                if(r == null)
+                    random = r = new Random();
             }
-            return result;
-        });
-        addFunction("avg", (caller, inOperationOrder, a) -> {
-            double sum = 0;
-            for (int i = 0; i < a.length; i++)
-                sum += processEntity(caller, a[i], inOperationOrder);
-            return sum / a.length;
-        });
-        addFunction("sum", (caller, inOperationOrder, a) -> {
-            double total = 0;
-            for (int i = 0; i < a.length; i++)
-                total += processEntity(caller, a[i], inOperationOrder);
-            return total;
-
-        });
-        addFunction("median", (caller, inOperationOrder, a) -> {
-            double[] vals = new double[a.length];
-            for (int i = 0; i < a.length; i++) vals[i] = processEntity(caller, a[i], inOperationOrder);
-            Arrays.sort(vals);
-            int mid = a.length / 2;
-            return a.length % 2 == 1 ? vals[mid] : (vals[mid - 1] + vals[mid]) / 2.0;
-        });
-        addFunction("sign", (caller, inOperationOrder, a) -> Math.signum(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("deg", (caller, inOperationOrder, a) -> Math.toDegrees(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("rad", (caller, inOperationOrder, a) -> Math.toRadians(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("clamp", (caller, inOperationOrder, a) -> {
-            double val = processEntity(caller, a[0], inOperationOrder);
-            double min = processEntity(caller, a[1], inOperationOrder);
-            double max = processEntity(caller, a[2], inOperationOrder);
-            return Math.max(min, Math.min(max, val));
-        });
-        addFunction("brt", (caller, inOperationOrder, a) -> Math.cbrt(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("nthroot", (caller, inOperationOrder, a) -> Math.pow(processEntity(caller, a[0], inOperationOrder), 1.0 / processEntity(caller, a[1], inOperationOrder)));
-        addFunction("hypot", (caller, inOperationOrder, a) -> Math.hypot(processEntity(caller, a[0], inOperationOrder), processEntity(caller, a[1], inOperationOrder)));
-        addFunction("root", (caller, inOperationOrder, a) -> Math.pow(processEntity(caller, a[0], inOperationOrder), 1.0 / processEntity(caller, a[1], inOperationOrder)));
-        addFunction("bitand", (caller, inOperationOrder, a) -> (double)((long)processEntity(caller, a[0], inOperationOrder) & (long)processEntity(caller, a[1], inOperationOrder)));
-        addFunction("bitor", (caller, inOperationOrder, a) -> (double)((long)processEntity(caller, a[0], inOperationOrder) | (long)processEntity(caller, a[1], inOperationOrder)));
-        addFunction("bitxor", (caller, inOperationOrder, a) -> (double)((long)processEntity(caller, a[0], inOperationOrder) ^ (long)processEntity(caller, a[1], inOperationOrder)));
-        addFunction("bitnot", (caller, inOperationOrder, a) -> (double)(~(long)processEntity(caller, a[0], inOperationOrder)));
-        addFunction("shl", (caller, inOperationOrder, a) -> (double) ((long) processEntity(caller, a[0], inOperationOrder) << (int) (long) processEntity(caller, a[1], inOperationOrder)));
-        addFunction("shr", (caller, inOperationOrder, a) -> (double) ((long) processEntity(caller, a[0], inOperationOrder) >> (int) (long) processEntity(caller, a[1], inOperationOrder)));
-        addFunction("sec", (caller, inOperationOrder, a) -> 1.0 / Math.cos(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("csc", (caller, inOperationOrder, a) -> 1.0 / Math.sin(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("cot", (caller, inOperationOrder, a) -> 1.0 / Math.tan(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("normalize_angle", (caller, inOperationOrder, a) -> {
-            double angle = processEntity(caller, a[0], inOperationOrder);
-            double twoPi = 2 * Math.PI;
-            return ((angle % twoPi) + twoPi) % twoPi;
-        });
-        addFunction("wrap", (caller, inOperationOrder, a) -> {
-            double val = processEntity(caller, a[0], inOperationOrder);
-            double min = processEntity(caller, a[1], inOperationOrder);
-            double max = processEntity(caller, a[2], inOperationOrder);
-            double range = max - min;
-            return ((val - min) % range + range) % range + min;
-        });
-        Random randInstance = new Random();
-        addFunction("rand", (caller, inOperationOrder, a) -> randInstance.nextDouble());
-        addFunction("randint", (caller, inOperationOrder, a) -> {
-            int min = (int)processEntity(caller, a[0], inOperationOrder);
-            int max = (int)processEntity(caller, a[1], inOperationOrder);
-            return min + randInstance.nextInt(max - min + 1);
-        });
-        addFunction("randrange", (caller, inOperationOrder, a) -> {
-            double min = processEntity(caller, a[0], inOperationOrder);
-            double max = processEntity(caller, a[1], inOperationOrder);
-            return min + (max - min) * randInstance.nextDouble();
-        });
-        addFunction("seed", (caller, inOperationOrder, a) -> {
-            randInstance.setSeed((long)processEntity(caller, a[0], inOperationOrder));
-            return 0.0;
-        });
-        addFunction("noise", (caller, inOperationOrder, a) -> {
-            double x = processEntity(caller, a[0], inOperationOrder);
-            return (Math.sin(x * 12.9898 + 78.233) + 1.0) * 0.5;
-        });
-        addFunction("dot", (caller, inOperationOrder, a) -> processEntity(caller, a[0], inOperationOrder) * processEntity(caller, a[1], inOperationOrder));
-        addFunction("cross", (caller, inOperationOrder, a) -> processEntity(caller, a[0], inOperationOrder) * processEntity(caller, a[1], inOperationOrder));
-        addFunction("length", (caller, inOperationOrder, a) -> Math.abs(processEntity(caller, a[0], inOperationOrder)));
-        addFunction("normalize", (caller, inOperationOrder, a) -> {
-            double val = processEntity(caller, a[0], inOperationOrder);
-            return val == 0 ? 0 : val / Math.abs(val);
-        });
-        addFunction("distance", (caller, inOperationOrder, a) -> {
-            double dx = processEntity(caller, a[0], inOperationOrder) - processEntity(caller, a[1], inOperationOrder);
-            return Math.abs(dx);
-        });
-        addFunction("angle", (caller, inOperationOrder, a) -> {
-            double x = processEntity(caller, a[0], inOperationOrder);
-            double y = processEntity(caller, a[1], inOperationOrder);
-            return Math.atan2(y, x);
-        });
-        addFunction("lerp", (caller, inOperationOrder, a) -> {
-            double a0 = processEntity(caller, a[0], inOperationOrder);
-            double a1 = processEntity(caller, a[1], inOperationOrder);
-            double t = processEntity(caller, a[2], inOperationOrder);
-            return a0 + (a1 - a0) * t;
-        });
-        addFunction("mix", (caller, inOperationOrder, a) -> {
-            double a0 = processEntity(caller, a[0], inOperationOrder);
-            double a1 = processEntity(caller, a[1], inOperationOrder);
-            double t = processEntity(caller, a[2], inOperationOrder);
-            return a0 + (a1 - a0) * t;
-        });
+        }
+        return r;
     }
 
     /**
      * {@link TempMap} is created based on the current present OPERATORS and their priorities, so the map is always (reverse)sorted and has O(1) insertion time. This is method is used to retrieve the index
      */
     public int getIndexByPriority(int priority) {
-        if (priority < 0 || priority >= opIndexByPrio.length) return -1;
-        return opIndexByPrio[priority];
+        return config.getIndexByPriority(priority);
     }
 
     /**
@@ -1187,13 +1329,29 @@ public class Parser implements ParseCompute{
      */
     public final double compute(char c, double left, double right, boolean... extra){
         try{
-            return opImpl[c].compute(left, right, extra);
+            return config.getOperator(c).compute(left, right, extra);
         }
         catch (NullPointerException ex){
             throw new NullPointerException("Character " + c + " is not a valid operator but an operation tried to use it. This only happens if this character is set under a setting like defaultOperator or betweenVariables or something similar but the character was removed from the valid operator list. Please update your settings accordingly.");
         }
     }
 
+    /**
+     * Same as {@link Parser#compute(char, double, double, boolean...)} for the three flags the formulas use, without allocating the flag array.
+     */
+    public final double compute(char c, double left, double right, boolean wasFormula, boolean innerNegative, boolean outerMinus){
+        return compute(c, left, right, FlaggedOperatorCompute.pack(wasFormula, innerNegative, outerMinus));
+    }
+
+    /**
+     * Computes the two variables using the selected operator logic, with the flags packed as described in {@link FlaggedOperatorCompute}.
+     * This is what the formulas use, it doesn't allocate anything.
+     * @throws NullPointerException If the character does not a custom compute logic
+     */
+    public final double compute(char c, double left, double right, int flags){
+        return config.compute(c, left, right, flags);
+    }
+
     private final static FunctionCompute defaultFuncCompute = (caller, inOperationOrder, a) -> 0;
 
     /**
@@ -1202,107 +1360,69 @@ public class Parser implements ParseCompute{
      * @throws IndexOutOfBoundsException If the selected function uses more arguments than what {@link Function#getParams()} holds
      */
     public final double computeFunction(Formula caller, boolean inOperationOrder, Function func){
-        return functions.getOrDefault(func.getId(), defaultFuncCompute).compute(caller, inOperationOrder, func.getParams());
-    }
-
-    public final double processEntity(Formula caller, FormulaEntity<?> entity, boolean inOperationOrder) {
-        if (entity instanceof StaticVariable)
-            return ((StaticVariable) entity).getValue();
-
-        else if (entity instanceof Formula) {
-            Formula formula = (Formula) entity;
-            return inOperationOrder ? formula.inOperationOrderResult() : formula.naiveResult();
+        //The snapshot the evaluation started with, see Formula#getConfig()
+        ParserConfig cfg = caller.getConfig();
+        FunctionCompute compute = func.getBoundCompute(cfg.version);
+        if(compute == null){
+            compute = cfg.functions.getOrDefault(func.getId(), defaultFuncCompute);
+            func.bindCompute(compute, cfg.version);
         }
 
-        else if (entity instanceof Function)
-            return computeFunction(caller, inOperationOrder, (Function) entity);
-
-        ReplaceableVariable replVar = (ReplaceableVariable) entity;
-        Formula base = caller.getRoot() == null ? caller : caller.getRoot();
-        double value = base.getVariableValues()[replVar.getIndex()];
-        return replVar.isNegative() ? -value : value;
+        if(compute instanceof EvaluatedFunction)
+            return ((EvaluatedFunction) compute).evaluate(caller, inOperationOrder, func);
+        return compute.compute(caller, inOperationOrder, func.getParams());
     }
 
-    private void rebuildPriorityIndex() {
-        int maxPrio = -1;
-        int distinct = 0;
-        for (int i = 0; i < limit; i++) {
-            if (opPresent[i]) {
-                int p = opPrio[i];
-                if (p > maxPrio) maxPrio = p;
-                distinct++;
-            }
-        }
-        if (maxPrio < 0) {
-            opIndexByPrio = new int[0];
-            opIndexMapSize = 1;
-            return;
-        }
-
-        int[] idx = new int[maxPrio + 1];
-        Arrays.fill(idx, -1);
-
-        int[] tmp = new int[distinct];
-        int t = 0;
-        for (int i = 0; i < limit; i++)
-            if (opPresent[i]) tmp[t++] = opPrio[i];
-
-        Arrays.sort(tmp);
-        int rank = 0;
-        for (int k = tmp.length - 1; k >= 0; k--) {
-            int p = tmp[k];
-            if (idx[p] == -1) idx[p] = rank++;
-        }
-        opIndexByPrio = idx;
-        opIndexMapSize = getIndexByPriority(0) + 1;
-    }
-
-    private boolean isValidVar(char c){
-        return !isComma(c) && !isDelimiter(c) && !isOperator(c);
+    /**
+     * Computes the value of an entity, see {@link FormulaEntity#evaluate(FormulaEntity, Formula, boolean)}
+     * @param caller The formula whose lists hold the entity
+     */
+    public final double processEntity(Formula caller, FormulaEntity<?> entity, boolean inOperationOrder) {
+        return FormulaEntity.evaluate(entity, caller, inOperationOrder);
     }
 
-    private ParsingState getState() {
-        ParsingState st = statePool.poll();
-        if (st == null) return new ParsingState(this);
-        st.inOperationOrder = new TempMap(opIndexMapSize);
+    private ParsingState getState(ParserConfig cfg) {
+        ParsingState st = STATE_POOL.get().poll();
+        if (st == null) st = new ParsingState(cfg);
+        st.begin(cfg);
         return st;
     }
 
-    private void recycleState(ParsingState state, Parser parser) {
-        state.finalFullReset(parser, false);
-        statePool.push(state);
+    private void recycleState(ParsingState state) {
+        state.release();
+        STATE_POOL.get().push(state);
     }
 
-    private void checkTaken(boolean[] arr, char c, String name) {
-        if (arr[c]) throw new UnsupportedOperationException("char " + c + " already in " + name);
+    private static void checkTaken(boolean taken, char c, String name) {
+        if (taken) throw new UnsupportedOperationException("char " + c + " already in " + name);
     }
 
-    private void checkFree(char c) {
-        checkTaken(commas, c, "commas");
-        checkTaken(delims, c, "delimiters");
+    private static void checkFree(ParserConfig cfg, char c) {
+        checkTaken(cfg.isComma(c), c, "commas");
+        checkTaken(cfg.isDelimiter(c), c, "delimiters");
     }
 
-    private void checkFreeComma(char c) {
-        checkTaken(opPresent, c, "operators");
-        checkTaken(delims, c, "delimiters");
+    private static void checkFreeComma(ParserConfig cfg, char c) {
+        checkTaken(cfg.isOperator(c), c, "operators");
+        checkTaken(cfg.isDelimiter(c), c, "delimiters");
     }
 
-    private void checkFreeDelim(char c) {
-        checkTaken(opPresent, c, "operators");
-        checkTaken(commas, c, "commas");
+    private static void checkFreeDelim(ParserConfig cfg, char c) {
+        checkTaken(cfg.isOperator(c), c, "operators");
+        checkTaken(cfg.isComma(c), c, "commas");
     }
 
-    private void addPreFuncInfo(ParsingState currentState, int index, char[] arr){
+    private void addPreFuncInfo(ParsingState currentState, int index, ParseInput formula){
         currentState.dump();
         currentState.lastEntityBeforeFunc = currentState.lastAddedEntity;
         currentState.lastOperationBeforeFunc = currentState.lastOperation;
         currentState.lastOperationPriorityBeforeFunc = currentState.lastOperationPriority;
 
 
-        if(index > 0 && isOperator(arr[index - 1]))
-            currentState.preFuncOp = arr[index - 1];
+        if(index > 0 && currentState.config.isOperator(formula.charAt(index - 1)))
+            currentState.preFuncOp = formula.charAt(index - 1);
         else
-            currentState.preFuncOp = betweenVariables;
+            currentState.preFuncOp = currentState.config.betweenVariables;
     }
 
     //Called when a parenthesis is closed to process the parcess information for the mini-formula or function, or gets called at the end of the parsing loop and there are unclosed states
@@ -0,0 +1,369 @@
+package gmail.vladimir.JLSP.Parser;
+
+import gmail.vladimir.JLSP.Helpers.NameSearcher;
+import gmail.vladimir.JLSP.Interfaces.FunctionCompute;
+import gmail.vladimir.JLSP.Interfaces.OperatorCompute;
+import gmail.vladimir.JLSP.Interfaces.ParseCompute;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of a parser's configuration: operators, commas, delimiters, functions and flags, see {@link Parser#getConfig()}.<br/><br/>
+ *
+ * Every change to a parser builds a new snapshot and publishes it in one step, the old one is never touched. A parse reads the snapshot once and uses it until it's done,
+ * and a formula picks up its parser's current snapshot when an evaluation starts, so neither of them can ever see half of a change, without any locking.<br/>
+ * A new snapshot only copies the tables that changed, the rest are shared with the previous one. The defaults are shared by every parser, see {@link DefaultRegistry}.
+ */
+public final class ParserConfig {
+
+    final int limit;
+
+    final CharClassTable table;
+    final int[] opIndexByPrio;
+    final int opIndexMapSize;
+
+    final HashMap<String, FunctionCompute> functions;
+    final HashMap<String, FunctionCompute> defaultFunctions;
+    final HashSet<String> pureFunctions;
+    final NameSearcher names;
+
+    final ParseCompute parseLogic;
+    final boolean skipEmptySpace;
+    final char defaultOperator;
+    final char betweenVariables;
+    final double defaultValueBetweenEmptyOperators;
+    final boolean foldConstants;
+
+    final int version;
+    //Computed the first time it's asked for, racing threads compute the same value
+    private int hash;
+
+    private ParserConfig(Editor edit, int version) {
+        this.limit = edit.table.limit;
+        this.table = edit.table;
+        this.opIndexByPrio = edit.opIndexByPrio;
+        this.opIndexMapSize = edit.opIndexMapSize;
+        this.functions = edit.functions;
+        this.defaultFunctions = edit.defaultFunctions;
+        this.pureFunctions = edit.pureFunctions;
+        this.names = edit.names;
+        this.parseLogic = edit.parseLogic;
+        this.skipEmptySpace = edit.skipEmptySpace;
+        this.defaultOperator = edit.defaultOperator;
+        this.betweenVariables = edit.betweenVariables;
+        this.defaultValueBetweenEmptyOperators = edit.defaultValueBetweenEmptyOperators;
+        this.foldConstants = edit.foldConstants;
+        this.version = version;
+    }
+
+    /**
+     * The default configuration for the given limit, the tables are the shared ones unless the limit differs from {@link DefaultRegistry#LIMIT}
+     * @throws ArrayIndexOutOfBoundsException If the limit is too low for the default operators
+     */
+    static ParserConfig defaults(int limit, int version) {
+        DefaultRegistry defaults = DefaultRegistry.INSTANCE;
+        Editor edit = new Editor();
+        edit.table = defaults.table;
+        edit.opIndexByPrio = defaults.opIndexByPrio;
+        edit.opIndexMapSize = defaults.opIndexMapSize;
+        edit.functions = defaults.functions;
+        edit.defaultFunctions = defaults.functions;
+        edit.pureFunctions = defaults.pureFunctions;
+        edit.names = defaults.names;
+        edit.skipEmptySpace = true;
+        edit.defaultOperator = '+';
+        edit.betweenVariables = '*';
+
+        if(limit != DefaultRegistry.LIMIT){
+            if(limit <= defaults.highestChar)
+                throw new ArrayIndexOutOfBoundsException("Index " + defaults.highestChar + " out of bounds for length " + limit);
+            edit.resize(limit);
+        }
+        return new ParserConfig(edit, version);
+    }
+
+    /**
+     * Starts the next snapshot from this one
+     */
+    Editor edit() {
+        return new Editor(this);
+    }
+
+    /**
+     * Returns the number that identifies this snapshot, see {@link Parser#getConfigVersion()}
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the limit of the operator, comma and delimiter table, chars from this value up can't be any of them.<br/>
+     * The table only holds the pages of 256 chars that are actually used, so a high limit costs next to nothing by itself
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    public boolean isOperator(char c) {
+        return table.is(c, CharClassTable.OPERATOR);
+    }
+
+    /**
+     * Returns the compute logic of the operator, or null if the char isn't one
+     */
+    public OperatorCompute getOperator(char c) {
+        return table.operator(c);
+    }
+
+    /**
+     * Returns the priority of the operator, see {@link Parser#getOperatorPriority(char)}
+     */
+    public int getOperatorPriority(char c) {
+        return CharClassTable.priority(table.classOf(c));
+    }
+
+    /**
+     * See {@link Parser#getIndexByPriority(int)}
+     */
+    public int getIndexByPriority(int priority) {
+        if (priority < 0 || priority >= opIndexByPrio.length) return -1;
+        return opIndexByPrio[priority];
+    }
+
+    public boolean isComma(char c) {
+        return table.is(c, CharClassTable.COMMA);
+    }
+
+    public boolean isDelimiter(char c) {
+        return table.is(c, CharClassTable.DELIMITER);
+    }
+
+    /**
+     * Returns the kind and priority of the char packed in one int, the parse loop asks this once per char instead of asking each question separately
+     * @throws ArrayIndexOutOfBoundsException If the char isn't below the limit
+     */
+    int classOf(char c) {
+        return table.classOf(c);
+    }
+
+    public boolean isFunction(String id) {
+        return functions.containsKey(id);
+    }
+
+    public FunctionCompute getFunction(String id) {
+        return functions.get(id);
+    }
+
+    /**
+     * See {@link Parser#isPureFunction(String)}
+     */
+    public boolean isPureFunction(String id) {
+        return pureFunctions.contains(id);
+    }
+
+    /**
+     * See {@link Parser#isDefaultFunction(String)}
+     */
+    public boolean isDefaultFunction(String id) {
+        FunctionCompute compute = functions.get(id);
+        return compute != null && compute == defaultFunctions.get(id);
+    }
+
+    /**
+     * Returns a copy of the functions of this snapshot
+     */
+    public Map<String, FunctionCompute> functionsClone() {
+        return new HashMap<>(functions);
+    }
+
+    public ParseCompute getParseLogic() {
+        return parseLogic;
+    }
+
+    public boolean shouldSkipEmptySpace() {
+        return skipEmptySpace;
+    }
+
+    public char getDefaultOperator() {
+        return defaultOperator;
+    }
+
+    public char getBetweenVariables() {
+        return betweenVariables;
+    }
+
+    public double getDefaultValueBetweenEmptyOperators() {
+        return defaultValueBetweenEmptyOperators;
+    }
+
+    public boolean shouldFoldConstants() {
+        return foldConstants;
+    }
+
+    /**
+     * Computes the two values with the operator of this snapshot, see {@link Parser#compute(char, double, double, int)}
+     * @throws NullPointerException If the char isn't an operator
+     */
+    public double compute(char c, double left, double right, int flags) {
+        OperatorCompute operator = table.operator(c);
+        if(operator == null)
+            throw new NullPointerException("Character " + c + " is not a valid operator but an operation tried to use it. This only happens if this character is set under a setting like defaultOperator or betweenVariables or something similar but the character was removed from the valid operator list. Please update your settings accordingly.");
+        return operator.apply(left, right, flags);
+    }
+
+    /**
+     * See {@link Parser#getConfigHash()}
+     */
+    public int getHash() {
+        int h = hash;
+        if(h != 0)
+            return h;
+
+        h = 0x811C9DC5;
+        for(int c = table.nextOperator(0); c != -1; c = table.nextOperator(c + 1)){
+            h = (h ^ c) * 0x01000193;
+            h = (h ^ CharClassTable.priority(table.classOf((char) c))) * 0x01000193;
+            h = (h ^ defaultOperatorIndex(table.operator((char) c))) * 0x01000193;
+        }
+        h = (h ^ defaultOperator) * 0x01000193;
+        h = (h ^ betweenVariables) * 0x01000193;
+
+        hash = h;
+        return h;
+    }
+
+    //Custom implementations can't be told apart between processes, they all count as 0
+    private static int defaultOperatorIndex(OperatorCompute op) {
+        if(op == DefaultOperators.POW) return 1;
+        if(op == DefaultOperators.MULTIPLY) return 2;
+        if(op == DefaultOperators.DIVIDE) return 3;
+        if(op == DefaultOperators.MODULO) return 4;
+        if(op == DefaultOperators.ADD) return 5;
+        if(op == DefaultOperators.SUBTRACT) return 6;
+        return 0;
+    }
+
+    /**
+     * The mutable draft of the next snapshot. The char table and the functions start out shared with the snapshot it was made from and are copied the first time they're changed,
+     * the char table only down to the pages that change
+     */
+    static final class Editor {
+
+        CharClassTable table;
+        int[] opIndexByPrio;
+        int opIndexMapSize;
+        HashMap<String, FunctionCompute> functions;
+        HashMap<String, FunctionCompute> defaultFunctions;
+        HashSet<String> pureFunctions;
+        NameSearcher names;
+        ParseCompute parseLogic;
+        boolean skipEmptySpace;
+        char defaultOperator;
+        char betweenVariables;
+        double defaultValueBetweenEmptyOperators;
+        boolean foldConstants;
+
+        private boolean ownTable, ownFunctions, operatorsChanged;
+
+        private Editor() {}
+
+        private Editor(ParserConfig config) {
+            this.table = config.table;
+            this.opIndexByPrio = config.opIndexByPrio;
+            this.opIndexMapSize = config.opIndexMapSize;
+            this.functions = config.functions;
+            this.defaultFunctions = config.defaultFunctions;
+            this.pureFunctions = config.pureFunctions;
+            this.names = config.names;
+            this.parseLogic = config.parseLogic;
+            this.skipEmptySpace = config.skipEmptySpace;
+            this.defaultOperator = config.defaultOperator;
+            this.betweenVariables = config.betweenVariables;
+            this.defaultValueBetweenEmptyOperators = config.defaultValueBetweenEmptyOperators;
+            this.foldConstants = config.foldConstants;
+        }
+
+        void setOperator(char c, OperatorCompute compute, int priority) {
+            ownTable();
+            table.setOperator(c, compute, priority);
+            operatorsChanged = true;
+        }
+
+        void removeOperator(char c) {
+            ownTable();
+            table.removeOperator(c);
+            operatorsChanged = true;
+        }
+
+        void setOperatorPriority(char c, int priority) {
+            ownTable();
+            table.setPriority(c, priority);
+            operatorsChanged = true;
+        }
+
+        void setComma(char c, boolean comma) {
+            ownTable();
+            table.setKind(c, CharClassTable.COMMA, comma);
+        }
+
+        void setDelimiter(char c, boolean delimiter) {
+            ownTable();
+            table.setKind(c, CharClassTable.DELIMITER, delimiter);
+        }
+
+        //The chars below the smaller of the two limits are kept
+        void resize(int newLimit) {
+            table = new CharClassTable(table, newLimit);
+            ownTable = true;
+            operatorsChanged = true;
+        }
+
+        void putFunction(String id, FunctionCompute compute, boolean pure) {
+            ownFunctions();
+            if(functions.put(id, compute) == null)
+                names.addName(id);
+
+            if(pure)
+                pureFunctions.add(id);
+            else
+                pureFunctions.remove(id);
+        }
+
+        void removeFunction(String id) {
+            ownFunctions();
+            functions.remove(id);
+            pureFunctions.remove(id);
+            names.removeName(id);
+        }
+
+        ParserConfig build(int version) {
+            if(operatorsChanged){
+                opIndexByPrio = table.priorityIndex();
+                opIndexMapSize = opIndexByPrio.length > 0 ? opIndexByPrio[0] + 1 : 1;
+            }
+            return new ParserConfig(this, version);
+        }
+
+        private void ownTable() {
+            if(ownTable)
+                return;
+
+            table = new CharClassTable(table, table.limit);
+            ownTable = true;
+        }
+
+        private void ownFunctions() {
+            if(ownFunctions)
+                return;
+
+            functions = new HashMap<>(functions);
+            pureFunctions = new HashSet<>(pureFunctions);
+            names = new NameSearcher(names);
+            ownFunctions = true;
+        }
+
+    }
+
+}
@@ -1,17 +1,28 @@
 package gmail.vladimir.JLSP.Parser;
 
+import gmail.vladimir.JLSP.Interfaces.FlaggedOperatorCompute;
+import gmail.vladimir.JLSP.Interfaces.Function1;
+import gmail.vladimir.JLSP.Interfaces.Function2;
+import gmail.vladimir.JLSP.Interfaces.Function3;
 import gmail.vladimir.JLSP.Interfaces.FunctionCompute;
+import gmail.vladimir.JLSP.Interfaces.FunctionN;
 import gmail.vladimir.JLSP.Interfaces.OperatorCompute;
 import gmail.vladimir.JLSP.Interfaces.ParseCompute;
 import gmail.vladimir.JLSP.Pairs.OldOperatorPair;
 import gmail.vladimir.JLSP.Variables.Formula;
 
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.DoubleBinaryOperator;
+
 /**
- * A class that has a global {@link Parser} instance, which wraps default operations, ready for easy use
+ * A class that has a global {@link Parser} instance, which wraps default operations, ready for easy use<br/>
+ * Parsing from multiple threads is safe, see {@link Parser}. Replacing the instance is seen by every thread right away.
  */
 public class ParserStatic {
 
-    private static Parser INSTANCE;
+    private static volatile Parser INSTANCE;
 
     /**
      * Re-creates the global default static Parser instance object
@@ -68,6 +79,20 @@ public class ParserStatic {
         return INSTANCE.addOperator(c, compute, priority);
     }
 
+    /**
+     * See {@link Parser#addBinaryOperator(char, DoubleBinaryOperator, int)}
+     */
+    public static OldOperatorPair addBinaryOperator(char c, DoubleBinaryOperator compute, int priority) {
+        return INSTANCE.addBinaryOperator(c, compute, priority);
+    }
+
+    /**
+     * See {@link Parser#addFlaggedOperator(char, FlaggedOperatorCompute, int)}
+     */
+    public static OldOperatorPair addFlaggedOperator(char c, FlaggedOperatorCompute compute, int priority) {
+        return INSTANCE.addFlaggedOperator(c, compute, priority);
+    }
+
     /**
      * See {@link Parser#changeOperatorPriority(char, int)} 
      */
@@ -215,6 +240,34 @@ public class ParserStatic {
         return INSTANCE.addFunction(id, compute);
     }
 
+    /**
+     * See {@link Parser#addFunction1(String, Function1)}
+     */
+    public static FunctionCompute addFunction1(String id, Function1 compute){
+        return INSTANCE.addFunction1(id, compute);
+    }
+
+    /**
+     * See {@link Parser#addFunction2(String, Function2)}
+     */
+    public static FunctionCompute addFunction2(String id, Function2 compute){
+        return INSTANCE.addFunction2(id, compute);
+    }
+
+    /**
+     * See {@link Parser#addFunction3(String, Function3)}
+     */
+    public static FunctionCompute addFunction3(String id, Function3 compute){
+        return INSTANCE.addFunction3(id, compute);
+    }
+
+    /**
+     * See {@link Parser#addFunctionN(String, FunctionN)}
+     */
+    public static FunctionCompute addFunctionN(String id, FunctionN compute){
+        return INSTANCE.addFunctionN(id, compute);
+    }
+
     /**
      * See {@link Parser#isFunction(String)} 
      */
@@ -243,6 +296,34 @@ public class ParserStatic {
         return INSTANCE.parse(formula);
     }
 
+    /**
+     * See {@link Parser#parse(CharSequence)}
+     */
+    public static Formula parse(CharSequence formula){
+        return INSTANCE.parse(formula);
+    }
+
+    /**
+     * See {@link Parser#parse(char[], int, int)}
+     */
+    public static Formula parse(char[] buf, int off, int len){
+        return INSTANCE.parse(buf, off, len);
+    }
+
+    /**
+     * See {@link Parser#parse(ByteBuffer)}
+     */
+    public static Formula parse(ByteBuffer asciiBuf){
+        return INSTANCE.parse(asciiBuf);
+    }
+
+    /**
+     * See {@link Parser#parseAll(List, Executor)}
+     */
+    public static ParseResults parseAll(List<? extends CharSequence> formulas, Executor executor){
+        return INSTANCE.parseAll(formulas, executor);
+    }
+
     /**
      * See {@link Parser#parseNoFunctions(String)}
      */
@@ -257,4 +338,11 @@ public class ParserStatic {
         return INSTANCE.parseFormula(formula, acceptNull, hasFunctions);
     }
 
+    /**
+     * See {@link Parser#parseFormula(CharSequence, boolean, boolean)}
+     */
+    public static Formula parseFormula(CharSequence formula, boolean acceptNull, boolean hasFunctions) {
+        return INSTANCE.parseFormula(formula, acceptNull, hasFunctions);
+    }
+
 }
\ No newline at end of file
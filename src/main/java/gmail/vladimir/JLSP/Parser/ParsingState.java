@@ -1,5 +1,6 @@
 package gmail.vladimir.JLSP.Parser;
 
+import gmail.vladimir.JLSP.Helpers.NameSearcher;
 import gmail.vladimir.JLSP.Helpers.TempList;
 import gmail.vladimir.JLSP.Helpers.TempMap;
 import gmail.vladimir.JLSP.Interfaces.FunctionCompute;
@@ -11,7 +12,8 @@ import gmail.vladimir.JLSP.Variables.FormulaEntity;
 public class ParsingState {
     TempList inOrder = new TempList();
     TempMap inOperationOrder;
-    Double currentValue;
+    double currentValue;
+    boolean hasValue;
     Character currentOperation;
     char parenthesesOperation;
     boolean isNegative;
@@ -22,6 +24,7 @@ public class ParsingState {
     FormulaEntity<?> lastAddedEntity = null;
     boolean started = false;
     StringBuilder funcString = new StringBuilder(16);
+    int funcState = NameSearcher.ROOT;
     Character preFuncOp = null;
     TempList funVars = new TempList();
     FunctionCompute func = null;
@@ -29,11 +32,25 @@ public class ParsingState {
     FormulaEntity<?> lastEntityBeforeFunc = null;
     Character lastOperationBeforeFunc;
     int lastOperationPriorityBeforeFunc = 0;
+    //The configuration of the parse this state is part of
+    ParserConfig config;
 
-    public ParsingState(Parser parser){finalFullReset(parser, true);}
+    public ParsingState(Parser parser){this(parser.getConfig());}
+
+    ParsingState(ParserConfig config){finalFullReset(config, true);}
+
+    //Called when a parse takes the state, the configuration may have changed since it was reset. The cleared map is kept unless the operator priorities need another size
+    void begin(ParserConfig config){
+        this.config = config;
+        lastOperation = config.defaultOperator;
+        parenthesesOperation = config.betweenVariables;
+        if(inOperationOrder == null || inOperationOrder.capacity() != config.opIndexMapSize)
+            inOperationOrder = new TempMap(config.opIndexMapSize);
+    }
 
     void reset(){
-        currentValue = null;
+        currentValue = 0D;
+        hasValue = false;
         currentOperation = null;
         isNegative = false;
         hasDecimalPoint = false;
@@ -41,18 +58,20 @@ public class ParsingState {
         started = false;
     }
 
-    private void fullReset(Parser parser){
+    private void fullReset(){
         reset();
-        lastOperation = parser.getDefaultOperator();
+        lastOperation = config.defaultOperator;
         lastAddedEntity = null;
     }
 
-    void finalFullReset(Parser parser, boolean newMap){
-        fullReset(parser);
+    void finalFullReset(ParserConfig config, boolean newMap){
+        this.config = config;
+        fullReset();
         inOrder.clear();
-        parenthesesOperation = parser.getBetweenVariables();
+        parenthesesOperation = config.betweenVariables;
         lastOperationPriority = 0;
         funcString.setLength(0);
+        funcState = NameSearcher.ROOT;
         preFuncOp = null;
         funVars.clear();
         func = null;
@@ -62,7 +81,15 @@ public class ParsingState {
         lastOperationPriorityBeforeFunc = 0;
 
         if(newMap)
-           inOperationOrder = new TempMap(parser.opIndexMapSize);
+           inOperationOrder = new TempMap(config.opIndexMapSize);
+        else if(inOperationOrder != null)
+           inOperationOrder.clear();
+    }
+
+    //Called before the state goes back to the pool, nothing of the last parse (or the parser it came from) is kept, begin gives it the configuration of the next one
+    void release(){
+        finalFullReset(config, false);
+        config = null;
     }
 
     void dump(){
@@ -72,6 +99,7 @@ public class ParsingState {
 
     void resetFunc(){
         funcString.setLength(0);
+        funcState = NameSearcher.ROOT;
         preFuncOp = null;
         if(!isFunc)
             funVars.clear();
@@ -89,6 +117,6 @@ public class ParsingState {
         inOrder.clear();
 
         inOperationOrder.clear();
-        fullReset(parser);
+        fullReset();
     }
 }
@@ -0,0 +1,29 @@
+package gmail.vladimir.JLSP.Parser;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Holds the virtual thread executor of Java 21 and newer, see {@link Parser#virtualThreadExecutor()}.<br/>
+ * It's looked up through reflection the first time it's asked for, so the library can still be built for and run on Java 8.
+ */
+final class VirtualThreads {
+
+    /**
+     * One task per virtual thread, or null if the JVM doesn't have them
+     */
+    static final Executor EXECUTOR = create();
+
+    private VirtualThreads() {}
+
+    private static Executor create() {
+        try {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        //Missing before Java 19, and Java 19 and 20 throw unless preview features are enabled
+        catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package gmail.vladimir.JLSP.Variables;
+
+import gmail.vladimir.JLSP.Interfaces.OperatorCompute;
+import gmail.vladimir.JLSP.Parser.DefaultOperators;
+import gmail.vladimir.JLSP.Parser.ParserConfig;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Replaces nested formulas and functions that don't depend on any replaceable variable with a single {@link StaticVariable}, see {@link Formula#foldConstants()}.<br/><br/>
+ *
+ * The in order list is only used by naive computing, while the operation order lists are only used by in operation order computing,
+ * so each list receives the value computed in its own mode and both modes keep returning the exact same results.<br/>
+ * A nested formula also changes how the next operator gets called (the '^' sign handling), so it's only replaced when the next operator is one of the default ones that ignores that.
+ * Functions don't have that problem. Their params are used by both modes, so a param is only replaced when both modes agree on its value.<br/>
+ * Anything that throws while being computed is left as it is, so it keeps throwing when the formula is computed.
+ */
+final class ConstantFolder {
+
+    private final ParserConfig config;
+    private final Map<FormulaEntity<?>, Boolean> constant = new IdentityHashMap<>();
+    private final Map<FormulaEntity<?>, Boolean> visited = new IdentityHashMap<>();
+
+    ConstantFolder(ParserConfig config) {
+        this.config = config;
+    }
+
+    void fold(Formula formula) {
+        if (visited.put(formula, Boolean.TRUE) != null)
+            return;
+
+        FormulaEntity<?>[] inOrder = formula.getInOrder();
+        FormulaEntity<?>[] inOperationOrder = formula.getInOperationOrder();
+        FormulaEntity<?>[] lowestPriority = formula.getLowestPriority();
+
+        foldChildren(formula, inOrder);
+        foldChildren(formula, inOperationOrder);
+        foldChildren(formula, lowestPriority);
+
+        foldList(formula, inOrder, false);
+        foldList(formula, inOperationOrder, true);
+        foldList(formula, lowestPriority, true);
+    }
+
+    private void foldChildren(Formula owner, FormulaEntity<?>[] list) {
+        for (FormulaEntity<?> entity : list) {
+            if (entity instanceof Formula)
+                fold((Formula) entity);
+            else if (entity instanceof Function)
+                foldParams(owner, (Function) entity);
+        }
+    }
+
+    private void foldParams(Formula owner, Function function) {
+        if (visited.put(function, Boolean.TRUE) != null)
+            return;
+
+        FormulaEntity<?>[] params = function.getParams();
+        foldChildren(owner, params);
+
+        for (int i = 0; i < params.length; i++) {
+            FormulaEntity<?> param = params[i];
+            if (param instanceof StaticVariable || !isConstant(param))
+                continue;
+
+            Double naive = compute(owner, param, false);
+            Double inOperationOrder = compute(owner, param, true);
+            if (naive != null && inOperationOrder != null && Double.doubleToRawLongBits(naive) == Double.doubleToRawLongBits(inOperationOrder))
+                params[i] = new StaticVariable(naive, param.getPrecedentSymbol());
+        }
+    }
+
+    private void foldList(Formula owner, FormulaEntity<?>[] list, boolean inOperationOrder) {
+        for (int i = 0; i < list.length; i++) {
+            FormulaEntity<?> entity = list[i];
+            if (!(entity instanceof Formula || entity instanceof Function) || !isConstant(entity))
+                continue;
+
+            if (entity instanceof Formula && i + 1 < list.length && !ignoresFlags(list[i + 1].getPrecedentSymbol()))
+                continue;
+
+            Double value = compute(owner, entity, inOperationOrder);
+            if (value != null)
+                list[i] = new StaticVariable(value, entity.getPrecedentSymbol());
+        }
+    }
+
+    private Double compute(Formula caller, FormulaEntity<?> entity, boolean inOperationOrder) {
+        try {
+            return FormulaEntity.evaluate(entity, caller, inOperationOrder);
+        }
+        catch (RuntimeException ex) {
+            return null;
+        }
+    }
+
+    private boolean ignoresFlags(char c) {
+        OperatorCompute op = config.getOperator(c);
+        return op == DefaultOperators.ADD || op == DefaultOperators.SUBTRACT || op == DefaultOperators.MULTIPLY
+                || op == DefaultOperators.DIVIDE || op == DefaultOperators.MODULO;
+    }
+
+    private boolean isConstant(FormulaEntity<?> entity) {
+        if (entity instanceof StaticVariable)
+            return true;
+        if (entity instanceof ReplaceableVariable)
+            return false;
+
+        Boolean known = constant.get(entity);
+        if (known != null)
+            return known;
+
+        boolean result;
+        if (entity instanceof Function) {
+            Function function = (Function) entity;
+            result = config.isPureFunction(function.getId()) && allConstant(function.getParams());
+        }
+        else {
+            Formula formula = (Formula) entity;
+            result = allConstant(formula.getInOrder()) && allConstant(formula.getInOperationOrder()) && allConstant(formula.getLowestPriority());
+        }
+
+        constant.put(entity, result);
+        return result;
+    }
+
+    private boolean allConstant(FormulaEntity<?>[] list) {
+        for (FormulaEntity<?> entity : list)
+            if (!isConstant(entity))
+                return false;
+        return true;
+    }
+
+}
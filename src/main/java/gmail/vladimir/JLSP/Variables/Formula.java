@@ -1,12 +1,23 @@
 package gmail.vladimir.JLSP.Variables;
 
-import gmail.vladimir.JLSP.Helpers.TempList;
+import gmail.vladimir.JLSP.Compiler.CompiledFormula;
+import gmail.vladimir.JLSP.Compiler.EvalContext;
+import gmail.vladimir.JLSP.Interfaces.FunctionCompute;
 import gmail.vladimir.JLSP.Interfaces.NeedsRoot;
 import gmail.vladimir.JLSP.Pairs.ResultPair;
 import gmail.vladimir.JLSP.Parser.Parser;
+import gmail.vladimir.JLSP.Parser.ParserConfig;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import static gmail.vladimir.JLSP.Interfaces.FlaggedOperatorCompute.*;
 
 /**
  * The main holder of all variables(formula entities).<br/>
@@ -19,16 +30,39 @@ public class Formula extends FormulaEntity<Double> implements NeedsRoot {
     private final int inOperationOrderSize;
     private final int lowestPrioritySize;
 
+    //Results of the priority 0 segments of the operation order, reused by every computation
+    private final double[] segments;
+
     private final char[] variableNames;
     private final double[] variableValues;
     private final boolean[] variableSet;
-    private final HashMap<Character, Integer> variableIndex;
+    //The slot of every variable name, indexed by the char minus the lowest name, -1 for the chars in between that aren't variables.
+    //When the names are spread too far apart for that, it's an open addressing table keyed by the names in hashedVariableNames instead, at most half full, see Formula#slotOf(char)
+    private final int[] variableSlots;
+    private final char lowestVariableName;
+    private final char[] hashedVariableNames;
 
+    //Widest range of names, per variable, that still gets a direct index
+    private static final int DIRECT_SLOTS_PER_VARIABLE = 4, MIN_DIRECT_SLOTS = 64;
+
+    //How many variables have been given a value, all of them once it reaches the number of variables
+    private int setVariableCount;
     private boolean addedVariables;
     private double lastNaiveCachedResult = 0, lastInOrderCachedResult = 0;
     private boolean haveVariablesChangedNaive = true, haveVariablesChangedInOrder = true;
 
     private final Parser parser;
+    //The snapshot of the parser's configuration the root computes with, picked up again when an evaluation starts and the parser has changed
+    private ParserConfig config;
+    private volatile CompiledFormula compiled;
+
+    //Incremental computing, see Formula#getDependencies()
+    private BitSet dependencies = new BitSet();
+    private boolean cacheable = false;
+    private FormulaEntity<?>[] nodes = new FormulaEntity<?>[0];
+    private FormulaEntity<?>[][] dependents = new FormulaEntity<?>[0][];
+    private int trackedConfigVersion = -1;
+    private long recomputedNodes = 0, reusedNodes = 0;
 
     /**
      * Used for creating new Formula instances
@@ -41,10 +75,16 @@ public class Formula extends FormulaEntity<Double> implements NeedsRoot {
      * Main constructor
      */
     public Formula(FormulaEntity<?>[] inOrder, int inOrderSize, FormulaEntity<?>[] inOperationOrder, int inOperationOrderSize, FormulaEntity<?>[] lowestPriority, int lowestPrioritySize, LinkedHashMap<Character, Double> replacedVariables, Parser parser) {
-        super(0D, parser.getDefaultOperator());
+        this(parser, parser.getConfig(), inOrder, inOrderSize, inOperationOrder, inOperationOrderSize, lowestPriority, lowestPrioritySize, replacedVariables);
+    }
+
+    private Formula(Parser parser, ParserConfig config, FormulaEntity<?>[] inOrder, int inOrderSize, FormulaEntity<?>[] inOperationOrder, int inOperationOrderSize, FormulaEntity<?>[] lowestPriority, int lowestPrioritySize, LinkedHashMap<Character, Double> replacedVariables) {
+        super(config.getDefaultOperator(), FORMULA);
         this.parser = parser;
+        this.config = config;
         this.inOrder = Arrays.copyOf(inOrder, inOrderSize);
         this.inOperationOrder = Arrays.copyOf(inOperationOrder, inOperationOrderSize);
+        this.segments = new double[inOperationOrderSize];
         this.lowestPriority = Arrays.copyOf(lowestPriority, lowestPrioritySize);
         this.inOrderSize = inOrderSize;
         this.inOperationOrderSize = inOperationOrderSize;
@@ -54,41 +94,128 @@ public class Formula extends FormulaEntity<Double> implements NeedsRoot {
         for (int i = 0; i < inOrderSize; i++) {
             FormulaEntity<?> fe = inOrder[i];
             if (fe instanceof ReplaceableVariable)
-                vars.add(((ReplaceableVariable) fe).getValue());
+                vars.add(((ReplaceableVariable) fe).charValue());
             else if (fe instanceof NeedsRoot)
                 ((NeedsRoot) fe).setRoot(this, vars);
         }
 
+        //Grouped pow formulas (2^3^2 -> 2^(3^2)) only exist in the operation order list
+        for (int i = 0; i < inOperationOrderSize; i++) {
+            FormulaEntity<?> fe = inOperationOrder[i];
+            if (fe instanceof NeedsRoot)
+                ((NeedsRoot) fe).setRoot(this, vars);
+        }
+
         int nVars = vars.size();
         this.variableNames = new char[nVars];
         this.variableValues = new double[nVars];
-        this.variableIndex = new HashMap<>(nVars);
         this.variableSet = new boolean[nVars];
 
         int idx = 0;
+        char lowest = Character.MAX_VALUE, highest = 0;
         boolean mapNull = replacedVariables == null;
         for (Character c : vars) {
             variableNames[idx] = c;
             variableValues[idx] = (!mapNull && replacedVariables.getOrDefault(c, null) != null) ? replacedVariables.get(c) : 0;
-            variableIndex.put(c, idx);
-            variableSet[idx++] = !mapNull && replacedVariables.getOrDefault(c, null) != null;
+            variableSet[idx] = !mapNull && replacedVariables.getOrDefault(c, null) != null;
+            if (variableSet[idx++])
+                setVariableCount++;
+            lowest = (char) Math.min(lowest, c);
+            highest = (char) Math.max(highest, c);
         }
 
-        assignVariableIndices(inOrder, inOrderSize);
+        this.lowestVariableName = nVars == 0 ? 0 : lowest;
+        int range = nVars == 0 ? 0 : highest - lowest + 1;
+        if (range <= Math.max(MIN_DIRECT_SLOTS, nVars * DIRECT_SLOTS_PER_VARIABLE)) {
+            this.hashedVariableNames = null;
+            this.variableSlots = new int[range];
+            Arrays.fill(variableSlots, -1);
+            for (int i = 0; i < nVars; i++)
+                variableSlots[variableNames[i] - lowestVariableName] = i;
+        }
+        else {
+            int capacity = Integer.highestOneBit(nVars) << 2;
+            this.hashedVariableNames = new char[capacity];
+            this.variableSlots = new int[capacity];
+            Arrays.fill(variableSlots, -1);
+            for (int i = 0; i < nVars; i++) {
+                int h = hashVariableName(variableNames[i]) & (capacity - 1);
+                while (variableSlots[h] != -1)
+                    h = (h + 1) & (capacity - 1);
+                hashedVariableNames[h] = variableNames[i];
+                variableSlots[h] = i;
+            }
+        }
 
-        this.addedVariables = isValid();
+        Map<FormulaEntity<?>, BitSet> visited = new IdentityHashMap<>();
+        List<FormulaEntity<?>> nodes = new ArrayList<>();
+        this.dependencies = assignVariableIndices(this.inOrder, inOrderSize, visited, nodes);
+        this.dependencies.or(assignVariableIndices(this.inOperationOrder, inOperationOrderSize, visited, nodes));
+        this.nodes = nodes.toArray(new FormulaEntity<?>[0]);
+        this.dependents = buildDependents(this.nodes, nVars);
+
+        this.addedVariables = setVariableCount == nVars;
         this.root = null;
     }
 
-    private void assignVariableIndices(FormulaEntity<?>[] list, int size) {
+    /**
+     * Nested formulas and function params read their values from the root, so they need the root's indices as well.<br/>
+     * Also records which variables each nested formula and function depends on, the nodes are added children first.
+     * @return The variables the entities in the list depend on
+     */
+    private BitSet assignVariableIndices(FormulaEntity<?>[] list, int size, Map<FormulaEntity<?>, BitSet> visited, List<FormulaEntity<?>> nodes) {
+        BitSet result = new BitSet();
         for (int i = 0; i < size; i++) {
             FormulaEntity<?> fe = list[i];
             if (fe instanceof ReplaceableVariable) {
                 ReplaceableVariable rv = (ReplaceableVariable) fe;
-                Integer idx = variableIndex.get(rv.getValue());
-                if (idx != null) rv.setIndex(idx.shortValue());
+                int slot = slotOf(rv.charValue());
+                if (slot != -1) {
+                    rv.setIndex((short) slot);
+                    result.set(slot);
+                }
+                continue;
+            }
+            if (!(fe instanceof Formula) && !(fe instanceof Function))
+                continue;
+
+            BitSet deps = visited.get(fe);
+            if (deps == null) {
+                if (fe instanceof Formula) {
+                    Formula f = (Formula) fe;
+                    deps = assignVariableIndices(f.inOrder, f.inOrderSize, visited, nodes);
+                    deps.or(assignVariableIndices(f.inOperationOrder, f.inOperationOrderSize, visited, nodes));
+                    f.dependencies = deps;
+                }
+                else {
+                    FormulaEntity<?>[] params = ((Function) fe).getParams();
+                    deps = assignVariableIndices(params, params.length, visited, nodes);
+                    ((Function) fe).setDependencies(deps);
+                }
+                visited.put(fe, deps);
+                nodes.add(fe);
             }
+            result.or(deps);
+        }
+        return result;
+    }
+
+    //For every variable, the nested formulas and functions that have to be computed again once it changes
+    private static FormulaEntity<?>[][] buildDependents(FormulaEntity<?>[] nodes, int nVars) {
+        List<List<FormulaEntity<?>>> lists = new ArrayList<>(nVars);
+        for (int i = 0; i < nVars; i++)
+            lists.add(new ArrayList<>());
+
+        for (FormulaEntity<?> node : nodes) {
+            BitSet deps = node instanceof Formula ? ((Formula) node).dependencies : ((Function) node).getDependencies();
+            for (int i = deps.nextSetBit(0); i >= 0; i = deps.nextSetBit(i + 1))
+                lists.get(i).add(node);
         }
+
+        FormulaEntity<?>[][] result = new FormulaEntity<?>[nVars][];
+        for (int i = 0; i < nVars; i++)
+            result[i] = lists.get(i).toArray(new FormulaEntity<?>[0]);
+        return result;
     }
 
     private Formula root = null;
@@ -97,10 +224,12 @@ public class Formula extends FormulaEntity<Double> implements NeedsRoot {
      * Used when this instance gets used as a variable
      */
     public Formula(char last, FormulaEntity<?>[] inOrder, int inOrderSize, FormulaEntity<?>[] inOperationOrder, int inOperationOrderSize, FormulaEntity<?>[] lowestPriority, int lowestPrioritySize, Parser parser){
-        super(0D, last);
+        super(last, FORMULA);
         this.parser = parser;
+        this.config = parser.getConfig();
         this.inOrder = Arrays.copyOf(inOrder, inOrderSize);
         this.inOperationOrder = Arrays.copyOf(inOperationOrder, inOperationOrderSize);
+        this.segments = new double[inOperationOrderSize];
         this.lowestPriority = Arrays.copyOf(lowestPriority, lowestPrioritySize);
         this.inOrderSize = inOrderSize;
         this.inOperationOrderSize = inOperationOrderSize;
@@ -108,7 +237,9 @@ public class Formula extends FormulaEntity<Double> implements NeedsRoot {
         this.variableNames = new char[0];
         this.variableValues = new double[0];
         this.variableSet = new boolean[0];
-        this.variableIndex = new HashMap<>();
+        this.variableSlots = new int[0];
+        this.lowestVariableName = 0;
+        this.hashedVariableNames = null;
         this.addedVariables = true;
     }
 
@@ -116,6 +247,10 @@ public class Formula extends FormulaEntity<Double> implements NeedsRoot {
      * Recursively sets the child formula a reference to the root formula
      */
     public void setRoot(Formula root, Set<Character> vars){
+        //Already reached through another list of the same root
+        if(this.root == root)
+            return;
+
         this.root = root;
 
         if(inOrderSize == 0)
@@ -126,7 +261,13 @@ public class Formula extends FormulaEntity<Double> implements NeedsRoot {
             if (entity instanceof NeedsRoot)
                 ((NeedsRoot)entity).setRoot(root, vars);
             else if (entity instanceof ReplaceableVariable)
-                vars.add(((ReplaceableVariable)entity).getValue());
+                vars.add(((ReplaceableVariable)entity).charValue());
+        }
+
+        for (int i = 0; i < inOperationOrderSize; i++) {
+            FormulaEntity<?> entity = inOperationOrder[i];
+            if (entity instanceof NeedsRoot)
+                ((NeedsRoot)entity).setRoot(root, vars);
         }
     }
 
@@ -151,6 +292,29 @@ public class Formula extends FormulaEntity<Double> implements NeedsRoot {
         return inOrder;
     }
 
+    public FormulaEntity<?>[] getInOperationOrder() {
+        return inOperationOrder;
+    }
+
+    public FormulaEntity<?>[] getLowestPriority() {
+        return lowestPriority;
+    }
+
+    /**
+     * Returns the parser this formula was created by
+     */
+    public Parser getParser() {
+        return parser;
+    }
+
+    /**
+     * Returns the snapshot of the parser's configuration this formula computes with, nested formulas use their root's.<br/>
+     * The root picks up the parser's current snapshot whenever an evaluation starts, so every operator and function of one evaluation comes from the same snapshot, even if the parser is changed by another thread meanwhile
+     */
+    public ParserConfig getConfig() {
+        return root != null ? root.config : config;
+    }
+
     public Set<Character> getVariables(){
         int size = variableNames.length;
         Set<Character> vars = new LinkedHashSet<>(size + 4, 1f);
@@ -166,6 +330,29 @@ public class Formula extends FormulaEntity<Double> implements NeedsRoot {
         return variableNames.length;
     }
 
+    /**
+     * Returns the slot of the variable bound to the char, its position in {@link Formula#getVariables()}, or -1 if the formula has no such variable.<br/>
+     * Look the slots up once and bind with {@link Formula#setVariable(int, double)} or {@link EvalContext#setVariable(int, double)}, so binding costs the same no matter how many variables the formula has.
+     */
+    public int slotOf(char c){
+        if (hashedVariableNames != null) {
+            int mask = variableSlots.length - 1;
+            for (int i = hashVariableName(c) & mask; ; i = (i + 1) & mask) {
+                int slot = variableSlots[i];
+                if (slot == -1 || hashedVariableNames[i] == c)
+                    return slot;
+            }
+        }
+
+        int i = c - lowestVariableName;
+        return i >= 0 && i < variableSlots.length ? variableSlots[i] : -1;
+    }
+
+    private static int hashVariableName(char c) {
+        int h = c * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
     /**
      * Sets the value for certain replaceable variables. The values are stored in the order they first appear<br/>
      * So, x+1+y*x, would be stored as {x, y}, meaning the first value in variables will be bound to x and the second to y<br/>
@@ -175,12 +362,25 @@ public class Formula extends FormulaEntity<Double> implements NeedsRoot {
         int size = getRequiredVariables();
         if(variables.length < size)
             throw new IllegalArgumentException("The number of variables must be the same as the number of variables in the formula");
-        for (int i = 0; i < size; ++i){
-            variableValues[i] = variables[i];
-            variableSet[i] = true;
-        }
+        for (int i = 0; i < size; ++i)
+            bind(i, variables[i]);
         addedVariables = true;
-        resetCache();
+        resetOwnCache();
+        return this;
+    }
+
+    /**
+     * Sets the value of the variable in the given slot, see {@link Formula#slotOf(char)}
+     *
+     * @return The same object for easy access to chain other similar methods, or easy access to the result functions
+     * @throws IndexOutOfBoundsException If the formula has no variable in that slot
+     */
+    public Formula setVariable(int slot, double value) {
+        if(slot < 0 || slot >= variableValues.length)
+            throw new IndexOutOfBoundsException("Slot " + slot + " out of range for " + variableValues.length + " variables");
+
+        bind(slot, value);
+        resetOwnCache();
         return this;
     }
 
@@ -200,35 +400,43 @@ public class Formula extends FormulaEntity<Double> implements NeedsRoot {
      * @param log If true, it'll send log a message whether the character does not exist, or if the formula is ready to be used after this character has been added, or if it's still missing values
      */
     public Formula setVariable(char c, double value, boolean log){
-        Integer idx = variableIndex.get(c);
-        if(idx == null){
+        int slot = slotOf(c);
+        if(slot == -1){
             if(log)
                 System.out.println("Variables " + c + " does not exist in the formula");
             return this;
         }
-        variableValues[idx] = value;
-        variableSet[idx] = true;
-        boolean valid = isValid();
-        if(valid)
-            addedVariables = true;
+        bind(slot, value);
 
         if(log) {
-            if(!valid)
+            if(!addedVariables)
                 System.out.println("Formula still missing variables");
             else
                 System.out.println("Formula has all necessary variables");
         }
 
-        resetCache();
+        resetOwnCache();
         return this;
     }
 
-    private boolean isValid() {
-        for (int i = 0; i < variableSet.length; i++)
-            if (!variableSet[i])
-                return false;
+    /**
+     * Returns whether every replaceable variable has been given a value
+     */
+    public boolean hasAllVariables() {
+        return addedVariables;
+    }
 
-        return true;
+    //Only the nested formulas and functions that read the variable are computed again, and only if its value actually changed
+    private void bind(int slot, double value) {
+        if(!variableSet[slot]){
+            variableSet[slot] = true;
+            if(++setVariableCount == variableSet.length)
+                addedVariables = true;
+            invalidateDependents(slot);
+        }
+        else if(Double.doubleToRawLongBits(variableValues[slot]) != Double.doubleToRawLongBits(value))
+            invalidateDependents(slot);
+        variableValues[slot] = value;
     }
 
     /**
@@ -239,7 +447,14 @@ public class Formula extends FormulaEntity<Double> implements NeedsRoot {
     public double naiveResult(double... variables){
         if(variables.length > 0)
             setVariables(variables);
-        return root == null && !haveVariablesChangedNaive ? lastNaiveCachedResult : result(false);
+        return cachedResult(false);
+    }
+
+    /**
+     * Same as {@link Formula#naiveResult(double...)} with the values already set, without the empty array a varargs call creates
+     */
+    public double naiveResult(){
+        return cachedResult(false);
     }
 
     /**
@@ -248,10 +463,22 @@ public class Formula extends FormulaEntity<Double> implements NeedsRoot {
      * If this method has been called before, and nothing about the formula has changed (e.g. variables), then this will return a cached result
      * @return A result pair consisting of a boolean and a completable future.<br/><br/>
      * The boolean value states whether the calculation is taking place (true) or a cached result has been returned (false)<br/><br/>
-     * The CompletableFuture will compute async if there was no cache found, or instantly return a completed future if a cache was present
+     * The CompletableFuture will compute async if there was no cache found, or instantly return a completed future if a cache was present.
+     * It's computed by {@link Parser#getAsyncExecutor()}, on a copy of this formula made right away, see {@link Formula#naiveResultAsync(Executor)}
      */
     public ResultPair naiveResultAsync(){
-        return root == null && !haveVariablesChangedNaive ? new ResultPair(false, CompletableFuture.completedFuture(lastNaiveCachedResult)) : new ResultPair(true, CompletableFuture.supplyAsync(this::naiveResult));
+        return naiveResultAsync(null);
+    }
+
+    /**
+     * Same as {@link Formula#naiveResultAsync()}, computed by the provided executor.<br/>
+     * The formula is copied before this returns, so its variables can be changed right away, even from another thread, without affecting the result. The result isn't cached on this formula
+     * @param executor The executor that computes the result, null uses {@link Parser#getAsyncExecutor()}
+     */
+    public ResultPair naiveResultAsync(Executor executor){
+        if(root == null)
+            checkConfigVersion();
+        return root == null && !haveVariablesChangedNaive ? new ResultPair(false, CompletableFuture.completedFuture(lastNaiveCachedResult)) : new ResultPair(true, submit(false, executor));
     }
 
     /**
@@ -261,11 +488,37 @@ public class Formula extends FormulaEntity<Double> implements NeedsRoot {
     public double inOperationOrderResult(double... variables){
         if(variables.length > 0)
             setVariables(variables);
+        return cachedResult(true);
+    }
 
-        if(root != null && !haveVariablesChangedInOrder)
-            return lastInOrderCachedResult;
-        else
-            return result(true);
+    /**
+     * Same as {@link Formula#inOperationOrderResult(double...)} with the values already set, without the empty array a varargs call creates
+     */
+    public double inOperationOrderResult(){
+        return cachedResult(true);
+    }
+
+    /**
+     * A nested formula is computed the same way as calling {@link #naiveResult(double...)} or {@link #inOperationOrderResult(double...)} on it
+     */
+    @Override
+    public final double eval(Formula caller, boolean inOperationOrder) {
+        return cachedResult(inOperationOrder);
+    }
+
+    private double cachedResult(boolean inOperationOrder) {
+        if(root == null)
+            checkConfigVersion();
+
+        if(!(inOperationOrder ? haveVariablesChangedInOrder : haveVariablesChangedNaive)) {
+            if(root != null)
+                root.reusedNodes++;
+            return inOperationOrder ? lastInOrderCachedResult : lastNaiveCachedResult;
+        }
+
+        if(root != null)
+            root.recomputedNodes++;
+        return result(inOperationOrder);
     }
 
     /**
@@ -273,15 +526,63 @@ public class Formula extends FormulaEntity<Double> implements NeedsRoot {
      * If this method has been called before, and nothing about the formula has changed (e.g. variables), then this will return a cached result
      * @return A result pair consisting of a boolean and a completable future.<br/><br/>
      * The boolean value states whether the calculation is taking place (true) or a cached result has been returned (false)<br/><br/>
-     * The CompletableFuture will compute async if there was no cache found, or instantly return a completed future if a cache was present
+     * The CompletableFuture will compute async if there was no cache found, or instantly return a completed future if a cache was present.
+     * It's computed by {@link Parser#getAsyncExecutor()}, with the variable values copied right away, see {@link Formula#inOperationOrderResultAsync(Executor)}
      */
     public ResultPair inOperationOrderResultAsync(){
-        return root == null && !haveVariablesChangedInOrder ? new ResultPair(false, CompletableFuture.completedFuture(lastInOrderCachedResult)) : new ResultPair(true, CompletableFuture.supplyAsync(this::inOperationOrderResult));
+        return inOperationOrderResultAsync(null);
     }
 
     /**
-     * Main compute logic for formulas. This will never return a cached value.
-     * Both {@link Formula#naiveResult(double...)} and {@link Formula#inOperationOrderResult(double...)} call upon this method, and they may have a cached value for faster use
+     * Same as {@link Formula#inOperationOrderResultAsync()}, computed by the provided executor.<br/>
+     * The variable values are copied before this returns and computed with the program from {@link Formula#getCompiled()}, which never reads the formula's own values,
+     * so they can be changed right away, even from another thread, without affecting the result. The result isn't cached on this formula
+     * @param executor The executor that computes the result, null uses {@link Parser#getAsyncExecutor()}
+     */
+    public ResultPair inOperationOrderResultAsync(Executor executor){
+        if(root == null)
+            checkConfigVersion();
+        return root == null && !haveVariablesChangedInOrder ? new ResultPair(false, CompletableFuture.completedFuture(lastInOrderCachedResult)) : new ResultPair(true, submit(true, executor));
+    }
+
+    //Everything the computation reads is taken now, on the calling thread, so it never touches this formula. Errors end up in the future like the ones thrown while computing
+    private CompletableFuture<Double> submit(boolean inOperationOrder, Executor executor) {
+        Supplier<Double> task;
+        try {
+            task = snapshot(inOperationOrder);
+        }
+        catch (RuntimeException e) {
+            CompletableFuture<Double> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return CompletableFuture.supplyAsync(task, executor != null ? executor : parser.getAsyncExecutor());
+    }
+
+    private Supplier<Double> snapshot(boolean inOperationOrder) {
+        if(!addedVariables)
+            throw new IllegalArgumentException("The replacement values cannot be empty");
+
+        if(inOperationOrder) {
+            CompiledFormula program = getCompiled();
+            double[] values = rootVariableValues();
+            EvalContext context = new EvalContext(values.length).setVariables(values);
+            return () -> program.result(context);
+        }
+
+        //Naive computing has no compiled program, so it runs on a copy. A nested formula is copied along with its root, which holds the values
+        Map<FormulaEntity<?>, FormulaEntity<?>> copies = new IdentityHashMap<>();
+        Formula rootCopy = (root == null ? this : root).copy(copies);
+        Formula copy = root == null ? rootCopy : (Formula) copies.get(this);
+        return () -> copy.naiveResult();
+    }
+
+    /**
+     * Main compute logic for formulas. The result of this formula is always computed again, but the nested formulas and functions whose variables didn't change still return their cached results.
+     * Both {@link Formula#naiveResult(double...)} and {@link Formula#inOperationOrderResult(double...)} call upon this method, and they may have a cached value for faster use<br/><br/>
+     *
+     * The nested results are only thrown away by {@link Formula#setVariable(int, double)}, the other setters and {@link Formula#resetCache()}.
+     * Writing to the array returned by {@link Formula#getVariableValues()} skips that, so nested results stay stale until {@link Formula#resetCache()} is called
      *
      * @param inOperationOrder Whether in operation order (true), or naive (false) logic will be used
      * @return The result
@@ -290,82 +591,264 @@ public class Formula extends FormulaEntity<Double> implements NeedsRoot {
         if(!addedVariables)
             throw new IllegalArgumentException("The replacement values cannot be empty");
 
+        if(root == null)
+            checkConfigVersion();
+
+        ParserConfig config = getConfig();
         double result = 0;
-        TempList extra = null;
+        int segmentCount = 0;
         if(inOperationOrder && inOperationOrderSize > 0) {
             FormulaEntity<?> entity = this.inOperationOrder[0];
-            double tempRes = parser.processEntity(this, entity, true);
+            double tempRes = evaluate(entity, this, true);
             char c = entity.getPrecedentSymbol();
-            extra = new TempList(inOperationOrderSize+2);
-            boolean wasFormula  = entity instanceof Formula;
-            boolean innerNeg = tempRes < 0.0D;
-            boolean outerMinus = wasFormula && c == '-';
+            int flags = flagsOf(entity, tempRes);
 
             for(int i = 1; i < inOperationOrderSize; ++i) {
                 entity = this.inOperationOrder[i];
 
-                int prio = parser.getOperatorPriority(entity.getPrecedentSymbol());
+                int prio = config.getOperatorPriority(entity.getPrecedentSymbol());
 
                 if(prio == 0) {
-                    extra.add(new StaticVariable(tempRes, parser.getDefaultOperator()));
+                    segments[segmentCount++] = tempRes;
                     tempRes = 0D;
                 }
 
                 if(prio > 0 && entity.getPrecedentSymbol() != c)
                     c = entity.getPrecedentSymbol();
 
-                double val = parser.processEntity(this, entity, true);
-                tempRes = parser.compute(entity.getPrecedentSymbol(), tempRes, val, wasFormula, innerNeg, outerMinus);
-                wasFormula = entity instanceof Formula;
-                innerNeg = val < 0.0D;
-                outerMinus = wasFormula && entity.getPrecedentSymbol() == '-';
+                double val = evaluate(entity, this, true);
+                tempRes = config.compute(entity.getPrecedentSymbol(), tempRes, val, flags);
+                flags = flagsOf(entity, val);
             }
-            extra.add(new StaticVariable(tempRes, parser.getDefaultOperator()));
+            segments[segmentCount++] = tempRes;
         }
 
         final FormulaEntity<?>[] toUse = inOperationOrder ? lowestPriority : inOrder;
         final int s = inOperationOrder ? lowestPrioritySize : inOperationOrderSize;
-        result = processChar(toUse, s, result, inOperationOrder);
-
-        if(extra != null)
-            result = processChar(extra.getArray(), extra.size(), result, true);
+        result = processChar(config, toUse, s, result, inOperationOrder);
+
+        //Same as computing a list of static variables that all use the default operator
+        char defaultOperator = config.getDefaultOperator();
+        int flags = 0;
+        for(int i = 0; i < segmentCount; ++i) {
+            result = config.compute(defaultOperator, result, segments[i], flags);
+            flags = segments[i] < 0.0D ? INNER_NEGATIVE : 0;
+        }
 
         if(inOperationOrder) {
             lastInOrderCachedResult = result;
-            if(root == null) haveVariablesChangedInOrder = false;
+            if(root == null || cacheable) haveVariablesChangedInOrder = false;
         }
         else {
             lastNaiveCachedResult = result;
-            if(root == null) haveVariablesChangedNaive = false;
+            if(root == null || cacheable) haveVariablesChangedNaive = false;
         }
 
         return result;
     }
 
-    private double processChar(FormulaEntity<?>[] list, int n, double result, boolean inOperationOrder) {
+    /**
+     * Lowers the in operation order structure of this formula into a flat postfix program, see {@link CompiledFormula}.<br/>
+     * The program is a snapshot, operators and functions are resolved now, so changes made to the parser afterward require compiling again.
+     *
+     * @return A new compiled program bound to this formula
+     * @throws NullPointerException If the formula uses a character that is no longer a valid operator
+     */
+    public CompiledFormula compile(){
+        return CompiledFormula.compile(this);
+    }
+
+    /**
+     * Returns a compiled program of this formula that is kept between calls, see {@link Formula#compile()}.<br/>
+     * The program is compiled again when it is missing or the parser's operators or functions changed since, see {@link CompiledFormula#isOutdated()}
+     */
+    public CompiledFormula getCompiled(){
+        CompiledFormula program = compiled;
+        if(program == null || program.isOutdated())
+            compiled = program = compile();
+        return program;
+    }
+
+    /**
+     * Returns the in operation order result using the values of the provided context instead of the ones set on this formula.<br/>
+     * Nothing about this formula is changed, not even the cache, so any number of threads can call this at once on the same formula as long as each uses its own context.
+     *
+     * @throws IllegalArgumentException If the context holds fewer variables than this formula needs
+     */
+    public double result(EvalContext context){
+        return getCompiled().result(context);
+    }
+
+    /**
+     * Replaces every nested formula and function call that doesn't depend on a replaceable variable with its value, so it doesn't have to be computed again on every call.<br/>
+     * Only functions marked as pure are replaced, see {@link Parser#addFunction(String, FunctionCompute, boolean)}. Both naive and in operation order computing keep returning the same results.<br/><br/>
+     *
+     * The values are computed with the current functions, replacing a pure function afterward won't change this formula anymore.
+     *
+     * @return The same object for easy access to chain other similar methods
+     */
+    public Formula foldConstants(){
+        if(root == null)
+            checkConfigVersion();
+        new ConstantFolder(getConfig()).fold(this);
+        compiled = null;
+        resetCache();
+        return this;
+    }
+
+    /**
+     * Computes the in operation order result for many rows at once. Row i uses columns[v][i] as the value of the v-th variable, in the same order as {@link Formula#getVariables()}, and its result is written to out[i].<br/>
+     * The values set on this formula and its cache are not used or changed. Uses the program from {@link Formula#getCompiled()}
+     *
+     * @param columns One column per variable, each with at least out.length rows
+     * @param out Receives the results, its length is the number of rows
+     * @throws IllegalArgumentException If there are not enough columns, or a column is too short
+     */
+    public void evaluateBatch(double[][] columns, double[] out){
+        getCompiled().evaluateBatch(columns, out);
+    }
+
+    /**
+     * Same as {@link Formula#evaluateBatch(double[][], double[])}, but the rows are split into chunks and evaluated by the workers of the provided pool.<br/>
+     * Each worker uses its own evaluation state, so this is safe even though the formula itself is not. Custom operators and functions must be safe to call from multiple threads.
+     *
+     * @param pool The pool that evaluates the chunks, for example {@link ForkJoinPool#commonPool()}
+     * @throws IllegalArgumentException If there are not enough columns, or a column is too short
+     */
+    public void evaluateBatchParallel(double[][] columns, double[] out, ForkJoinPool pool){
+        getCompiled().evaluateBatchParallel(columns, out, pool);
+    }
+
+    private double processChar(ParserConfig config, FormulaEntity<?>[] list, int n, double result, boolean inOperationOrder) {
         //Copied in case the default ^ implementation is changed to have 0 priority
-        boolean wasFormula = false;
-        boolean innerNeg = false;
-        boolean outerMinus = false;
+        int flags = 0;
         for(int i = 0; i < n; ++i) {
             FormulaEntity<?> entity = list[i];
-            double val = parser.processEntity(this, entity, inOperationOrder);
-            result = parser.compute(entity.getPrecedentSymbol(), result, val, wasFormula, innerNeg, outerMinus);
-
-            wasFormula = entity instanceof Formula;
-            innerNeg = val < 0.0D;
-            outerMinus = wasFormula && entity.getPrecedentSymbol() == '-';
+            double val = evaluate(entity, this, inOperationOrder);
+            result = config.compute(entity.getPrecedentSymbol(), result, val, flags);
+            flags = flagsOf(entity, val);
         }
         return result;
     }
 
+    //Packs what the next operator needs to know about the entity on its left, see FlaggedOperatorCompute
+    private static int flagsOf(FormulaEntity<?> entity, double value) {
+        int flags = value < 0.0D ? INNER_NEGATIVE : 0;
+        if(entity instanceof Formula)
+            flags |= entity.getPrecedentSymbol() == '-' ? WAS_FORMULA | OUTER_MINUS : WAS_FORMULA;
+        return flags;
+    }
+
+    /**
+     * Throws away the cached results of this formula and of every nested formula and function in it
+     */
     public void resetCache(){
+        resetOwnCache();
+        for (FormulaEntity<?> node : nodes)
+            invalidate(node);
+    }
+
+    private void resetOwnCache(){
         haveVariablesChangedNaive = true;
         haveVariablesChangedInOrder = true;
         lastNaiveCachedResult = 0;
         lastInOrderCachedResult = 0;
     }
 
+    private void invalidateDependents(int variable){
+        for (FormulaEntity<?> node : dependents[variable])
+            invalidate(node);
+    }
+
+    private static void invalidate(FormulaEntity<?> node){
+        if(node instanceof Formula)
+            ((Formula) node).resetOwnCache();
+        else
+            ((Function) node).resetCache();
+    }
+
+    /**
+     * Nested results are only kept while the parser's configuration stays the same, and only if no impure function is involved, see {@link Parser#isPureFunction(String)}
+     */
+    private void checkConfigVersion(){
+        ParserConfig current = parser.getConfig();
+        config = current;
+        int version = current.getVersion();
+        if(version == trackedConfigVersion)
+            return;
+
+        trackedConfigVersion = version;
+        //The nodes are stored children first
+        for (FormulaEntity<?> node : nodes) {
+            if (node instanceof Formula) {
+                Formula f = (Formula) node;
+                f.cacheable = allCacheable(f.inOrder) && allCacheable(f.inOperationOrder) && allCacheable(f.lowestPriority);
+            }
+            else {
+                Function f = (Function) node;
+                f.setCacheable(current.isPureFunction(f.getId()) && allCacheable(f.getParams()));
+            }
+        }
+        resetCache();
+    }
+
+    private static boolean allCacheable(FormulaEntity<?>[] list){
+        for (FormulaEntity<?> entity : list) {
+            if (entity instanceof Formula && !((Formula) entity).cacheable)
+                return false;
+            if (entity instanceof Function && !((Function) entity).isCacheable())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the indices of the variables this formula depends on, in the same order as {@link Formula#getVariables()} of the root formula.<br/>
+     * A nested formula is only computed again when one of these variables changes.
+     */
+    public BitSet getDependencies(){
+        return (BitSet) dependencies.clone();
+    }
+
+    /**
+     * Returns how many times a nested formula or function had to be computed since the counters were last reset
+     */
+    public long getRecomputedNodes(){
+        return recomputedNodes;
+    }
+
+    /**
+     * Returns how many times a nested formula or function could use its cached result since the counters were last reset
+     */
+    public long getReusedNodes(){
+        return reusedNodes;
+    }
+
+    /**
+     * Resets both {@link Formula#getRecomputedNodes()} and {@link Formula#getReusedNodes()}
+     */
+    public void resetNodeCounters(){
+        recomputedNodes = 0;
+        reusedNodes = 0;
+    }
+
+    //Used by functions, that only know their root
+    void nodeReused(){
+        reusedNodes++;
+    }
+
+    void nodeRecomputed(){
+        recomputedNodes++;
+    }
+
+    /**
+     * Formulas don't hold a value of their own, use {@link #naiveResult()} or {@link #inOperationOrderResult()}
+     */
+    @Override
+    public Double getValue(){
+        return NO_VALUE;
+    }
+
     /**
      * Naive cache if present, or null
      */
@@ -382,7 +865,8 @@ public class Formula extends FormulaEntity<Double> implements NeedsRoot {
 
     /**
      * Returns the replaceable variables current values in the order that they first appear in the formula
-     * So, x+1+y*x, would be stored as {x, y}, meaning the first value returned would be x and the second y.
+     * So, x+1+y*x, would be stored as {x, y}, meaning the first value returned would be x and the second y.<br/>
+     * This is the array the formula reads, not a copy. Change the values through the setters, or call {@link Formula#resetCache()} after writing to it, otherwise the cached results won't notice
      *
      * @return The replaceable variables current values
      */
@@ -390,6 +874,11 @@ public class Formula extends FormulaEntity<Double> implements NeedsRoot {
         return variableValues;
     }
 
+    //The values the variables of this formula read, nested formulas read the ones of their root
+    double[] rootVariableValues(){
+        return root == null ? variableValues : root.variableValues;
+    }
+
     /**
      * Clones the current object without copying the replaced variable values
      * @return A new separate cloned instance from this object
@@ -406,6 +895,12 @@ public class Formula extends FormulaEntity<Double> implements NeedsRoot {
      * @return A new separate cloned instance from this object
      */
     public Formula clone(boolean cloneReplacementValues){
+        //Nested formulas keep a reference to their root and their own cached results, so they can't be shared between clones
+        Map<FormulaEntity<?>, FormulaEntity<?>> copies = new IdentityHashMap<>();
+        FormulaEntity<?>[] inOrder = copyAll(this.inOrder, inOrderSize, copies);
+        FormulaEntity<?>[] inOperationOrder = copyAll(this.inOperationOrder, inOperationOrderSize, copies);
+        FormulaEntity<?>[] lowestPriority = copyAll(this.lowestPriority, lowestPrioritySize, copies);
+
         if(!cloneReplacementValues)
             return new Formula(inOrder, inOrderSize, inOperationOrder, inOperationOrderSize, lowestPriority, lowestPrioritySize, null, parser);
 
@@ -417,6 +912,82 @@ public class Formula extends FormulaEntity<Double> implements NeedsRoot {
         return new Formula(inOrder, inOrderSize, inOperationOrder, inOperationOrderSize, lowestPriority, lowestPrioritySize, map, parser);
     }
 
+    /**
+     * Creates a fully independent copy of this formula, only the variables that were set on this formula are set on the copy.<br/>
+     * Nested formulas and functions are copied as well, so the copy and this formula never share mutable state.
+     * Static and replaceable variables are shared as they are never changed after parsing.
+     *
+     * @return A new separate copy of this object
+     */
+    public Formula copy(){
+        return copy(new IdentityHashMap<>());
+    }
+
+    //Fills copies with the copy of every nested formula and function
+    private Formula copy(Map<FormulaEntity<?>, FormulaEntity<?>> copies){
+        return new Formula(copyAll(inOrder, inOrderSize, copies), inOrderSize, copyAll(inOperationOrder, inOperationOrderSize, copies), inOperationOrderSize, copyAll(lowestPriority, lowestPrioritySize, copies), lowestPrioritySize, setVariableValues(), parser);
+    }
+
+    //Only the variables that were set, in the same order as Formula#getVariables()
+    LinkedHashMap<Character, Double> setVariableValues() {
+        LinkedHashMap<Character, Double> map = new LinkedHashMap<>();
+        for (int i = 0; i < variableNames.length; i++)
+            if (variableSet[i])
+                map.put(variableNames[i], variableValues[i]);
+        return map;
+    }
+
+    /**
+     * Writes the parsed structure of this formula in a compact binary format, so it can be loaded again with {@link Formula#readFrom(DataInput, Parser)} instead of being parsed.<br/>
+     * Every entity is written once along with its precedent symbol, entities that appear in several lists are written once and referenced by index. Functions are written by their ids, and the values of the variables that were set are kept.<br/>
+     * The format starts with {@link Parser#getConfigHash()} of this formula's parser. The compiled program isn't written, it's compiled again once it's needed.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        FormulaSerializer.write(this, out);
+    }
+
+    /**
+     * Loads a formula written by {@link Formula#writeTo(DataOutput)}, the result is the same as parsing the original text with the given parser
+     *
+     * @throws IllegalArgumentException If the formula was written with a parser that has a different {@link Parser#getConfigHash()}, or if it uses a function the parser doesn't have
+     * @throws java.io.StreamCorruptedException If the data isn't a formula written by {@link Formula#writeTo(DataOutput)}
+     */
+    public static Formula readFrom(DataInput in, Parser parser) throws IOException {
+        return FormulaSerializer.read(in, parser);
+    }
+
+    //The same nested formula can appear in multiple lists, so every entity is only copied once
+    private static FormulaEntity<?>[] copyAll(FormulaEntity<?>[] list, int size, Map<FormulaEntity<?>, FormulaEntity<?>> copies) {
+        FormulaEntity<?>[] result = new FormulaEntity<?>[size];
+        for (int i = 0; i < size; i++)
+            result[i] = copyEntity(list[i], copies);
+        return result;
+    }
+
+    private static FormulaEntity<?> copyEntity(FormulaEntity<?> entity, Map<FormulaEntity<?>, FormulaEntity<?>> copies) {
+        if (!(entity instanceof Formula) && !(entity instanceof Function))
+            return entity;
+
+        FormulaEntity<?> copy = copies.get(entity);
+        if (copy != null)
+            return copy;
+
+        if (entity instanceof Formula) {
+            Formula f = (Formula) entity;
+            copy = new Formula(f.getPrecedentSymbol(), copyAll(f.inOrder, f.inOrderSize, copies), f.inOrderSize, copyAll(f.inOperationOrder, f.inOperationOrderSize, copies), f.inOperationOrderSize, copyAll(f.lowestPriority, f.lowestPrioritySize, copies), f.lowestPrioritySize, f.parser);
+        }
+        else {
+            Function function = (Function) entity;
+            FormulaEntity<?>[] params = function.getParams();
+            Function functionCopy = new Function(function.getId(), copyAll(params, params.length, copies), params.length, function.getPrecedentSymbol());
+            functionCopy.bindCompute(function.compute, function.computeVersion);
+            copy = functionCopy;
+        }
+
+        copies.put(entity, copy);
+        return copy;
+    }
+
     //Internal use only
     public FormulaEntity<?> getLast(){
         FormulaEntity<?> last = inOrder[inOrderSize - 1];
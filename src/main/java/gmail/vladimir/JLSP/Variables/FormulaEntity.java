@@ -1,20 +1,55 @@
 package gmail.vladimir.JLSP.Variables;
 
 /**
- * Defines an object as a valid entity that can be used to retrieve some sort of value that can be used in solving the equation
+ * Defines an object as a valid entity that can be used to retrieve some sort of value that can be used in solving the equation.<br/>
+ * The value itself is stored by each entity as a primitive, {@link #getValue()} only boxes it for callers that need an object.
  */
 public abstract class FormulaEntity<T> {
 
-    protected T value;
+    //Returned by the entities that don't hold a value of their own
+    static final Double NO_VALUE = 0D;
+
+    //Lets evaluate(...) switch on the built-in entities instead of making one call site see every eval implementation
+    static final byte STATIC = 0, VARIABLE = 1, FORMULA = 2, FUNCTION = 3, OTHER = 4;
+
     private char precedentSymbol;
+    final byte kind;
+
+    public FormulaEntity(char precedentSymbol){
+        this(precedentSymbol, OTHER);
+    }
 
-    public FormulaEntity(T value, char precedentSymbol){
-        this.value = value;
+    FormulaEntity(char precedentSymbol, byte kind){
         this.precedentSymbol = precedentSymbol;
+        this.kind = kind;
     }
 
-    public final T getValue(){
-        return value;
+    public abstract T getValue();
+
+    /**
+     * Computes the value of this entity
+     * @param caller The formula whose lists hold this entity, its root holds the variable values
+     * @param inOperationOrder Whether in operation order (true), or naive (false) logic will be used
+     */
+    public abstract double eval(Formula caller, boolean inOperationOrder);
+
+    /**
+     * Same as calling {@link #eval(Formula, boolean)} on the entity. Constants and variables are read right here and formulas and functions get a call site of their own,
+     * so evaluating a list of mixed entities never goes through a single call site that sees every implementation
+     */
+    public static double evaluate(FormulaEntity<?> entity, Formula caller, boolean inOperationOrder){
+        switch (entity.kind) {
+            case STATIC:
+                return ((StaticVariable) entity).doubleValue();
+            case VARIABLE:
+                return ((ReplaceableVariable) entity).eval(caller, inOperationOrder);
+            case FORMULA:
+                return ((Formula) entity).eval(caller, inOperationOrder);
+            case FUNCTION:
+                return ((Function) entity).eval(caller, inOperationOrder);
+            default:
+                return entity.eval(caller, inOperationOrder);
+        }
     }
 
     public final char getPrecedentSymbol(){
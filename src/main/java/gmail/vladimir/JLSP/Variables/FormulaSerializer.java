@@ -0,0 +1,319 @@
+package gmail.vladimir.JLSP.Variables;
+
+import gmail.vladimir.JLSP.Parser.Parser;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The binary format of {@link Formula#writeTo(DataOutput)} and {@link Formula#readFrom(DataInput, Parser)}.<br/><br/>
+ *
+ * The header holds a magic number, the format version and the {@link Parser#getConfigHash()} of the writing parser, followed by the ids of the functions used.
+ * The rest is a single block with its length in front, so it's read at once. It holds the entities, children always before the formulas and functions that hold them, so reading builds every entity in a single pass.
+ * Each of them is a tag, its precedent symbol and its own data, lists point to entities by their index. The root formula's three lists and its set variables come last.<br/>
+ * Sizes, indices and chars are written as variable length numbers, 7 bits per byte, so ASCII chars and small lists take a single byte.
+ */
+final class FormulaSerializer {
+
+    private static final int MAGIC = 0x4A4C5346;
+    private static final int VERSION = 1;
+
+    //Whole numbers that fit in an int are written as a variable length number instead of a double
+    private static final int STATIC = 0, VARIABLE = 1, FORMULA = 2, FUNCTION = 3, STATIC_INT = 4;
+
+    private final Map<FormulaEntity<?>, Integer> indices = new IdentityHashMap<>();
+    private final List<FormulaEntity<?>> entities = new ArrayList<>();
+    private final Map<String, Integer> ids = new LinkedHashMap<>();
+
+    //The body is built in memory and written with its length, so reading it takes one readFully instead of a call per byte
+    private byte[] bytes;
+    private int pos;
+
+    private FormulaSerializer(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    static void write(Formula formula, DataOutput out) throws IOException {
+        FormulaSerializer serializer = new FormulaSerializer(new byte[256]);
+        serializer.collect(formula.getInOrder());
+        serializer.collect(formula.getInOperationOrder());
+        serializer.collect(formula.getLowestPriority());
+
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeInt(formula.getParser().getConfigHash());
+
+        writeSize(out, serializer.ids.size());
+        for (String id : serializer.ids.keySet())
+            out.writeUTF(id);
+
+        serializer.writeSize(serializer.entities.size());
+        for (FormulaEntity<?> entity : serializer.entities)
+            serializer.writeEntity(entity);
+
+        serializer.writeList(formula.getInOrder());
+        serializer.writeList(formula.getInOperationOrder());
+        serializer.writeList(formula.getLowestPriority());
+
+        Map<Character, Double> values = formula.setVariableValues();
+        serializer.writeSize(values.size());
+        for (Map.Entry<Character, Double> entry : values.entrySet()) {
+            serializer.writeSize(entry.getKey());
+            serializer.writeDouble(entry.getValue());
+        }
+
+        writeSize(out, serializer.pos);
+        out.write(serializer.bytes, 0, serializer.pos);
+    }
+
+    //Adds the entities of the list, children first
+    private void collect(FormulaEntity<?>[] list) {
+        for (FormulaEntity<?> entity : list) {
+            if (indices.containsKey(entity))
+                continue;
+
+            if (entity instanceof Formula) {
+                Formula formula = (Formula) entity;
+                collect(formula.getInOrder());
+                collect(formula.getInOperationOrder());
+                collect(formula.getLowestPriority());
+            }
+            else if (entity instanceof Function) {
+                Function function = (Function) entity;
+                collect(function.getParams());
+                ids.putIfAbsent(function.getId(), ids.size());
+            }
+            else if (!(entity instanceof StaticVariable) && !(entity instanceof ReplaceableVariable))
+                throw new IllegalArgumentException("Entities of type " + entity.getClass().getName() + " can't be written");
+
+            indices.put(entity, entities.size());
+            entities.add(entity);
+        }
+    }
+
+    private void writeEntity(FormulaEntity<?> entity) {
+        if (entity instanceof StaticVariable) {
+            double value = ((StaticVariable) entity).doubleValue();
+            int whole = (int) value;
+            boolean isInt = whole == value && Double.doubleToRawLongBits(value) != Double.doubleToRawLongBits(-0D);
+            writeByte(isInt ? STATIC_INT : STATIC);
+            writeSize(entity.getPrecedentSymbol());
+            if (isInt)
+                writeSize((whole << 1) ^ (whole >> 31));
+            else
+                writeDouble(value);
+        }
+        else if (entity instanceof ReplaceableVariable) {
+            ReplaceableVariable variable = (ReplaceableVariable) entity;
+            writeByte(VARIABLE);
+            writeSize(entity.getPrecedentSymbol());
+            writeSize(variable.charValue());
+            writeByte(variable.isNegative() ? 1 : 0);
+        }
+        else if (entity instanceof Formula) {
+            Formula formula = (Formula) entity;
+            writeByte(FORMULA);
+            writeSize(entity.getPrecedentSymbol());
+            writeList(formula.getInOrder());
+            writeList(formula.getInOperationOrder());
+            writeList(formula.getLowestPriority());
+        }
+        else {
+            Function function = (Function) entity;
+            writeByte(FUNCTION);
+            writeSize(entity.getPrecedentSymbol());
+            writeSize(ids.get(function.getId()));
+            writeList(function.getParams());
+        }
+    }
+
+    private void writeList(FormulaEntity<?>[] list) {
+        writeSize(list.length);
+        for (FormulaEntity<?> entity : list)
+            writeSize(indices.get(entity));
+    }
+
+    private void writeByte(int value) {
+        if (pos == bytes.length)
+            bytes = Arrays.copyOf(bytes, bytes.length << 1);
+        bytes[pos++] = (byte) value;
+    }
+
+    private void writeSize(int value) {
+        while ((value & ~0x7F) != 0) {
+            writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    private void writeDouble(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8)
+            writeByte((int) (bits >>> shift));
+    }
+
+    static Formula read(DataInput in, Parser parser) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new StreamCorruptedException("Not a serialized formula");
+        int version = in.readUnsignedByte();
+        if (version != VERSION)
+            throw new StreamCorruptedException("Unsupported formula format version " + version);
+
+        int hash = in.readInt();
+        if (hash != parser.getConfigHash())
+            throw new IllegalArgumentException("The formula was written with a different operator configuration, hash " + hash + " instead of " + parser.getConfigHash());
+
+        String[] ids = new String[readSize(in)];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = in.readUTF();
+            if (!parser.isFunction(ids[i]))
+                throw new IllegalArgumentException("The formula uses the function " + ids[i] + ", which the parser doesn't have");
+        }
+
+        byte[] body = new byte[readSize(in)];
+        in.readFully(body);
+        return new FormulaSerializer(body).readBody(parser, ids);
+    }
+
+    private Formula readBody(Parser parser, String[] ids) throws IOException {
+        FormulaEntity<?>[] entities = new FormulaEntity<?>[readSize()];
+        for (int i = 0; i < entities.length; i++)
+            entities[i] = readEntity(parser, ids, entities, i);
+
+        FormulaEntity<?>[] inOrder = readList(entities, entities.length);
+        FormulaEntity<?>[] inOperationOrder = readList(entities, entities.length);
+        FormulaEntity<?>[] lowestPriority = readList(entities, entities.length);
+
+        int setVariables = readSize();
+        LinkedHashMap<Character, Double> values = new LinkedHashMap<>();
+        for (int i = 0; i < setVariables; i++)
+            values.put(readChar(), readDouble());
+
+        if (pos != bytes.length)
+            throw new StreamCorruptedException((bytes.length - pos) + " bytes left after the formula");
+
+        return new Formula(inOrder, inOrder.length, inOperationOrder, inOperationOrder.length, lowestPriority, lowestPriority.length, values, parser);
+    }
+
+    private FormulaEntity<?> readEntity(Parser parser, String[] ids, FormulaEntity<?>[] entities, int count) throws IOException {
+        int tag = readByte();
+        char precedentSymbol = readChar();
+        switch (tag) {
+            case STATIC:
+                return new StaticVariable(readDouble(), precedentSymbol);
+            case STATIC_INT: {
+                int zigzag = readUnsigned();
+                return new StaticVariable((zigzag >>> 1) ^ -(zigzag & 1), precedentSymbol);
+            }
+            case VARIABLE: {
+                char name = readChar();
+                return new ReplaceableVariable(name, precedentSymbol, readByte() != 0);
+            }
+            case FORMULA: {
+                FormulaEntity<?>[] inOrder = readList(entities, count);
+                FormulaEntity<?>[] inOperationOrder = readList(entities, count);
+                FormulaEntity<?>[] lowestPriority = readList(entities, count);
+                return new Formula(precedentSymbol, inOrder, inOrder.length, inOperationOrder, inOperationOrder.length, lowestPriority, lowestPriority.length, parser);
+            }
+            case FUNCTION: {
+                int id = readSize();
+                if (id >= ids.length)
+                    throw new StreamCorruptedException("Function id " + id + " out of range");
+                FormulaEntity<?>[] params = readList(entities, count);
+                return new Function(ids[id], params, params.length, precedentSymbol);
+            }
+            default:
+                throw new StreamCorruptedException("Unknown entity tag " + tag);
+        }
+    }
+
+    //Only the first count entities exist so far
+    private FormulaEntity<?>[] readList(FormulaEntity<?>[] entities, int count) throws IOException {
+        int size = readSize();
+        if (size > bytes.length - pos)
+            throw new StreamCorruptedException("List of " + size + " entities is longer than the data left");
+
+        FormulaEntity<?>[] list = new FormulaEntity<?>[size];
+        for (int i = 0; i < size; i++) {
+            int index = readSize();
+            if (index >= count)
+                throw new StreamCorruptedException("Entity index " + index + " out of range");
+            list[i] = entities[index];
+        }
+        return list;
+    }
+
+    private int readByte() throws IOException {
+        if (pos == bytes.length)
+            throw new EOFException("The formula ends too early");
+        return bytes[pos++] & 0xFF;
+    }
+
+    private char readChar() throws IOException {
+        int value = readSize();
+        if (value > Character.MAX_VALUE)
+            throw new StreamCorruptedException("Char " + value + " out of range");
+        return (char) value;
+    }
+
+    private int readSize() throws IOException {
+        int value = readUnsigned();
+        if (value < 0)
+            throw new StreamCorruptedException("Size " + (value & 0xFFFFFFFFL) + " out of range");
+        return value;
+    }
+
+    //All 32 bits, the counterpart of writeSize
+    private int readUnsigned() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new StreamCorruptedException("Malformed number");
+    }
+
+    private double readDouble() throws IOException {
+        long bits = 0;
+        for (int i = 0; i < 8; i++)
+            bits = (bits << 8) | readByte();
+        return Double.longBitsToDouble(bits);
+    }
+
+    //The header is read and written through the stream itself, with the same variable length numbers
+
+    private static void writeSize(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readSize(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0)
+                    throw new StreamCorruptedException("Size " + (value & 0xFFFFFFFFL) + " out of range");
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed number");
+    }
+
+}
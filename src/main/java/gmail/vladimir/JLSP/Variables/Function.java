@@ -1,7 +1,9 @@
 package gmail.vladimir.JLSP.Variables;
 
+import gmail.vladimir.JLSP.Interfaces.FunctionCompute;
 import gmail.vladimir.JLSP.Interfaces.NeedsRoot;
 
+import java.util.BitSet;
 import java.util.Set;
 
 /**
@@ -13,8 +15,19 @@ public class Function extends FormulaEntity<Double> implements NeedsRoot {
     private final FormulaEntity<?>[] params;
     private final int paramSize;
 
+    private Formula root;
+    private BitSet dependencies = new BitSet();
+    private boolean cacheable = false;
+    private double cachedNaive, cachedInOrder;
+    private boolean validNaive = false, validInOrder = false;
+    private double[] arguments;
+
+    //The compute logic resolved from the parser, valid as long as the parser's configuration version matches
+    FunctionCompute compute;
+    int computeVersion = -1;
+
     public Function(String id, FormulaEntity<?>[] params, int size, char precedingSymbol){
-        super(0D, precedingSymbol);
+        super(precedingSymbol, FUNCTION);
         this.id = id;
         this.params = new FormulaEntity<?>[size];
         this.paramSize = size;
@@ -22,6 +35,32 @@ public class Function extends FormulaEntity<Double> implements NeedsRoot {
             this.params[i] = params[i];
     }
 
+    /**
+     * Functions don't hold a value of their own, they're computed by the parser
+     */
+    @Override
+    public Double getValue(){
+        return NO_VALUE;
+    }
+
+    /**
+     * Returns the cached result if there is one, otherwise computes the function through the caller's parser. Either way it's counted by the root, see {@link Formula#getReusedNodes()}
+     */
+    @Override
+    public final double eval(Formula caller, boolean inOperationOrder){
+        if(hasCachedResult(inOperationOrder)) {
+            if(root != null)
+                root.nodeReused();
+            return getCachedResult(inOperationOrder);
+        }
+
+        if(root != null)
+            root.nodeRecomputed();
+        double result = caller.getParser().computeFunction(caller, inOperationOrder, this);
+        setCachedResult(inOperationOrder, result);
+        return result;
+    }
+
     public String getId(){
         return id;
     }
@@ -30,7 +69,33 @@ public class Function extends FormulaEntity<Double> implements NeedsRoot {
         return params;
     }
 
+    /**
+     * Returns the compute logic bound to this function, or null if nothing was bound yet or it was bound under a different configuration version, see {@link gmail.vladimir.JLSP.Parser.Parser#getConfigVersion()}
+     */
+    public FunctionCompute getBoundCompute(int configVersion){
+        return computeVersion == configVersion ? compute : null;
+    }
+
+    /**
+     * Binds the compute logic the parser resolved for this function's id, so computing it doesn't need to look the id up again until the configuration changes
+     */
+    public void bindCompute(FunctionCompute compute, int configVersion){
+        this.compute = compute;
+        this.computeVersion = configVersion;
+    }
+
+    /**
+     * Returns the buffer the params are evaluated into before calling an {@link gmail.vladimir.JLSP.Parser.EvaluatedFunction} that takes any amount of arguments.
+     * It has one slot per param and is reused by every call
+     */
+    public double[] getArgumentBuffer(){
+        if(arguments == null)
+            arguments = new double[paramSize];
+        return arguments;
+    }
+
     public void setRoot(Formula root, Set<Character> vars){
+        this.root = root;
         for(int i = 0; i < paramSize; i++){
             FormulaEntity<?> entity = params[i];
             if(entity instanceof NeedsRoot)
@@ -38,4 +103,57 @@ public class Function extends FormulaEntity<Double> implements NeedsRoot {
 //            break;
         }
     }
+
+    /**
+     * Returns the indices of the root formula variables this function depends on
+     */
+    public BitSet getDependencies(){
+        return (BitSet) dependencies.clone();
+    }
+
+    void setDependencies(BitSet dependencies){
+        this.dependencies = dependencies;
+    }
+
+    boolean isCacheable(){
+        return cacheable;
+    }
+
+    void setCacheable(boolean cacheable){
+        this.cacheable = cacheable;
+    }
+
+    /**
+     * Returns whether a result computed before can still be used, see {@link Formula#getDependencies()}
+     */
+    public boolean hasCachedResult(boolean inOperationOrder){
+        return inOperationOrder ? validInOrder : validNaive;
+    }
+
+    public double getCachedResult(boolean inOperationOrder){
+        return inOperationOrder ? cachedInOrder : cachedNaive;
+    }
+
+    /**
+     * Keeps the result until one of the variables it depends on changes. Only kept if the function and its params are pure
+     */
+    public void setCachedResult(boolean inOperationOrder, double result){
+        if(!cacheable)
+            return;
+
+        if(inOperationOrder) {
+            cachedInOrder = result;
+            validInOrder = true;
+        }
+        else {
+            cachedNaive = result;
+            validNaive = true;
+        }
+    }
+
+    void resetCache(){
+        validNaive = false;
+        validInOrder = false;
+    }
+
 }
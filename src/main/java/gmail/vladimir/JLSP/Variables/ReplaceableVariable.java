@@ -1,20 +1,38 @@
 package gmail.vladimir.JLSP.Variables;
 
-import java.util.Objects;
-
 /**
  * A replaceable variable is any single use character (that is not already a comma/operator/delimiter) that will be used as a placeholder for a real value
  */
 public class ReplaceableVariable extends FormulaEntity<Character>{
 
+    private final char name;
     private final boolean isNegative;
     private short index;
 
-    public ReplaceableVariable(Character value, char precedentSymbol, boolean isNegative) {
-        super(value, precedentSymbol);
+    public ReplaceableVariable(char name, char precedentSymbol, boolean isNegative) {
+        super(precedentSymbol, VARIABLE);
+        this.name = name;
         this.isNegative = isNegative;
     }
 
+    /**
+     * Returns the variable character without boxing it
+     */
+    public final char charValue() {
+        return name;
+    }
+
+    @Override
+    public final Character getValue() {
+        return name;
+    }
+
+    @Override
+    public final double eval(Formula caller, boolean inOperationOrder) {
+        double value = caller.rootVariableValues()[index];
+        return isNegative ? -value : value;
+    }
+
     public final boolean isNegative() {
         return isNegative;
     }
@@ -27,18 +45,18 @@ public class ReplaceableVariable extends FormulaEntity<Character>{
         this.index = index;
     }
 
+    //Two variables are the same if they read the same char with the same sign, where they appear in the formula doesn't matter
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof ReplaceableVariable)) return false;
-        if (!super.equals(o)) return false;
         ReplaceableVariable that = (ReplaceableVariable) o;
-        return this.value == that.value;
+        return this.name == that.name && this.isNegative == that.isNegative;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(super.hashCode(), value);
+        return isNegative ? ~name : name;
     }
 
 }
@@ -5,8 +5,28 @@ package gmail.vladimir.JLSP.Variables;
  */
 public class StaticVariable extends FormulaEntity<Double> {
 
-    public StaticVariable(Double value, char precedentSymbol) {
-        super(value, precedentSymbol);
+    private final double value;
+
+    public StaticVariable(double value, char precedentSymbol) {
+        super(precedentSymbol, STATIC);
+        this.value = value;
+    }
+
+    /**
+     * Returns the value without boxing it, this is what computing uses
+     */
+    public final double doubleValue() {
+        return value;
+    }
+
+    @Override
+    public final Double getValue() {
+        return value;
+    }
+
+    @Override
+    public final double eval(Formula caller, boolean inOperationOrder) {
+        return value;
     }
 
 }
@@ -0,0 +1,95 @@
+package gmail.vladimir.JLSP.Compiler;
+
+import gmail.vladimir.JLSP.Interfaces.DoubleFormula;
+import gmail.vladimir.JLSP.Parser.Parser;
+import gmail.vladimir.JLSP.RandomFormulas;
+import gmail.vladimir.JLSP.Variables.Formula;
+import org.junit.jupiter.api.Test;
+
+import static gmail.vladimir.JLSP.Compiler.CompiledFormulaTest.assertBits;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BytecodeCompilerTest {
+
+    @Test
+    void matchesTheInOperationOrderResult() {
+        Parser parser = new Parser();
+        RandomFormulas random = new RandomFormulas(13);
+        int compared = 0;
+
+        for (int i = 0; i < 5000; i++) {
+            String text = random.next();
+            Formula formula;
+            double expected;
+            double[] values;
+            try {
+                formula = parser.parse(text);
+                values = random.values(formula.getRequiredVariables());
+                expected = formula.inOperationOrderResult(values.clone());
+            }
+            catch (RuntimeException ex) {
+                continue;
+            }
+
+            assertBits(expected, BytecodeCompiler.compile(formula.compile()).eval(values.clone()), text);
+            compared++;
+        }
+
+        assertTrue(compared > 3500, "Only " + compared + " formulas were compared");
+    }
+
+    @Test
+    void callsTheDefaultMathFunctions() {
+        Parser parser = new Parser();
+        String[] names = {"abs", "round", "floor", "ceil", "sqrt", "exp", "log", "log10", "sin", "cos", "tan", "asin", "acos", "atan",
+                "sinh", "cosh", "tanh", "sign", "deg", "rad", "brt", "pow", "atan2", "hypot"};
+        RandomFormulas random = new RandomFormulas(5);
+
+        for (String name : names) {
+            String text = name + "(x,y)*2+" + name + "(y,x)";
+            Formula formula = parser.parse(text);
+            DoubleFormula generated = BytecodeCompiler.compile(formula);
+            for (int i = 0; i < 50; i++) {
+                double[] values = random.values(2);
+                assertBits(formula.inOperationOrderResult(values.clone()), generated.eval(values.clone()), text);
+            }
+            assertBits(formula.inOperationOrderResult(-2.5, 0.5), generated.eval(new double[]{-2.5, 0.5}), text);
+        }
+    }
+
+    @Test
+    void replacedDefaultsAreNotMathCalls() {
+        Parser parser = new Parser();
+        parser.addFunction1("sin", a -> 42);
+        parser.addFunction2("pow", (a, b) -> a - b);
+
+        Formula formula = parser.parse("sin(x)+pow(x,y)");
+        assertBits(42 + 1, BytecodeCompiler.compile(formula).eval(new double[]{3, 2}), "sin(x)+pow(x,y)");
+        assertBits(Math.sin(3) + 9, BytecodeCompiler.compile(new Parser().parse("sin(x)+pow(x,y)")).eval(new double[]{3, 2}), "sin(x)+pow(x,y)");
+    }
+
+    @Test
+    void callsFunctionsWithAnyAmountOfArguments() {
+        Parser parser = new Parser();
+        parser.addFunctionN("spread", args -> {
+            double min = args[0], max = args[0];
+            for (double a : args) {
+                min = Math.min(min, a);
+                max = Math.max(max, a);
+            }
+            return max - min;
+        });
+
+        Formula formula = parser.parse("max(x,y,3)+median(x,y,2,9)*spread(x,y,10)-avg(x,sum(y,1,2))");
+        DoubleFormula generated = BytecodeCompiler.compile(formula);
+        RandomFormulas random = new RandomFormulas(3);
+
+        for (int i = 0; i < 200; i++) {
+            double[] values = random.values(2);
+            double expected = formula.inOperationOrderResult(values.clone());
+            assertBits(expected, formula.compile().result(values.clone()), formula.getVariablesString());
+            assertBits(expected, generated.eval(values.clone()), formula.getVariablesString());
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+package gmail.vladimir.JLSP.Compiler;
+
+import gmail.vladimir.JLSP.Parser.Parser;
+import gmail.vladimir.JLSP.RandomFormulas;
+import gmail.vladimir.JLSP.Variables.Formula;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompiledFormulaTest {
+
+    @Test
+    void matchesTheInOperationOrderResult() {
+        Parser parser = new Parser();
+        RandomFormulas random = new RandomFormulas(11);
+        int compared = 0;
+
+        for (int i = 0; i < 20000; i++) {
+            String text = random.next();
+            Formula formula;
+            double expected;
+            double[] values;
+            try {
+                formula = parser.parse(text);
+                values = random.values(formula.getRequiredVariables());
+                expected = formula.inOperationOrderResult(values.clone());
+            }
+            catch (RuntimeException ex) {
+                continue;
+            }
+
+            assertBits(expected, formula.compile().result(values.clone()), text);
+            compared++;
+        }
+
+        assertTrue(compared > 15000, "Only " + compared + " formulas were compared");
+    }
+
+    @Test
+    void keepsTheSignOfPowers() {
+        Parser parser = new Parser();
+        String[] texts = {"-x^2", "(-x)^2", "-(x)^3", "2-x^2", "-x^y", "x^-y", "-(x^2)^3", "(x-4)^2"};
+
+        for (String text : texts) {
+            Formula formula = parser.parse(text);
+            double[] values = Arrays.copyOf(new double[]{-3, 2}, formula.getRequiredVariables());
+            double expected = formula.inOperationOrderResult(values.clone());
+            assertBits(expected, formula.compile().result(values.clone()), text);
+        }
+    }
+
+    static void assertBits(double expected, double actual, String text) {
+        assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(actual), () -> text + ": expected " + expected + " got " + actual);
+    }
+
+}
@@ -0,0 +1,72 @@
+package gmail.vladimir.JLSP.Compiler;
+
+import gmail.vladimir.JLSP.Parser.Parser;
+import gmail.vladimir.JLSP.RandomFormulas;
+import gmail.vladimir.JLSP.Variables.Formula;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static gmail.vladimir.JLSP.Compiler.CompiledFormulaTest.assertBits;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EvalContextTest {
+
+    @Test
+    void matchesTheInOperationOrderResult() {
+        Parser parser = new Parser();
+        RandomFormulas random = new RandomFormulas(17);
+        int compared = 0;
+
+        for (int i = 0; i < 5000; i++) {
+            String text = random.next();
+            Formula formula;
+            double expected;
+            double[] values;
+            try {
+                formula = parser.parse(text);
+                values = random.values(formula.getRequiredVariables());
+                expected = formula.inOperationOrderResult(values.clone());
+            }
+            catch (RuntimeException ex) {
+                continue;
+            }
+
+            assertBits(expected, formula.result(new EvalContext(formula).setVariables(values.clone())), text);
+            compared++;
+        }
+
+        assertTrue(compared > 3500, "Only " + compared + " formulas were compared");
+    }
+
+    @Test
+    void threadsShareOneFormula() throws Exception {
+        Formula formula = new Parser().parse("x*(y+2)-sin(x)/(1+y^2)+max(x,y,1)");
+        int threads = 4, rows = 20000;
+        double[] expected = new double[rows];
+        for (int i = 0; i < rows; i++)
+            expected[i] = formula.inOperationOrderResult(i * 0.5, i % 7);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    EvalContext ctx = new EvalContext(formula);
+                    for (int i = 0; i < rows; i++)
+                        assertBits(expected[i], formula.result(ctx.setVariable(0, i * 0.5).setVariable(1, i % 7)), "row " + i);
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+package gmail.vladimir.JLSP.Compiler;
+
+import gmail.vladimir.JLSP.Parser.Parser;
+import gmail.vladimir.JLSP.Variables.Formula;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static gmail.vladimir.JLSP.Compiler.CompiledFormulaTest.assertBits;
+import static org.junit.jupiter.api.Assertions.*;
+
+class FormulaFileEvaluatorTest {
+
+    @TempDir
+    Path dir;
+
+    private final Formula formula = new Parser().parse("x*(y+2)^2-sin(x)/(1+z^2)+max(x,y,z)");
+
+    @Test
+    void evaluatesRowsThatArentWholeBlocks() throws IOException {
+        double[][] rows = rows(1000, 1);
+        Path input = write("in.bin", rows);
+        Path output = dir.resolve("out.bin");
+
+        FormulaFileEvaluator evaluator = new FormulaFileEvaluator(formula.compile());
+        assertEquals(1, countChunks(evaluator, rows.length));
+        assertEquals(rows.length, evaluator.evaluate(input, output));
+        assertResults(rows, output);
+    }
+
+    @Test
+    void evaluatesMoreThanOneChunk() throws IOException {
+        double[][] rows = rows(BatchExecutor.BLOCK * 9 + 17, 2);
+        Path input = write("in.bin", rows);
+        Path sequential = dir.resolve("sequential.bin"), parallel = dir.resolve("parallel.bin");
+
+        //Rounded up to a whole block
+        FormulaFileEvaluator evaluator = new FormulaFileEvaluator(formula.compile(), 300);
+        assertEquals(BatchExecutor.BLOCK * 2, evaluator.getChunkRows());
+        assertEquals(5, countChunks(evaluator, rows.length));
+
+        assertEquals(rows.length, evaluator.evaluate(input, sequential));
+        assertResults(rows, sequential);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(rows.length, evaluator.evaluateParallel(input, parallel, pool));
+        }
+        finally {
+            pool.shutdown();
+        }
+        assertArrayEquals(Files.readAllBytes(sequential), Files.readAllBytes(parallel));
+    }
+
+    @Test
+    void replacesTheOutput() throws IOException {
+        double[][] rows = rows(10, 3);
+        Path input = write("in.bin", rows);
+        Path output = dir.resolve("out.bin");
+        Files.write(output, new byte[4096]);
+
+        new FormulaFileEvaluator(formula.compile()).evaluateParallel(input, output, ForkJoinPool.commonPool());
+        assertResults(rows, output);
+    }
+
+    @Test
+    void emptyInputGivesAnEmptyOutput() throws IOException {
+        Path input = write("in.bin", new double[0][]);
+        Path output = dir.resolve("out.bin");
+        Files.write(output, new byte[16]);
+
+        assertEquals(0, new FormulaFileEvaluator(formula.compile()).evaluate(input, output));
+        assertEquals(0, Files.size(output));
+        assertEquals(0, new FormulaFileEvaluator(formula.compile()).evaluateParallel(input, output, ForkJoinPool.commonPool()));
+        assertEquals(0, Files.size(output));
+    }
+
+    @Test
+    void rejectsPartialRows() throws IOException {
+        Path input = dir.resolve("in.bin");
+        Files.write(input, new byte[3 * Double.BYTES * 4 + 8]);
+
+        FormulaFileEvaluator evaluator = new FormulaFileEvaluator(formula.compile());
+        assertThrows(IllegalArgumentException.class, () -> evaluator.evaluate(input, dir.resolve("out.bin")));
+        assertThrows(IllegalArgumentException.class, () -> evaluator.evaluateParallel(input, dir.resolve("out.bin"), ForkJoinPool.commonPool()));
+    }
+
+    @Test
+    void rejectsFormulasWithoutRows() {
+        assertThrows(IllegalArgumentException.class, () -> new FormulaFileEvaluator(new Parser().parse("1+2").compile()));
+        assertThrows(IllegalArgumentException.class, () -> new FormulaFileEvaluator(formula.compile(), 0));
+    }
+
+    private static long countChunks(FormulaFileEvaluator evaluator, long rows) {
+        return (rows + evaluator.getChunkRows() - 1) / evaluator.getChunkRows();
+    }
+
+    private double[][] rows(int count, long seed) {
+        Random random = new Random(seed);
+        double[][] rows = new double[count][formula.getRequiredVariables()];
+        for (double[] row : rows)
+            for (int v = 0; v < row.length; v++)
+                row[v] = random.nextDouble() * 20 - 10;
+        return rows;
+    }
+
+    private Path write(String name, double[][] rows) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(rows.length * formula.getRequiredVariables() * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (double[] row : rows)
+            for (double value : row)
+                bytes.putDouble(value);
+        return Files.write(dir.resolve(name), bytes.array());
+    }
+
+    private void assertResults(double[][] rows, Path output) throws IOException {
+        ByteBuffer results = ByteBuffer.wrap(Files.readAllBytes(output)).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(rows.length * Double.BYTES, results.capacity());
+        for (int r = 0; r < rows.length; r++)
+            assertBits(formula.inOperationOrderResult(rows[r].clone()), results.getDouble(r * Double.BYTES), "row " + r);
+    }
+
+}
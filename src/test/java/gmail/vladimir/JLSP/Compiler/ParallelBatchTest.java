@@ -0,0 +1,72 @@
+package gmail.vladimir.JLSP.Compiler;
+
+import gmail.vladimir.JLSP.Parser.Parser;
+import gmail.vladimir.JLSP.Variables.Formula;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static gmail.vladimir.JLSP.Compiler.CompiledFormulaTest.assertBits;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelBatchTest {
+
+    private static final int[] ROWS = {0, BatchExecutor.BLOCK - 1, ParallelBatch.THRESHOLD, ParallelBatch.THRESHOLD + 1, 100003};
+
+    @Test
+    void matchesTheSequentialBatch() {
+        Formula formula = new Parser().parse("x*(y+2)-sin(x)/(1+y^2)+max(x,y,1)-z^3");
+        CompiledFormula program = formula.compile();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int rows : ROWS) {
+                double[][] columns = columns(3, rows, rows);
+                double[] expected = new double[rows], actual = new double[rows];
+                program.evaluateBatch(columns, expected);
+                program.evaluateBatchParallel(columns, actual, pool);
+
+                for (int i = 0; i < rows; i++)
+                    assertBits(expected[i], actual[i], rows + " rows, row " + i);
+                if (rows > 0)
+                    assertBits(program.result(columns[0][rows - 1], columns[1][rows - 1], columns[2][rows - 1]), actual[rows - 1], rows + " rows, last row");
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void createsOneExecutorPerWorker() {
+        CompiledFormula program = new Parser().parse("x*y+1").compile();
+        int rows = 100003;
+        double[][] columns = columns(2, rows, 3);
+        double[] expected = new double[rows], actual = new double[rows];
+        program.evaluateBatch(columns, expected);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            PerWorker<BatchExecutor> executors = new PerWorker<>(() -> new BatchExecutor(program));
+            pool.invoke(new ParallelBatch(executors, columns, actual, 0, rows));
+
+            //A range per THRESHOLD rows, but never more executors than threads
+            assertTrue(executors.size() >= 1 && executors.size() <= pool.getParallelism(), executors.size() + " executors");
+            for (int i = 0; i < rows; i++)
+                assertBits(expected[i], actual[i], "row " + i);
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    private static double[][] columns(int variables, int rows, long seed) {
+        Random random = new Random(seed);
+        double[][] columns = new double[variables][rows];
+        for (double[] column : columns)
+            for (int i = 0; i < rows; i++)
+                column[i] = random.nextDouble() * 20 - 10;
+        return columns;
+    }
+
+}
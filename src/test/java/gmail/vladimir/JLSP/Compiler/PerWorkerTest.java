@@ -0,0 +1,30 @@
+package gmail.vladimir.JLSP.Compiler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PerWorkerTest {
+
+    @Test
+    void everyThreadKeepsItsOwnState() throws Exception {
+        PerWorker<double[]> workers = new PerWorker<>(() -> new double[1]);
+        double[] own = workers.get();
+        assertSame(own, workers.get());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            double[] other = executor.submit(workers::get).get();
+            assertNotSame(own, other);
+            assertSame(other, executor.submit(workers::get).get());
+        }
+        finally {
+            executor.shutdown();
+        }
+        assertEquals(2, workers.size());
+    }
+
+}
@@ -0,0 +1,130 @@
+package gmail.vladimir.JLSP.Helpers;
+
+import gmail.vladimir.JLSP.Parser.Parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compares following function names with {@link NameSearcher} against the map of prefixes it replaced, and measures parsing formulas full of function calls.<br/>
+ * Not a test, run it after compiling the tests:
+ * <pre>{@code mvn -q test-compile && java -cp target/classes:target/test-classes gmail.vladimir.JLSP.Helpers.NameSearcherBenchmark}</pre>
+ */
+public final class NameSearcherBenchmark {
+
+    private static final String[] FORMULAS = {
+            "sin(x)+cos(y)*tan(x-y)",
+            "atan2(y,x)+normalize_angle(x*2)-log10(abs(y)+1)",
+            "clamp(lerp(x,y,0.5),0,1)+hypot(x,y)*sign(x)",
+            "sqrt(pow(x,2)+pow(y,2))-max(x,y,1)+min(x,y)",
+            "asinh(x)+acosh(abs(y)+1)+atanh(x/(abs(x)+2))"
+    };
+
+    private static final int ROUNDS = 10, ITERATIONS = 200_000;
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        Parser parser = new Parser();
+        Set<String> functions = parser.functionsClone().keySet();
+
+        NameSearcher trie = new NameSearcher();
+        HashPrefixes prefixes = new HashPrefixes();
+        for (String name : functions) {
+            trie.addName(name);
+            prefixes.addName(name);
+        }
+
+        //Every function name, followed by a character that ends it like the parser sees them
+        List<String> inputs = new ArrayList<>(functions);
+        char[][] names = new char[inputs.size()][];
+        for (int i = 0; i < names.length; i++)
+            names[i] = (inputs.get(i) + "(").toCharArray();
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long trieTime = time(() -> followTrie(trie, names));
+            long mapTime = time(() -> followMap(prefixes, functions, names));
+            long parseTime = time(() -> parseAll(parser));
+
+            System.out.printf("round %d: trie %.1f ns/name, prefix map %.1f ns/name, parse %.1f ns/formula%n", round,
+                    (double) trieTime / ITERATIONS / names.length,
+                    (double) mapTime / ITERATIONS / names.length,
+                    (double) parseTime / (ITERATIONS / 20) / FORMULAS.length);
+        }
+        System.out.println(sink);
+    }
+
+    private static long time(Runnable run) {
+        long start = System.nanoTime();
+        run.run();
+        return System.nanoTime() - start;
+    }
+
+    //What Parser does now, one state per character
+    private static void followTrie(NameSearcher trie, char[][] names) {
+        long found = 0;
+        for (int it = 0; it < ITERATIONS; it++) {
+            for (char[] name : names) {
+                int state = NameSearcher.ROOT;
+                for (char c : name) {
+                    int next = trie.next(state, c);
+                    if (next == NameSearcher.NONE)
+                        break;
+                    state = next;
+                }
+                if (trie.isName(state))
+                    found++;
+            }
+        }
+        sink += found;
+    }
+
+    //What Parser did before, a string per character probed against the functions and the prefixes
+    private static void followMap(HashPrefixes prefixes, Set<String> functions, char[][] names) {
+        long found = 0;
+        StringBuilder sb = new StringBuilder();
+        for (int it = 0; it < ITERATIONS; it++) {
+            for (char[] name : names) {
+                sb.setLength(0);
+                for (char c : name) {
+                    if (functions.contains(sb.toString()))
+                        break;
+                    if (!prefixes.exists(sb.append(c).toString()))
+                        break;
+                }
+                if (functions.contains(sb.toString()))
+                    found++;
+            }
+        }
+        sink += found;
+    }
+
+    private static void parseAll(Parser parser) {
+        long variables = 0;
+        for (int it = 0; it < ITERATIONS / 20; it++)
+            for (String formula : FORMULAS)
+                variables += parser.parse(formula).getRequiredVariables();
+        sink += variables;
+    }
+
+    //The map of every prefix NameSearcher used to be
+    private static final class HashPrefixes {
+
+        private final Map<String, Integer> prefixCounts = new HashMap<>();
+
+        void addName(String name) {
+            StringBuilder sb = new StringBuilder();
+            for (char c : name.toCharArray())
+                prefixCounts.merge(sb.append(c).toString(), 1, Integer::sum);
+        }
+
+        boolean exists(String prefix) {
+            return prefixCounts.containsKey(prefix);
+        }
+
+    }
+
+}
@@ -0,0 +1,163 @@
+package gmail.vladimir.JLSP.Helpers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NameSearcherTest {
+
+    @Test
+    void removingANameKeepsTheSharedPrefixes() {
+        NameSearcher names = new NameSearcher();
+        names.addName("sin");
+        names.addName("sinh");
+        names.addName("sign");
+
+        assertTrue(isName(names, "sin"));
+        assertTrue(isName(names, "sinh"));
+        assertTrue(names.exists("si"));
+        assertFalse(isName(names, "si"));
+
+        names.removeName("sinh");
+        assertFalse(names.exists("sinh"));
+        assertEquals(NameSearcher.NONE, state(names, "sinh"));
+        assertTrue(isName(names, "sin"));
+        assertTrue(isName(names, "sign"));
+
+        names.removeName("sin");
+        assertFalse(names.exists("sin"));
+        assertTrue(names.exists("si"));
+        assertTrue(isName(names, "sign"));
+
+        names.removeName("sign");
+        assertFalse(names.exists("s"));
+        assertEquals(NameSearcher.NONE, names.next(NameSearcher.ROOT, 's'));
+    }
+
+    @Test
+    void aRemovedNameCanBeAddedAgain() {
+        NameSearcher names = new NameSearcher();
+        names.addName("log");
+        names.addName("log10");
+        names.removeName("log10");
+        names.removeName("log");
+        assertFalse(names.exists("l"));
+
+        names.addName("log10");
+        assertTrue(isName(names, "log10"));
+        assertTrue(names.exists("log"));
+        assertFalse(isName(names, "log"));
+
+        names.addName("log");
+        assertTrue(isName(names, "log"));
+        names.removeName("log10");
+        assertTrue(isName(names, "log"));
+        assertFalse(names.exists("log1"));
+    }
+
+    @Test
+    void namesAreCounted() {
+        NameSearcher names = new NameSearcher();
+        names.addName("cos");
+        names.addName("cos");
+        names.removeName("cos");
+        assertTrue(isName(names, "cos"));
+        names.removeName("cos");
+        assertFalse(names.exists("c"));
+
+        //Neither a missing name nor a bare prefix lowers the counts of the names that are there
+        names.addName("cosh");
+        names.removeName("cos");
+        names.removeName("cot");
+        names.removeName("");
+        assertTrue(isName(names, "cosh"));
+        assertTrue(names.exists("cos"));
+        assertFalse(names.exists(""));
+    }
+
+    @Test
+    void findsEveryNameAfterGrowing() {
+        Random random = new Random(16);
+        Set<String> added = new HashSet<>();
+        NameSearcher names = new NameSearcher();
+
+        //Far more edges than the initial 64 slots, with characters above 0xFF to spread the keys
+        while (added.size() < 3000) {
+            StringBuilder sb = new StringBuilder();
+            int length = 1 + random.nextInt(8);
+            for (int i = 0; i < length; i++)
+                sb.append(random.nextInt(4) == 0 ? (char) (0x100 + random.nextInt(0xFF00)) : (char) ('a' + random.nextInt(6)));
+            if (added.add(sb.toString()))
+                names.addName(sb.toString());
+        }
+        assertAll(names, added);
+
+        List<String> removed = new ArrayList<>();
+        for (String name : added)
+            if (random.nextBoolean())
+                removed.add(name);
+        for (String name : removed) {
+            names.removeName(name);
+            added.remove(name);
+        }
+        assertAll(names, added);
+        for (String name : removed)
+            assertFalse(isName(names, name), name);
+
+        for (String name : removed) {
+            names.addName(name);
+            added.add(name);
+        }
+        assertAll(names, added);
+    }
+
+    @Test
+    void aCopyIsIndependent() {
+        NameSearcher names = new NameSearcher();
+        names.addName("max");
+        NameSearcher copy = new NameSearcher(names);
+
+        copy.addName("min");
+        names.removeName("max");
+        assertFalse(names.exists("m"));
+        assertTrue(isName(copy, "max"));
+        assertTrue(isName(copy, "min"));
+
+        copy.clear();
+        assertFalse(copy.exists("m"));
+        copy.addName("mix");
+        assertTrue(isName(copy, "mix"));
+        assertFalse(names.exists("m"));
+    }
+
+    //Every name and every prefix of one can be followed, and the names are the only full ones
+    private static void assertAll(NameSearcher names, Set<String> added) {
+        for (String name : added) {
+            assertTrue(isName(names, name), name);
+            for (int i = 1; i < name.length(); i++) {
+                String prefix = name.substring(0, i);
+                assertTrue(names.exists(prefix), prefix);
+                assertEquals(added.contains(prefix), isName(names, prefix), prefix);
+            }
+        }
+    }
+
+    private static boolean isName(NameSearcher names, String name) {
+        int state = state(names, name);
+        return state != NameSearcher.NONE && names.isName(state);
+    }
+
+    private static int state(NameSearcher names, String prefix) {
+        int state = NameSearcher.ROOT;
+        for (int i = 0; i < prefix.length() && state != NameSearcher.NONE; i++)
+            state = names.next(state, prefix.charAt(i));
+        return state;
+    }
+
+}
@@ -0,0 +1,62 @@
+package gmail.vladimir.JLSP.Interfaces;
+
+import gmail.vladimir.JLSP.Parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OperatorComputeTest {
+
+    @Test
+    void flagArraysAreNotSharedBetweenCalls() {
+        Parser a = new Parser();
+        a.addOperator('#', (l, r, e) -> {
+            e[0] = true;
+            e[1] = true;
+            return l + r;
+        }, 5);
+        Parser b = new Parser();
+        b.addOperator('@', (l, r, e) -> e[0] || e[1] ? 1000 : l * r, 5);
+
+        assertEquals(6.0, b.parse("2@3").inOperationOrderResult());
+        assertEquals(5.0, a.parse("2#3").inOperationOrderResult());
+        assertEquals(5.0, a.parse("2#3").naiveResult());
+        assertEquals(6.0, b.parse("2@3").inOperationOrderResult());
+        assertEquals(6.0, b.parse("2@3").naiveResult());
+    }
+
+    @Test
+    void unpacksTheFlagsInOrder() {
+        int all = FlaggedOperatorCompute.WAS_FORMULA | FlaggedOperatorCompute.INNER_NEGATIVE | FlaggedOperatorCompute.OUTER_MINUS;
+        for (int flags = 0; flags <= all; flags++) {
+            boolean[] extra = FlaggedOperatorCompute.unpack(flags);
+            assertEquals(flags, FlaggedOperatorCompute.pack(extra));
+            assertNotSame(extra, FlaggedOperatorCompute.unpack(flags));
+        }
+        assertEquals(FlaggedOperatorCompute.WAS_FORMULA, FlaggedOperatorCompute.pack(true));
+        assertEquals(0, FlaggedOperatorCompute.pack());
+    }
+
+    @Test
+    void adaptersSeeTheSameFlags() {
+        int[] seen = new int[2];
+        OperatorCompute flagged = OperatorCompute.flagged((l, r, flags) -> {
+            seen[0] = flags;
+            return l - r;
+        });
+        OperatorCompute legacy = (l, r, e) -> {
+            seen[1] = FlaggedOperatorCompute.pack(e);
+            return l - r;
+        };
+
+        for (int flags = 0; flags < 8; flags++) {
+            assertEquals(-1, flagged.apply(2, 3, flags));
+            assertEquals(-1, flagged.compute(2, 3, FlaggedOperatorCompute.unpack(flags)));
+            assertEquals(-1, legacy.apply(2, 3, flags));
+            assertEquals(flags, seen[0]);
+            assertEquals(flags, seen[1]);
+        }
+        assertEquals(6, OperatorCompute.of((l, r) -> l * r).apply(2, 3, FlaggedOperatorCompute.WAS_FORMULA));
+    }
+
+}
@@ -0,0 +1,172 @@
+package gmail.vladimir.JLSP.Parser;
+
+import gmail.vladimir.JLSP.Interfaces.OperatorCompute;
+import org.junit.jupiter.api.Test;
+
+import static gmail.vladimir.JLSP.Parser.CharClassTable.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CharClassTableTest {
+
+    private static final OperatorCompute TIMES_TEN = (l, r, e) -> l * 10 + r;
+
+    @Test
+    void classifiesCharsAboveTheFirstPage() {
+        CharClassTable table = new CharClassTable(0x10000);
+        table.setOperator('\u4e00', TIMES_TEN, 3);
+        table.setKind('\u4e01', COMMA, true);
+        table.setKind('\uffef', DELIMITER, true);
+
+        assertEquals(OPERATOR, kind(table.classOf('\u4e00')));
+        assertEquals(3, priority(table.classOf('\u4e00')));
+        assertSame(TIMES_TEN, table.operator('\u4e00'));
+        assertTrue(table.is('\u4e01', COMMA));
+        assertTrue(table.is('\uffef', DELIMITER));
+        assertEquals(NONE, kind(table.classOf('\u4dff')));
+        assertEquals(NONE, kind(table.classOf('\uffff')));
+        assertNull(table.operator('\u4e01'));
+
+        assertEquals(0x4e00, table.nextOperator(0));
+        assertEquals(-1, table.nextOperator(0x4e01));
+        assertArrayEquals(new int[]{-1, -1, -1, 0}, table.priorityIndex());
+    }
+
+    @Test
+    void aCopyOnlyChangesItsOwnPages() {
+        CharClassTable original = new CharClassTable(0x10000);
+        original.setOperator('+', TIMES_TEN, 1);
+        original.setOperator('\u4e00', TIMES_TEN, 2);
+
+        CharClassTable copy = new CharClassTable(original, original.limit);
+        copy.setOperator('-', TIMES_TEN, 1);
+        copy.setOperator('\u4e02', TIMES_TEN, 5);
+        copy.removeOperator('\u4e00');
+        copy.setKind('+', COMMA, true);
+
+        assertFalse(original.is('-', OPERATOR));
+        assertFalse(original.is('\u4e02', OPERATOR));
+        assertTrue(original.is('\u4e00', OPERATOR));
+        assertTrue(original.is('+', OPERATOR));
+
+        assertTrue(copy.is('-', OPERATOR));
+        assertTrue(copy.is('\u4e02', OPERATOR));
+        assertFalse(copy.is('\u4e00', OPERATOR));
+        assertTrue(copy.is('+', COMMA));
+    }
+
+    @Test
+    void aRemovedOperatorCanBeAddedAgain() {
+        CharClassTable table = new CharClassTable(0x200);
+        table.setOperator('\u0150', TIMES_TEN, 4);
+        table.removeOperator('\u0150');
+
+        assertEquals(NONE, kind(table.classOf('\u0150')));
+        assertEquals(-1, priority(table.classOf('\u0150')));
+        assertNull(table.operator('\u0150'));
+        assertEquals(-1, table.nextOperator(0));
+        assertEquals(0, table.priorityIndex().length);
+
+        table.setOperator('\u0150', TIMES_TEN, 6);
+        assertTrue(table.is('\u0150', OPERATOR));
+        assertEquals(6, priority(table.classOf('\u0150')));
+        assertEquals(0x150, table.nextOperator(0));
+
+        //Removing an operator from a comma keeps the comma, turning the comma off keeps the priority
+        table.setKind('\u0151', COMMA, true);
+        table.removeOperator('\u0151');
+        assertTrue(table.is('\u0151', COMMA));
+        table.setPriority('\u0151', 2);
+        table.setKind('\u0151', COMMA, false);
+        assertEquals(NONE, kind(table.classOf('\u0151')));
+        assertEquals(2, priority(table.classOf('\u0151')));
+        table.setKind('\u0151', DELIMITER, false);
+        assertEquals(NONE, kind(table.classOf('\u0151')));
+    }
+
+    @Test
+    void aSmallerLimitDropsTheCharsAboveIt() {
+        CharClassTable original = new CharClassTable(0x10000);
+        original.setOperator('\u0120', TIMES_TEN, 1);
+        original.setOperator('\u0160', TIMES_TEN, 1);
+        original.setOperator('\u4e00', TIMES_TEN, 1);
+
+        CharClassTable smaller = new CharClassTable(original, 0x150);
+        assertTrue(smaller.is('\u0120', OPERATOR));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> smaller.classOf('\u0160'));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> smaller.operator('\u0150'));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> smaller.setOperator('\u0150', TIMES_TEN, 1));
+        assertEquals(-1, smaller.nextOperator(0x121));
+
+        //Growing again doesn't bring them back, and the original keeps them
+        CharClassTable larger = new CharClassTable(smaller, 0x10000);
+        assertTrue(larger.is('\u0120', OPERATOR));
+        assertEquals(NONE, kind(larger.classOf('\u0160')));
+        assertEquals(NONE, kind(larger.classOf('\u4e00')));
+        assertTrue(original.is('\u0160', OPERATOR));
+        assertTrue(original.is('\u4e00', OPERATOR));
+    }
+
+    @Test
+    void refusesPrioritiesThatDontFit() {
+        CharClassTable table = new CharClassTable(0x80);
+        table.setOperator('#', TIMES_TEN, MAX_PRIORITY);
+        assertEquals(MAX_PRIORITY, priority(table.classOf('#')));
+        assertThrows(IllegalArgumentException.class, () -> table.setOperator('#', TIMES_TEN, MAX_PRIORITY + 1));
+    }
+
+    @Test
+    void parsesWithCharsAboveTheFirstPage() {
+        Parser parser = new Parser(0x10000);
+        parser.addOperator('\u4e00', TIMES_TEN, 3);
+        parser.addComma('\u4e01');
+
+        assertEquals(32, parser.parse("x\u4e00y").inOperationOrderResult(3, 2));
+        parser.addOperator('#', TIMES_TEN, 3);
+        assertEquals(parser.parse("1+x#y*2").inOperationOrderResult(4, 3), parser.parse("1+x\u4e00y*2").inOperationOrderResult(4, 3));
+        assertEquals(3.5, parser.parse("x+1\u4e015").inOperationOrderResult(2));
+        assertEquals(2, parser.parse("x\u4e00y").getRequiredVariables());
+    }
+
+    @Test
+    void parsersSharingPagesDontSeeEachOthersChanges() {
+        Parser first = new Parser(0x10000), second = new Parser(0x10000);
+        first.addOperator('\u4e00', TIMES_TEN, 3);
+        second.addOperator('\u4e02', TIMES_TEN, 3);
+        first.removeOperator('-');
+        second.addDelimiter('\u4e03');
+
+        assertTrue(first.isOperator('\u4e00'));
+        assertFalse(second.isOperator('\u4e00'));
+        assertTrue(second.isOperator('\u4e02'));
+        assertFalse(first.isOperator('\u4e02'));
+        assertFalse(first.isDelimiter('\u4e03'));
+        assertTrue(second.isOperator('-'));
+        assertEquals(1, second.parse("x-1").inOperationOrderResult(2));
+        assertEquals(1, new Parser().parse("x-1").inOperationOrderResult(2));
+    }
+
+    @Test
+    void changingTheLimitKeepsTheConfiguredChars() {
+        Parser parser = new Parser();
+        parser.addOperator('#', TIMES_TEN, 3);
+        parser.addComma(';');
+
+        parser.changeLimit(0x4e01);
+        parser.addOperator('\u4e00', TIMES_TEN, 3);
+        assertTrue(parser.isOperator('#'));
+        assertTrue(parser.isComma(';'));
+        assertEquals(32, parser.parse("x\u4e00y").inOperationOrderResult(3, 2));
+
+        parser.changeLimit(0x10000);
+        assertTrue(parser.isOperator('\u4e00'));
+        assertTrue(parser.isOperator('#'));
+        assertFalse(parser.isOperator('\u4e01'));
+        assertEquals(3.5, parser.parse("x+1;5").inOperationOrderResult(2));
+
+        //Lowering it is refused and changes nothing
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> parser.changeLimit(0x4e00));
+        assertTrue(parser.isOperator('\u4e00'));
+        assertFalse(parser.isOperator('\u4e01'));
+    }
+
+}
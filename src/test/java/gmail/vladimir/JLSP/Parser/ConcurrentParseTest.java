@@ -0,0 +1,90 @@
+package gmail.vladimir.JLSP.Parser;
+
+import gmail.vladimir.JLSP.RandomFormulas;
+import gmail.vladimir.JLSP.Variables.Formula;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConcurrentParseTest {
+
+    private static final int THREADS = 4, FORMULAS = 2000, PASSES = 5;
+
+    @Test
+    void threadsSharingParsersGetTheSameResults() throws Exception {
+        //A parser with an operator of its own priority, so its states need a bigger map than the default ones
+        Parser plain = new Parser(), custom = new Parser();
+        custom.addOperator('#', (l, r, e) -> l * 10 + r, 7);
+        Parser[] parsers = {plain, custom};
+
+        List<String> inputs = inputs();
+        String[][] expected = new String[parsers.length][inputs.size()];
+        for (int p = 0; p < parsers.length; p++)
+            for (int i = 0; i < inputs.size(); i++)
+                expected[p][i] = describe(parsers[p], inputs.get(i));
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int offset = t * 37;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    //Every thread walks the inputs from a different place and switches parser on every one
+                    for (int pass = 0; pass < PASSES; pass++) {
+                        for (int n = 0; n < inputs.size(); n++) {
+                            int i = (n + offset) % inputs.size(), p = (n + pass) % parsers.length;
+                            assertEquals(expected[p][i], describe(parsers[p], inputs.get(i)), inputs.get(i));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures)
+                future.get();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    //Random formulas, some with the custom operator and some that fail to parse
+    private static List<String> inputs() {
+        RandomFormulas random = new RandomFormulas(6);
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < FORMULAS; i++) {
+            String text = random.next();
+            if (random.nextInt(4) == 0)
+                text = "(" + text + ")#" + random.next();
+            else if (random.nextInt(20) == 0)
+                text = text + ")";
+            inputs.add(text);
+        }
+        return inputs;
+    }
+
+    //The variables and the results with every variable set to 2, or the exception that was thrown
+    private static String describe(Parser parser, String text) {
+        try {
+            Formula formula = parser.parse(text);
+            double[] values = new double[formula.getRequiredVariables()];
+            Arrays.fill(values, 2);
+            formula.setVariables(values);
+            return formula.getVariables() + " " + formula.inOperationOrderResult() + " " + formula.naiveResult();
+        }
+        catch (RuntimeException ex) {
+            return ex.getClass().getName();
+        }
+    }
+
+}
@@ -0,0 +1,147 @@
+package gmail.vladimir.JLSP.Parser;
+
+import gmail.vladimir.JLSP.RandomFormulas;
+import gmail.vladimir.JLSP.Variables.Formula;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParseAllTest {
+
+    private static final String[] INVALID = {"x)", "1..2", "", ")("};
+
+    @Test
+    void matchesParsingOneByOne() {
+        List<String> inputs = inputs(3000, 7);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ExecutorService fixed = Executors.newFixedThreadPool(3);
+        try {
+            check(inputs, pool);
+            check(inputs, fixed);
+            check(inputs, ForkJoinPool.commonPool());
+            check(inputs, Runnable::run);
+        }
+        finally {
+            pool.shutdown();
+            fixed.shutdown();
+        }
+    }
+
+    @Test
+    void finishesWhenTheExecutorRejectsOrDropsTasks() {
+        List<String> inputs = inputs(3000, 9);
+        check(inputs, task -> {
+            throw new RejectedExecutionException("Full");
+        });
+        check(inputs, task -> {});
+    }
+
+    @Test
+    void parsesDuplicatesOnce() {
+        List<String> inputs = Arrays.asList("x+1", "x*2", "x+1", "x+ sin(y)", "x+sin(y)", "x+1");
+        ParseResults results = new Parser().parseAll(inputs, ForkJoinPool.commonPool());
+
+        assertEquals(4, results.getParsedCount());
+        assertFalse(results.hasErrors());
+        assertNotSame(results.getFormula(0), results.getFormula(2));
+        assertNotSame(results.getFormula(0), results.getFormula(5));
+
+        //A copy is its own formula, binding one leaves the others alone
+        results.getFormula(0).setVariables(1);
+        results.getFormula(2).setVariables(5);
+        assertEquals(2, results.getFormula(0).inOperationOrderResult());
+        assertEquals(6, results.getFormula(2).inOperationOrderResult());
+        assertFalse(results.getFormula(5).hasAllVariables());
+    }
+
+    @Test
+    void reportsNullsAndErrorsPerInput() {
+        List<String> inputs = Arrays.asList("x+1", null, "x)", "2*3", "x)", null);
+        ParseResults results = new Parser().parseAll(inputs, ForkJoinPool.commonPool());
+
+        assertEquals(6, results.size());
+        assertEquals(4, results.getErrorCount());
+        assertTrue(results.hasErrors());
+        assertInstanceOf(NullPointerException.class, results.getError(1));
+        assertInstanceOf(NullPointerException.class, results.getError(5));
+        assertInstanceOf(IllegalArgumentException.class, results.getError(2));
+        assertSame(results.getError(2), results.getError(4));
+        assertNull(results.getFormula(2));
+        assertNull(results.getError(3));
+        assertEquals(6, results.getFormula(3).inOperationOrderResult());
+        assertEquals(3, results.getParsedCount());
+        assertEquals(0, new Parser().parseAll(new ArrayList<String>(), ForkJoinPool.commonPool()).size());
+    }
+
+    //Every result must be what parse gives for the same input, and every formula its own object
+    private static void check(List<String> inputs, Executor executor) {
+        Parser parser = new Parser();
+        ParseResults results = parser.parseAll(inputs, executor);
+        assertEquals(inputs.size(), results.size());
+        assertEquals(inputs.stream().filter(s -> s != null).distinct().count(), results.getParsedCount());
+
+        Map<Formula, Boolean> seen = new IdentityHashMap<>();
+        int errors = 0;
+        for (int i = 0; i < inputs.size(); i++) {
+            String text = inputs.get(i);
+            Formula expected;
+            try {
+                expected = parser.parse(text);
+            }
+            catch (RuntimeException ex) {
+                assertNull(results.getFormula(i), text);
+                assertEquals(ex.getClass(), results.getError(i).getClass(), text);
+                errors++;
+                continue;
+            }
+
+            Formula formula = results.getFormula(i);
+            assertNull(results.getError(i), text);
+            assertNull(seen.put(formula, true), text);
+            assertEquals(expected.getVariablesString(), formula.getVariablesString(), text);
+            assertEquals(result(expected), result(formula), text);
+        }
+        assertEquals(errors, results.getErrorCount());
+        assertTrue(errors > 0);
+    }
+
+    private static String result(Formula formula) {
+        formula.setVariables(new double[formula.getRequiredVariables()]);
+        try {
+            return Double.toString(formula.inOperationOrderResult());
+        }
+        catch (RuntimeException ex) {
+            return ex.getClass().getName();
+        }
+    }
+
+    //Random formulas with a third of them repeated, and a few nulls and invalid ones
+    private static List<String> inputs(int count, long seed) {
+        RandomFormulas random = new RandomFormulas(seed);
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int kind = random.nextInt(30);
+            if (kind == 0)
+                inputs.add(null);
+            else if (kind == 1)
+                inputs.add(INVALID[random.nextInt(INVALID.length)]);
+            else if (kind < 10 && !inputs.isEmpty())
+                inputs.add(inputs.get(random.nextInt(inputs.size())));
+            else
+                inputs.add(random.next());
+        }
+        return inputs;
+    }
+
+}
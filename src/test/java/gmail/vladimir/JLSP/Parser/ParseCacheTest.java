@@ -0,0 +1,154 @@
+package gmail.vladimir.JLSP.Parser;
+
+import gmail.vladimir.JLSP.Variables.Formula;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParseCacheTest {
+
+    @Test
+    void countsHitsMissesAndEvictions() {
+        Parser parser = new Parser();
+        parser.setParseCacheSize(2);
+
+        parser.parse("x+1");
+        parser.parse("x+1");
+        parser.parse("x*2");
+        parser.parse("x-3");
+        assertEquals(1, parser.getParseCacheHits());
+        assertEquals(3, parser.getParseCacheMisses());
+        assertEquals(1, parser.getParseCacheEvictions());
+
+        parser.clearParseCache();
+        parser.parse("x-3");
+        assertEquals(4, parser.getParseCacheMisses());
+        assertEquals(1, parser.getParseCacheHits());
+
+        parser.setParseCacheSize(5);
+        assertEquals(5, parser.getParseCacheSize());
+        assertEquals(0, parser.getParseCacheMisses());
+        parser.setParseCacheSize(0);
+        assertEquals(0, parser.getParseCacheSize());
+        parser.parse("x-3");
+        assertEquals(0, parser.getParseCacheMisses());
+    }
+
+    @Test
+    void dropsTheLeastRecentlyUsed() {
+        Parser parser = new Parser();
+        parser.setParseCacheSize(2);
+
+        parser.parse("a+1");
+        parser.parse("b+1");
+        parser.parse("a+1");
+        //b is the least recently used one now
+        parser.parse("c+1");
+        long hits = parser.getParseCacheHits();
+
+        parser.parse("a+1");
+        assertEquals(hits + 1, parser.getParseCacheHits());
+        parser.parse("b+1");
+        assertEquals(hits + 1, parser.getParseCacheHits());
+        assertEquals(2, parser.getParseCacheEvictions());
+    }
+
+    @Test
+    void aHitIsAnIndependentFormula() {
+        Parser parser = new Parser();
+        parser.setParseCacheSize(4);
+
+        Formula first = parser.parse("x*(y+1)");
+        first.setVariables(2, 3);
+        assertEquals(8, first.inOperationOrderResult());
+
+        Formula second = parser.parse("x*(y+1)");
+        assertEquals(1, parser.getParseCacheHits());
+        assertNotSame(first, second);
+        assertFalse(second.hasAllVariables());
+
+        second.setVariables(5, 1);
+        Formula third = parser.parse("x*(y+1)");
+        assertNotSame(second, third);
+        assertFalse(third.hasAllVariables());
+        assertEquals(10, second.inOperationOrderResult());
+        assertEquals(8, first.inOperationOrderResult());
+    }
+
+    @Test
+    void spacesArePartOfTheKey() {
+        Parser cached = new Parser(), plain = new Parser();
+        cached.setParseCacheSize(4);
+
+        for (String text : new String[]{"x+sin(y)", "x+ sin(y)", "x+sin(y)", "x+ sin(y)"})
+            assertEquals(plain.parse(text).inOperationOrderResult(2, 1), cached.parse(text).inOperationOrderResult(2, 1), text);
+        assertEquals(2, cached.getParseCacheHits());
+    }
+
+    @Test
+    void configurationChangesDropTheEntries() {
+        assertDropped(parser -> parser.addOperator('#', (l, r, e) -> l + r, 5));
+        assertDropped(parser -> parser.addFunction("twice", (caller, inOperationOrder, params) -> 2));
+        assertDropped(parser -> parser.addFunction1("half", a -> a / 2));
+        assertDropped(parser -> parser.setBetweenVariables('+'));
+        assertDropped(parser -> parser.changeLimit(200));
+    }
+
+    private static void assertDropped(Consumer<Parser> change) {
+        Parser parser = new Parser();
+        parser.setParseCacheSize(4);
+        parser.parse("x y+1");
+        parser.parse("x y+1");
+        assertEquals(1, parser.getParseCacheHits());
+
+        change.accept(parser);
+        Formula formula = parser.parse("x y+1");
+        assertEquals(1, parser.getParseCacheHits());
+        assertEquals(2, parser.getParseCacheMisses());
+        assertEquals(new Parser() {{ change.accept(this); }}.parse("x y+1").getVariablesString(), formula.getVariablesString());
+
+        parser.parse("x y+1");
+        assertEquals(2, parser.getParseCacheHits());
+    }
+
+    @Test
+    void olderVersionsNeverComeBack() {
+        Formula template = new Parser().parse("x+1");
+        ParseCache cache = new ParseCache(8, 5);
+
+        cache.put("a", template, 5);
+        assertSame(template, cache.get("a", 5));
+
+        //A newer version drops everything
+        assertNull(cache.get("a", 6));
+        cache.put("b", template, 6);
+
+        //A parse that started before the change finishes late, it's neither served nor stored, and the newer entries stay
+        assertNull(cache.get("b", 5));
+        cache.put("a", template, 5);
+        assertNull(cache.get("a", 6));
+        assertSame(template, cache.get("b", 6));
+        assertEquals(1, cache.size());
+
+        cache.put("c", template, 7);
+        assertEquals(1, cache.size());
+        assertNull(cache.get("b", 6));
+        assertSame(template, cache.get("c", 7));
+    }
+
+    @Test
+    void versionsKeepGrowingPastOverflow() {
+        Formula template = new Parser().parse("x+1");
+        ParseCache cache = new ParseCache(8, Integer.MAX_VALUE);
+
+        cache.put("a", template, Integer.MAX_VALUE);
+        cache.put("b", template, Integer.MIN_VALUE);
+        assertNull(cache.get("a", Integer.MIN_VALUE));
+        assertSame(template, cache.get("b", Integer.MIN_VALUE));
+        cache.put("a", template, Integer.MAX_VALUE);
+        assertEquals(1, cache.size());
+    }
+
+}
@@ -0,0 +1,81 @@
+package gmail.vladimir.JLSP.Parser;
+
+import gmail.vladimir.JLSP.RandomFormulas;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures how parse throughput scales with the number of threads sharing one {@link Parser}, and compares it with one parser per thread.<br/>
+ * Not a test, run it after compiling the tests, optionally with the highest thread count:
+ * <pre>{@code mvn -q test-compile && java -cp target/classes:target/test-classes gmail.vladimir.JLSP.Parser.ParseContentionBenchmark 16}</pre>
+ */
+public final class ParseContentionBenchmark {
+
+    private static final int ROUNDS = 5, PARSES = 200_000;
+
+    public static void main(String[] args) throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : cores * 2;
+
+        RandomFormulas random = new RandomFormulas(1);
+        List<String> inputs = new ArrayList<>();
+        while (inputs.size() < 1000) {
+            String text = random.next();
+            try {
+                new Parser().parse(text);
+                inputs.add(text);
+            }
+            catch (RuntimeException ignored) {}
+        }
+
+        System.out.println(cores + " cores, " + PARSES + " parses per thread");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double shared = 0, own = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                shared = Math.max(shared, run(threads, inputs, true));
+                own = Math.max(own, run(threads, inputs, false));
+            }
+            System.out.printf("%2d threads: shared parser %,10.0f parses/s, parser per thread %,10.0f parses/s%n", threads, shared, own);
+        }
+    }
+
+    //Returns the parses per second of every thread together
+    private static double run(int threads, List<String> inputs, boolean sharedParser) throws Exception {
+        Parser shared = new Parser();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t * 101;
+                futures.add(executor.submit(() -> {
+                    Parser parser = sharedParser ? shared : new Parser();
+                    start.await();
+                    long variables = 0;
+                    for (int i = 0; i < PARSES; i++)
+                        variables += parser.parse(inputs.get((i + offset) % inputs.size())).getRequiredVariables();
+                    return variables;
+                }));
+            }
+
+            long begin = System.nanoTime();
+            start.countDown();
+            long sink = 0;
+            for (Future<Long> future : futures)
+                sink += future.get();
+            long elapsed = System.nanoTime() - begin;
+            if (sink < 0)
+                System.out.println(sink);
+            return (double) threads * PARSES * 1e9 / elapsed;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
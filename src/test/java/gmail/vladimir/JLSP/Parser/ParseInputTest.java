@@ -0,0 +1,114 @@
+package gmail.vladimir.JLSP.Parser;
+
+import gmail.vladimir.JLSP.RandomFormulas;
+import gmail.vladimir.JLSP.Variables.Formula;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParseInputTest {
+
+    @Test
+    void everyInputKindMatchesTheString() {
+        Parser parser = new Parser();
+        RandomFormulas random = new RandomFormulas(21);
+
+        for (int i = 0; i < 5000; i++) {
+            String text = random.next();
+            String expected = describe(() -> parser.parse(text));
+
+            char[] padded = ("#;" + text + ";#").toCharArray();
+            assertEquals(expected, describe(() -> parser.parse(padded, 2, text.length())), text);
+            assertEquals(expected, describe(() -> parser.parse(new StringBuilder(text))), text);
+            assertEquals(expected, describe(() -> parser.parse(CharBuffer.wrap(text))), text);
+            assertEquals(expected, describe(() -> parser.parse(ascii("#;" + text + ";#", 2, text.length(), false))), text);
+            assertEquals(expected, describe(() -> parser.parse(ascii("#;" + text + ";#", 2, text.length(), true))), text);
+        }
+    }
+
+    @Test
+    void readsOnlyTheSlice() {
+        Parser parser = new Parser();
+        char[] chars = "9*x+1+y".toCharArray();
+
+        Formula formula = parser.parse(chars, 2, 3);
+        assertEquals("[x]", formula.getVariables().toString());
+        assertEquals(5, formula.inOperationOrderResult(4));
+        assertArrayEquals("9*x+1+y".toCharArray(), chars);
+
+        assertThrows(IndexOutOfBoundsException.class, () -> parser.parse(chars, 5, 3));
+        assertThrows(IndexOutOfBoundsException.class, () -> parser.parse(chars, -1, 2));
+        assertThrows(StringIndexOutOfBoundsException.class, () -> parser.parse(chars, 3, 0));
+    }
+
+    @Test
+    void honoursThePositionAndLimitWithoutMovingThem() {
+        Parser parser = new Parser();
+        for (boolean direct : new boolean[]{false, true}) {
+            ByteBuffer buffer = ascii("9*x+1+y", 2, 3, direct);
+
+            Formula formula = parser.parse(buffer);
+            assertEquals("[x]", formula.getVariables().toString());
+            assertEquals(5, formula.inOperationOrderResult(4));
+            assertEquals(2, buffer.position());
+            assertEquals(5, buffer.limit());
+        }
+    }
+
+    @Test
+    void refusesBytesThatArentAscii() {
+        Parser parser = new Parser(256);
+        byte[] bytes = "x+".getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.allocate(3).put(bytes).put((byte) 0xE9);
+        buffer.flip();
+
+        //0xE9 would be read as a variable named 'é' with a limit above it
+        assertThrows(IllegalArgumentException.class, () -> parser.parse(buffer));
+        assertEquals(0, buffer.position());
+        assertThrows(IllegalArgumentException.class, () -> new Parser().parse(buffer));
+    }
+
+    @Test
+    void aTrailingOperatorReadsAZero() {
+        Parser parser = new Parser();
+        for (String operator : new String[]{"+", "-", "*", "^"}) {
+            double expected = parser.parse("x" + operator + "0").inOperationOrderResult(3);
+            String text = "x" + operator;
+
+            assertEquals(expected, parser.parse(text).inOperationOrderResult(3), text);
+            //The char right after the slice must not be read in place of the zero
+            assertEquals(expected, parser.parse((text + "5").toCharArray(), 0, 2).inOperationOrderResult(3), text);
+            assertEquals(expected, parser.parse(ascii(text + "5", 0, 2, false)).inOperationOrderResult(3), text);
+            assertEquals(expected, parser.parse(new StringBuilder(text)).inOperationOrderResult(3), text);
+        }
+    }
+
+    private static ByteBuffer ascii(String text, int from, int length, boolean direct) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(bytes.length) : ByteBuffer.allocate(bytes.length);
+        buffer.put(bytes);
+        buffer.position(from).limit(from + length);
+        return buffer;
+    }
+
+    //The variables and the result with every variable set to 2, or the exception that was thrown
+    private static String describe(Supplier<Formula> parse) {
+        try {
+            Formula formula = parse.get();
+            double[] values = new double[formula.getRequiredVariables()];
+            Arrays.fill(values, 2);
+            formula.setVariables(values);
+            return formula.getVariables() + " " + formula.inOperationOrderResult();
+        }
+        catch (RuntimeException ex) {
+            return ex.getClass().getName();
+        }
+    }
+
+}
@@ -0,0 +1,58 @@
+package gmail.vladimir.JLSP;
+
+import java.util.Random;
+
+/**
+ * Builds random formula strings out of variables, numbers, operators, parentheses and a few default functions.
+ * Some of them don't parse, the tests skip those
+ */
+public final class RandomFormulas {
+
+    private static final String[] ATOMS = {"x", "y", "z", "2", "3.5", "0", "7", "-x", "-(y)", "sin(x)", "max(x,y,1)", "min(z,2)", "pow(y,2)", "abs(-3)", "pi()", "fact(3)", "sqrt(z*z)"};
+    private static final String OPERATORS = "+-*/^%";
+
+    private final Random random;
+
+    public RandomFormulas(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public String next() {
+        StringBuilder sb = new StringBuilder();
+        int terms = 1 + random.nextInt(7);
+        int open = 0;
+
+        for (int i = 0; i < terms; i++) {
+            if (i > 0)
+                sb.append(OPERATORS.charAt(random.nextInt(OPERATORS.length())));
+            if (random.nextInt(4) == 0) {
+                sb.append('(');
+                open++;
+            }
+            sb.append(ATOMS[random.nextInt(ATOMS.length)]);
+            if (open > 0 && random.nextInt(3) == 0) {
+                sb.append(')');
+                open--;
+            }
+        }
+
+        while (open-- > 0)
+            sb.append(')');
+        return sb.toString();
+    }
+
+    /**
+     * Small whole numbers, so the results stay exact enough to compare bit for bit
+     */
+    public double[] values(int count) {
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++)
+            values[i] = random.nextInt(9) - 4;
+        return values;
+    }
+
+    public int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+
+}
@@ -0,0 +1,166 @@
+package gmail.vladimir.JLSP.Variables;
+
+import gmail.vladimir.JLSP.Pairs.ResultPair;
+import gmail.vladimir.JLSP.Parser.Parser;
+import gmail.vladimir.JLSP.RandomFormulas;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncResultTest {
+
+    @Test
+    void changesMadeAfterTheCallDontReachTheResult() throws Exception {
+        Parser parser = new Parser();
+        RandomFormulas random = new RandomFormulas(25);
+        int compared = 0;
+
+        for (int i = 0; i < 3000; i++) {
+            String text = random.next();
+            Formula formula;
+            double[] values;
+            try {
+                formula = parser.parse(text);
+                values = random.values(formula.getRequiredVariables());
+                formula.setVariables(values.clone());
+            }
+            catch (RuntimeException ex) {
+                continue;
+            }
+            if (values.length == 0)
+                continue;
+
+            Formula reference = formula.copy();
+            String expectedInOrder = outcome(() -> reference.inOperationOrderResult());
+            String expectedNaive = outcome(() -> reference.naiveResult());
+
+            for (boolean inOperationOrder : new boolean[]{true, false}) {
+                //The tasks only run once the variables have been changed
+                HeldExecutor held = new HeldExecutor();
+                ResultPair pair = inOperationOrder ? formula.inOperationOrderResultAsync(held) : formula.naiveResultAsync(held);
+                assertTrue(pair.getKey(), text);
+                assertEquals(1, held.tasks.size(), text);
+
+                for (int v = 0; v < values.length; v++)
+                    formula.setVariable(v, values[v] + 1);
+                held.runAll();
+
+                assertEquals(inOperationOrder ? expectedInOrder : expectedNaive, outcome(pair.getValue()), text + " inOperationOrder=" + inOperationOrder);
+                formula.setVariables(values.clone());
+            }
+            compared++;
+        }
+
+        assertTrue(compared > 1500, "Only " + compared + " formulas were compared");
+    }
+
+    @Test
+    void usesTheGivenExecutorOrTheParsersDefault() throws Exception {
+        Parser parser = new Parser();
+        Formula formula = parser.parse("x*(y+2)");
+        formula.setVariables(3, 4);
+        double naiveExpected = formula.copy().naiveResult();
+
+        HeldExecutor given = new HeldExecutor(), fallback = new HeldExecutor();
+        parser.setAsyncExecutor(fallback);
+        assertSame(fallback, parser.getAsyncExecutor());
+
+        ResultPair inOrder = formula.inOperationOrderResultAsync(given);
+        ResultPair naive = formula.naiveResultAsync(given);
+        assertEquals(2, given.tasks.size());
+        assertTrue(fallback.tasks.isEmpty());
+        assertFalse(inOrder.getValue().isDone());
+        given.runAll();
+        assertEquals(18, inOrder.getValue().get());
+        assertEquals(naiveExpected, naive.getValue().get());
+
+        inOrder = formula.inOperationOrderResultAsync();
+        naive = formula.naiveResultAsync(null);
+        assertEquals(2, fallback.tasks.size());
+        assertTrue(given.tasks.isEmpty());
+        fallback.runAll();
+        assertEquals(18, inOrder.getValue().get());
+        assertEquals(naiveExpected, naive.getValue().get());
+
+        parser.setAsyncExecutor(null);
+        assertSame(ForkJoinPool.commonPool(), parser.getAsyncExecutor());
+        assertEquals(18, formula.inOperationOrderResultAsync().getValue().get());
+        assertTrue(fallback.tasks.isEmpty());
+    }
+
+    @Test
+    void aCachedResultSubmitsNothing() throws Exception {
+        Formula formula = new Parser().parse("x+1");
+        formula.setVariables(2);
+        double inOrderExpected = formula.inOperationOrderResult();
+        double naiveExpected = formula.naiveResult();
+
+        HeldExecutor held = new HeldExecutor();
+        ResultPair inOrder = formula.inOperationOrderResultAsync(held);
+        ResultPair naive = formula.naiveResultAsync(held);
+        assertFalse(inOrder.getKey());
+        assertFalse(naive.getKey());
+        assertTrue(held.tasks.isEmpty());
+        assertEquals(inOrderExpected, inOrder.getValue().get());
+        assertEquals(naiveExpected, naive.getValue().get());
+    }
+
+    @Test
+    void missingVariablesFailTheFuture() {
+        HeldExecutor held = new HeldExecutor();
+        ResultPair pair = new Parser().parse("x+1").inOperationOrderResultAsync(held);
+
+        assertTrue(held.tasks.isEmpty());
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> pair.getValue().get());
+        assertInstanceOf(IllegalArgumentException.class, ex.getCause());
+    }
+
+    //The result's bits, or the exception it failed with
+    private static String outcome(CompletableFuture<Double> future) throws InterruptedException {
+        try {
+            return Long.toString(Double.doubleToLongBits(future.get()));
+        }
+        catch (ExecutionException ex) {
+            return ex.getCause().getClass().getName();
+        }
+    }
+
+    private static String outcome(ThrowingResult result) {
+        try {
+            return Long.toString(Double.doubleToLongBits(result.get()));
+        }
+        catch (RuntimeException ex) {
+            return ex.getClass().getName();
+        }
+    }
+
+    private interface ThrowingResult {
+        double get();
+    }
+
+    //Keeps the tasks until they're run by hand
+    private static final class HeldExecutor implements Executor {
+
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            for (Runnable task : tasks)
+                task.run();
+            tasks.clear();
+        }
+
+    }
+
+}
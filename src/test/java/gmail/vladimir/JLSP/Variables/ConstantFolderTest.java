@@ -0,0 +1,163 @@
+package gmail.vladimir.JLSP.Variables;
+
+import gmail.vladimir.JLSP.Parser.Parser;
+import gmail.vladimir.JLSP.RandomFormulas;
+import org.junit.jupiter.api.Test;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConstantFolderTest {
+
+    @Test
+    void foldsConstantFormulasAndPureFunctions() {
+        Parser parser = new Parser();
+        String text = "x+sqrt(16)*(2+3)-max(1,(4),2)";
+        Formula formula = parser.parse(text);
+        formula.foldConstants();
+
+        assertEquals(0, count(formula, Formula.class));
+        assertEquals(0, count(formula, Function.class));
+        assertSameResults(parser.parse(text), formula, new double[]{3}, text);
+    }
+
+    @Test
+    void leavesVariablesAndImpureFunctions() {
+        Parser parser = new Parser();
+        AtomicInteger calls = new AtomicInteger();
+        parser.addFunction("tick", (caller, inOperationOrder, params) -> calls.incrementAndGet(), false);
+
+        Formula formula = parser.parse("sin(x)+(x+1)*tick()-rand()+max(2,(3+4))");
+        formula.foldConstants();
+        assertEquals(0, calls.get());
+        assertTrue(hasFunction(formula, "sin"));
+        assertTrue(hasFunction(formula, "tick"));
+        assertTrue(hasFunction(formula, "rand"));
+        assertFalse(hasFunction(formula, "max"));
+
+        //An impure function keeps being called on every evaluation
+        formula.setVariables(0);
+        formula.inOperationOrderResult();
+        formula.setVariables(1);
+        formula.inOperationOrderResult();
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void leavesWhatThrows() {
+        Parser parser = new Parser();
+        parser.addFunction("boom", (caller, inOperationOrder, params) -> {
+            throw new ArithmeticException("boom");
+        }, true);
+
+        String text = "x+boom(1)*(2+boom(3))";
+        Formula formula = parser.parse(text);
+        formula.foldConstants();
+        assertTrue(hasFunction(formula, "boom"));
+        assertThrows(ArithmeticException.class, () -> formula.inOperationOrderResult(1));
+        assertSameResults(parser.parse(text), formula, new double[]{1}, text);
+    }
+
+    @Test
+    void leavesNestedFormulasBeforePowersAndCustomOperators() {
+        Parser parser = new Parser();
+        parser.addOperator('#', (l, r, e) -> l * 10 + r, 2);
+
+        for (String text : new String[]{"x+(1+2)^2", "x-(2)^x", "x*(1+2)#3"}) {
+            Formula folded = parser.parse(text), plain = parser.parse(text);
+            folded.foldConstants();
+
+            assertEquals(1, count(folded, Formula.class), text);
+            assertSameResults(plain, folded, new double[]{-3}, text);
+        }
+
+        //The default operators don't care whether the value came from a nested formula
+        Formula formula = parser.parse("x+(1+2)*2");
+        formula.foldConstants();
+        assertEquals(0, count(formula, Formula.class));
+    }
+
+    @Test
+    void keepsTheResultsOfRandomFormulas() {
+        Parser parser = new Parser();
+        RandomFormulas random = new RandomFormulas(8);
+        int compared = 0, folded = 0;
+
+        for (int i = 0; i < 10000; i++) {
+            String text = random.next();
+            Formula plain, formula;
+            try {
+                plain = parser.parse(text);
+                formula = parser.parse(text);
+            }
+            catch (RuntimeException ex) {
+                continue;
+            }
+
+            int before = count(formula, Formula.class) + count(formula, Function.class);
+            formula.foldConstants();
+            if (count(formula, Formula.class) + count(formula, Function.class) < before)
+                folded++;
+
+            for (int round = 0; round < 3; round++)
+                assertSameResults(plain, formula, random.values(formula.getRequiredVariables()), text);
+            compared++;
+        }
+
+        assertTrue(compared > 7500, "Only " + compared + " formulas were compared");
+        assertTrue(folded > 1000, "Only " + folded + " formulas were folded");
+    }
+
+    private static void assertSameResults(Formula expected, Formula actual, double[] values, String text) {
+        assertEquals(outcome(expected, values, true), outcome(actual, values, true), text + " in operation order");
+        assertEquals(outcome(expected, values, false), outcome(actual, values, false), text + " naive");
+    }
+
+    //The result's bits, or the exception it threw
+    private static String outcome(Formula formula, double[] values, boolean inOperationOrder) {
+        try {
+            formula.setVariables(values.clone());
+            return Long.toString(Double.doubleToLongBits(inOperationOrder ? formula.inOperationOrderResult() : formula.naiveResult()));
+        }
+        catch (RuntimeException ex) {
+            return ex.getClass().getName();
+        }
+    }
+
+    private static boolean hasFunction(Formula formula, String id) {
+        return find(formula, id, Function.class, new IdentityHashMap<>()) > 0;
+    }
+
+    private static int count(Formula formula, Class<?> type) {
+        return find(formula, null, type, new IdentityHashMap<>());
+    }
+
+    //Counts the distinct entities of the type below the formula, in every list and function param, only functions with the id when it's not null
+    private static int find(FormulaEntity<?> entity, String id, Class<?> type, Map<FormulaEntity<?>, Boolean> seen) {
+        FormulaEntity<?>[][] lists;
+        if (entity instanceof Formula) {
+            Formula formula = (Formula) entity;
+            lists = new FormulaEntity<?>[][]{formula.getInOrder(), formula.getInOperationOrder(), formula.getLowestPriority()};
+        }
+        else if (entity instanceof Function)
+            lists = new FormulaEntity<?>[][]{((Function) entity).getParams()};
+        else
+            return 0;
+
+        int found = 0;
+        for (FormulaEntity<?>[] list : lists) {
+            for (FormulaEntity<?> child : list) {
+                if (seen.put(child, Boolean.TRUE) != null)
+                    continue;
+                if (type.isInstance(child) && (id == null || id.equals(((Function) child).getId())))
+                    found++;
+                found += find(child, id, type, seen);
+            }
+        }
+        return found;
+    }
+
+}
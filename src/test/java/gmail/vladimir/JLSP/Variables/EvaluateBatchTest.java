@@ -0,0 +1,86 @@
+package gmail.vladimir.JLSP.Variables;
+
+import gmail.vladimir.JLSP.Parser.Parser;
+import gmail.vladimir.JLSP.RandomFormulas;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EvaluateBatchTest {
+
+    //Two full blocks and a partial one
+    private static final int ROWS = 600;
+
+    @Test
+    void matchesTheInOperationOrderResultForEveryRow() {
+        Parser parser = new Parser();
+        RandomFormulas random = new RandomFormulas(3);
+        int compared = 0;
+
+        for (int i = 0; i < 1500; i++) {
+            String text = random.next();
+            Formula formula;
+            double[][] columns;
+            double[] expected = new double[ROWS];
+            try {
+                formula = parser.parse(text);
+                columns = new double[formula.getRequiredVariables()][ROWS];
+                for (int row = 0; row < ROWS; row++) {
+                    double[] values = random.values(columns.length);
+                    for (int v = 0; v < columns.length; v++)
+                        columns[v][row] = values[v];
+                    expected[row] = formula.inOperationOrderResult(values);
+                }
+            }
+            catch (RuntimeException ex) {
+                continue;
+            }
+
+            double[] out = new double[ROWS];
+            formula.evaluateBatch(columns, out);
+            for (int row = 0; row < ROWS; row++) {
+                int r = row;
+                assertEquals(Double.doubleToLongBits(expected[row]), Double.doubleToLongBits(out[row]), () -> text + " row " + r + ": expected " + expected[r] + " got " + out[r]);
+            }
+            compared++;
+        }
+
+        assertTrue(compared > 1000, "Only " + compared + " formulas were compared");
+    }
+
+    @Test
+    void leavesTheFormulaAlone() {
+        Formula formula = new Parser().parse("x*y+1");
+        formula.setVariables(2, 3);
+        assertEquals(7, formula.inOperationOrderResult());
+
+        double[] out = new double[3];
+        formula.evaluateBatch(new double[][]{{1, 2, 3}, {4, 5, 6}}, out);
+        assertArrayEquals(new double[]{5, 11, 19}, out);
+        assertArrayEquals(new double[]{2, 3}, formula.getVariableValues());
+        assertEquals(7, formula.inOperationOrderResult());
+    }
+
+    @Test
+    void writesOnlyTheGivenRows() {
+        Formula formula = new Parser().parse("x-1");
+        double[] out = {-1, -1, -1, -1};
+        formula.getCompiled().evaluateBatch(new double[][]{{1, 2, 3, 4}}, out, 1, 3);
+        assertArrayEquals(new double[]{-1, 1, 2, -1}, out);
+
+        double[] empty = new double[0];
+        formula.evaluateBatch(new double[][]{empty}, empty);
+    }
+
+    @Test
+    void refusesMissingOrShortColumns() {
+        Formula formula = new Parser().parse("x+y");
+        double[] out = new double[4];
+
+        assertThrows(IllegalArgumentException.class, () -> formula.evaluateBatch(new double[][]{{1, 2, 3, 4}}, out));
+        assertThrows(IllegalArgumentException.class, () -> formula.evaluateBatch(new double[][]{{1, 2, 3, 4}, {1, 2, 3}}, out));
+        assertThrows(IllegalArgumentException.class, () -> formula.getCompiled().evaluateBatch(new double[][]{out, out}, out, 3, 2));
+        assertThrows(IllegalArgumentException.class, () -> formula.getCompiled().evaluateBatch(new double[][]{out, out}, out, 0, 5));
+    }
+
+}
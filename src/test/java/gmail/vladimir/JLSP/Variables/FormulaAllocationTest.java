@@ -0,0 +1,63 @@
+package gmail.vladimir.JLSP.Variables;
+
+import gmail.vladimir.JLSP.Parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class FormulaAllocationTest {
+
+    private static final int WARMUP = 200_000, MEASURED = 100_000;
+    //What reading the counter itself may allocate, far less than a single 16 byte object every few thousand calls
+    private static final long OVERHEAD = 256;
+
+    @Test
+    void operationOrderResultAllocatesNothing() {
+        Formula formula = new Parser().parse("x*(y+2)^2-sin(x)/y+max(x,y,3)-(x%3)*-(y)^3");
+        formula.setVariables(2, 5);
+
+        assertAllocatesNothing(() -> {
+            formula.resetCache();
+            return formula.result(true);
+        });
+    }
+
+    @Test
+    void rebindingAVariableAllocatesNothing() {
+        Formula formula = new Parser().parse("x*(y+2)^2-sin(x)/y+max(x,y,3)-(x%3)*-(y)^3");
+        formula.setVariables(2, 5);
+        int slot = formula.slotOf('x');
+        double[] value = {0};
+
+        assertAllocatesNothing(() -> {
+            formula.setVariable(slot, value[0]++ % 7);
+            return formula.inOperationOrderResult();
+        });
+    }
+
+    //Runs the call until the JIT settled, then checks what the current thread allocated over all the measured calls
+    private static void assertAllocatesNothing(java.util.function.DoubleSupplier call) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean, "Allocation counters are not available");
+        com.sun.management.ThreadMXBean counters = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(counters.isThreadAllocatedMemorySupported() && counters.isThreadAllocatedMemoryEnabled(), "Allocation counters are not available");
+
+        long thread = Thread.currentThread().getId();
+        double sink = 0;
+        for (int i = 0; i < WARMUP; i++)
+            sink += call.getAsDouble();
+
+        long before = counters.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < MEASURED; i++)
+            sink += call.getAsDouble();
+        long after = counters.getThreadAllocatedBytes(thread);
+
+        long allocated = after - before;
+        assertTrue(allocated <= OVERHEAD, () -> allocated + " bytes were allocated over " + MEASURED + " calls");
+    }
+
+}
@@ -0,0 +1,91 @@
+package gmail.vladimir.JLSP.Variables;
+
+import gmail.vladimir.JLSP.Parser.Parser;
+import gmail.vladimir.JLSP.RandomFormulas;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FormulaSerializerTest {
+
+    @Test
+    void roundTripGivesTheSameResults() throws IOException {
+        int checks = 0;
+
+        for (boolean fold : new boolean[]{false, true}) {
+            Parser parser = new Parser();
+            parser.setFoldConstants(fold);
+            RandomFormulas random = new RandomFormulas(fold ? 13 : 11);
+
+            for (int i = 0; i < 5000; i++) {
+                String text = random.next();
+                Formula original;
+                try {
+                    original = parser.parse(text);
+                }
+                catch (RuntimeException ex) {
+                    continue;
+                }
+
+                Formula loaded = Formula.readFrom(new DataInputStream(new ByteArrayInputStream(write(original))), parser);
+                assertEquals(original.getVariablesString(), loaded.getVariablesString(), text);
+
+                for (int t = 0; t < 3; t++) {
+                    double[] values = random.values(original.getRequiredVariables());
+                    assertEquals(results(parser.parse(text), values), results(loaded, values), text);
+                    checks++;
+                }
+            }
+        }
+
+        assertTrue(checks > 10000, "Only " + checks + " checks were made");
+    }
+
+    @Test
+    void loadingFailsFastOnAnotherConfiguration() throws IOException {
+        Parser parser = new Parser();
+        byte[] bytes = write(parser.parse("x+sin(y)*2"));
+
+        Parser priorities = new Parser();
+        priorities.changeOperatorPriority('*', 7);
+        assertThrows(IllegalArgumentException.class, () -> Formula.readFrom(new DataInputStream(new ByteArrayInputStream(bytes)), priorities));
+
+        Parser functions = new Parser();
+        functions.removeFunction("sin");
+        assertThrows(IllegalArgumentException.class, () -> Formula.readFrom(new DataInputStream(new ByteArrayInputStream(bytes)), functions));
+
+        assertThrows(StreamCorruptedException.class, () -> Formula.readFrom(new DataInputStream(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5})), parser));
+    }
+
+    private static byte[] write(Formula formula) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        formula.writeTo(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    //Both results and the compiled one, or the exceptions they threw
+    private static String results(Formula formula, double[] values) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            formula.setVariables(values);
+            sb.append(formula.naiveResult()).append(' ').append(formula.inOperationOrderResult());
+        }
+        catch (RuntimeException ex) {
+            sb.append(ex.getClass().getName());
+        }
+
+        try {
+            sb.append(" compiled ").append(formula.getCompiled().result(Arrays.copyOf(values, values.length)));
+        }
+        catch (RuntimeException ex) {
+            sb.append(" compiled ").append(ex.getClass().getName());
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,110 @@
+package gmail.vladimir.JLSP.Variables;
+
+import gmail.vladimir.JLSP.Parser.Parser;
+import gmail.vladimir.JLSP.RandomFormulas;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IncrementalEvaluationTest {
+
+    @Test
+    void matchesAFreshCopyAfterEveryChange() {
+        Parser parser = new Parser();
+        RandomFormulas random = new RandomFormulas(5);
+        int checks = 0;
+
+        for (int i = 0; i < 5000; i++) {
+            String text = random.next();
+            Formula formula;
+            try {
+                formula = parser.parse(text);
+            }
+            catch (RuntimeException ex) {
+                continue;
+            }
+
+            int count = formula.getRequiredVariables();
+            if (count == 0)
+                continue;
+
+            double[] values = random.values(count);
+            formula.setVariables(values);
+            Character[] names = formula.getVariables().toArray(new Character[0]);
+
+            for (int step = 0; step < 6; step++) {
+                for (boolean inOperationOrder : new boolean[]{true, false, true}) {
+                    String message = text + " " + Arrays.toString(values) + " inOperationOrder=" + inOperationOrder;
+                    assertEquals(evaluate(formula.copy(), inOperationOrder), evaluate(formula, inOperationOrder), message);
+                    checks++;
+                }
+
+                int changed = random.nextInt(count);
+                values[changed] = random.values(1)[0];
+                formula.setVariable(names[changed], values[changed]);
+            }
+        }
+
+        assertTrue(checks > 10000, "Only " + checks + " checks were made");
+    }
+
+    @Test
+    void recomputesOnlyWhatAChangeReaches() {
+        String names = "abcdefghijklmnopqrst";
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < names.length(); i++) {
+            if (i > 0)
+                text.append('+');
+            text.append("sqrt(").append(names.charAt(i)).append("^2+1)*(").append(names.charAt(i)).append('-').append(i).append(')');
+        }
+
+        Formula formula = new Parser().parse(text.toString());
+        double[] values = new double[names.length()];
+        Arrays.fill(values, 1);
+        formula.setVariables(values);
+        formula.inOperationOrderResult();
+        formula.resetNodeCounters();
+
+        for (int tick = 0; tick < 1000; tick++) {
+            formula.setVariable(names.charAt(tick % names.length()), tick);
+            formula.inOperationOrderResult();
+        }
+
+        assertTrue(formula.getReusedNodes() > formula.getRecomputedNodes() * 10,
+                "recomputed " + formula.getRecomputedNodes() + " reused " + formula.getReusedNodes());
+    }
+
+    @Test
+    void askingForTheCacheCountsNothing() {
+        Formula formula = new Parser().parse("sin(x)+y");
+        formula.setVariables(1, 2);
+        formula.inOperationOrderResult();
+        formula.resetNodeCounters();
+
+        for (FormulaEntity<?> entity : formula.getInOrder())
+            if (entity instanceof Function)
+                assertTrue(((Function) entity).hasCachedResult(true));
+
+        assertEquals(0, formula.getReusedNodes());
+        assertEquals(0, formula.getRecomputedNodes());
+
+        formula.setVariable('y', 3);
+        formula.inOperationOrderResult();
+        assertEquals(1, formula.getReusedNodes());
+        assertEquals(0, formula.getRecomputedNodes());
+    }
+
+    //The bits of the result, or the exception it threw
+    private static String evaluate(Formula formula, boolean inOperationOrder) {
+        try {
+            return Long.toString(Double.doubleToLongBits(inOperationOrder ? formula.inOperationOrderResult() : formula.naiveResult()));
+        }
+        catch (RuntimeException ex) {
+            return ex.getClass().getName();
+        }
+    }
+
+}
@@ -0,0 +1,28 @@
+package gmail.vladimir.JLSP.Variables;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplaceableVariableTest {
+
+    @Test
+    void equalsComparesTheNameAndSign() {
+        ReplaceableVariable x = new ReplaceableVariable('x', '+', false);
+
+        assertEquals(x, new ReplaceableVariable('x', '*', false));
+        assertEquals(x.hashCode(), new ReplaceableVariable('x', '*', false).hashCode());
+        assertNotEquals(x, new ReplaceableVariable('x', '+', true));
+        assertNotEquals(x, new ReplaceableVariable('y', '+', false));
+
+        Set<ReplaceableVariable> set = new HashSet<>();
+        set.add(x);
+        set.add(new ReplaceableVariable('x', '-', false));
+        set.add(new ReplaceableVariable('x', '+', true));
+        assertEquals(2, set.size());
+    }
+
+}
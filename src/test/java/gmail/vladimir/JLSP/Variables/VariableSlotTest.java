@@ -0,0 +1,99 @@
+package gmail.vladimir.JLSP.Variables;
+
+import gmail.vladimir.JLSP.Parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VariableSlotTest {
+
+    @Test
+    void slotsFollowTheVariableOrder() {
+        Formula formula = new Parser().parse("x*(y+z)-x+sin(z)");
+
+        assertEquals(0, formula.slotOf('x'));
+        assertEquals(1, formula.slotOf('y'));
+        assertEquals(2, formula.slotOf('z'));
+        assertEquals(-1, formula.slotOf('q'));
+        assertEquals(-1, formula.slotOf('￿'));
+        assertEquals(-1, formula.slotOf('\0'));
+        assertEquals(-1, new Parser().parse("1+2").slotOf('x'));
+    }
+
+    @Test
+    void namesFarApartStillFindTheirSlots() {
+        Formula formula = new Parser(0x10000).parse("z*\u4e00+a-\uffef");
+
+        assertEquals(0, formula.slotOf('z'));
+        assertEquals(1, formula.slotOf('\u4e00'));
+        assertEquals(2, formula.slotOf('a'));
+        assertEquals(3, formula.slotOf('\uffef'));
+        assertEquals(-1, formula.slotOf('b'));
+        assertEquals(-1, formula.slotOf('\u4e01'));
+        assertEquals(-1, formula.slotOf('\0'));
+
+        formula.setVariable(formula.slotOf('z'), 2).setVariable(formula.slotOf('\u4e00'), 3).setVariable('a', 4).setVariable(formula.slotOf('\uffef'), 5);
+        assertEquals(2 * 3 + 4 - 5, formula.inOperationOrderResult(), 1e-12);
+        assertEquals(formula.slotOf('\u4e00'), formula.copy().slotOf('\u4e00'));
+    }
+
+    @Test
+    void manyNamesFarApartFindTheirSlots() {
+        int count = 200;
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++)
+            text.append(i == 0 ? "" : "+").append(name(i));
+        Formula formula = new Parser(0x10000).parse(text.toString());
+
+        double expected = 0;
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, formula.slotOf(name(i)));
+            assertEquals(-1, formula.slotOf((char) (name(i) + 1)));
+            formula.setVariable(formula.slotOf(name(i)), i);
+            expected += i;
+        }
+        assertEquals(-1, formula.slotOf('\0'));
+        assertEquals(-1, formula.slotOf('\uffff'));
+        assertEquals(expected, formula.inOperationOrderResult());
+
+        Formula two = new Parser(0x10000).parse("a-\uffef");
+        assertEquals(0, two.slotOf('a'));
+        assertEquals(1, two.slotOf('\uffef'));
+        assertEquals(-1, two.slotOf('b'));
+    }
+
+    //Spread over the whole char range, far too wide for a direct index
+    private static char name(int i) {
+        return (char) (0x100 + i * 317);
+    }
+
+    @Test
+    void bindingBySlotMatchesBindingByName() {
+        Formula formula = new Parser().parse("x*(y+z)-x+sin(z)");
+
+        formula.setVariable(formula.slotOf('x'), 2);
+        assertFalse(formula.hasAllVariables());
+        formula.setVariable(formula.slotOf('x'), 3).setVariable('y', 4);
+        assertFalse(formula.hasAllVariables());
+        assertThrows(IllegalArgumentException.class, formula::inOperationOrderResult);
+        assertFalse(formula.copy().hasAllVariables());
+
+        formula.setVariable(2, 1);
+        assertTrue(formula.hasAllVariables());
+        assertEquals(3 * (4 + 1) - 3 + Math.sin(1), formula.inOperationOrderResult(), 1e-12);
+
+        formula.setVariable(formula.slotOf('y'), 6);
+        assertEquals(3 * (6 + 1) - 3 + Math.sin(1), formula.inOperationOrderResult(), 1e-12);
+        assertEquals(formula.inOperationOrderResult(), formula.copy().inOperationOrderResult());
+        assertEquals(formula.inOperationOrderResult(), formula.clone(true).inOperationOrderResult());
+    }
+
+    @Test
+    void rejectsSlotsOutOfRange() {
+        Formula formula = new Parser().parse("x*(y+z)");
+
+        assertThrows(IndexOutOfBoundsException.class, () -> formula.setVariable(3, 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> formula.setVariable(-1, 1));
+    }
+
+}